@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.ISuite;
+import org.testng.ITestContext;
+
+/**
+ * The settings of the optional benchmarks, as given by the test run
+ * arguments. Benchmarks are not conformance tests, and only run when their
+ * settings are given. It is built once by the {@link SuiteFixtureListener}
+ * and shared through the {@link SuiteAttribute#BENCHMARK_SETTINGS}
+ * attribute.
+ *
+ * @author scf
+ */
+public class BenchmarkSettings {
+
+    private final int mqttMessages;
+    private final int mqttSubscribers;
+    private final List<Integer> mqttTopicCounts;
+    private final int fleetDevices;
+    private final double fleetRate;
+    private final int fleetDuration;
+    private final double ingestRate;
+    private final int ingestClients;
+    private final int ingestDuration;
+
+    /**
+     * Reads the settings from the suite parameters.
+     *
+     * @param params The suite parameters.
+     */
+    public BenchmarkSettings(Map<String, String> params) {
+        this.mqttMessages = (int) SuiteFixtureListener.parseLongParam(params, TestRunArg.MQTT_BENCHMARK_COUNT, 0);
+        this.mqttSubscribers = (int) SuiteFixtureListener.parseLongParam(params, TestRunArg.MQTT_BENCHMARK_SUBSCRIBERS, 300);
+        this.mqttTopicCounts = parseIntList(params.get(TestRunArg.MQTT_BENCHMARK_TOPICS.toString()), "10,100,1000");
+        this.fleetDevices = (int) SuiteFixtureListener.parseLongParam(params, TestRunArg.MQTT_FLEET_DEVICES, 0);
+        this.fleetRate = parseDouble(params.get(TestRunArg.MQTT_FLEET_RATE.toString()), 1.0);
+        this.fleetDuration = (int) SuiteFixtureListener.parseLongParam(params, TestRunArg.MQTT_FLEET_DURATION, 30);
+        this.ingestRate = parseDouble(params.get(TestRunArg.HTTP_INGEST_RATE.toString()), 0);
+        this.ingestClients = (int) SuiteFixtureListener.parseLongParam(params, TestRunArg.HTTP_INGEST_CLIENTS, 16);
+        this.ingestDuration = (int) SuiteFixtureListener.parseLongParam(params, TestRunArg.HTTP_INGEST_DURATION, 30);
+    }
+
+    private static double parseDouble(String value, double dflt) {
+        if (null == value) {
+            return dflt;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException nfe) { // use default value instead
+            return dflt;
+        }
+    }
+
+    private static List<Integer> parseIntList(String value, String dflt) {
+        if (value == null || value.trim().isEmpty()) {
+            return parseIntList(dflt, dflt);
+        }
+        List<Integer> result = new ArrayList<>();
+        for (String part : value.split(",")) {
+            try {
+                result.add(Integer.valueOf(part.trim()));
+            } catch (NumberFormatException nfe) { // use default value instead
+                return parseIntList(dflt, dflt);
+            }
+        }
+        Collections.sort(result);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Finds the benchmark settings of the suite the given test context
+     * belongs to.
+     *
+     * @param testContext The test context.
+     * @return The benchmark settings.
+     */
+    public static BenchmarkSettings fromContext(ITestContext testContext) {
+        Object obj = testContext.getSuite().getAttribute(SuiteAttribute.BENCHMARK_SETTINGS.getName());
+        if (obj == null) {
+            Assert.fail("Benchmark settings not found in suite " + testContext.getSuite().getName() + ".");
+        }
+        return (BenchmarkSettings) obj;
+    }
+
+    /**
+     * @param suite The suite to check.
+     * @return true if the suite is the benchmark suite,
+     * {@link TestNGController#SUITE_BENCHMARKS}.
+     */
+    public static boolean isBenchmarkSuite(ISuite suite) {
+        return suite.getName().endsWith(TestNGController.BENCHMARK_SUITE_SUFFIX);
+    }
+
+    /**
+     * Fails, and thus skips the calling benchmark class, if it does not run
+     * in the benchmark suite, or if the conformance level whose flows the
+     * benchmark exercises is not tested. Benchmarks delete all entities when
+     * done, which must not happen in the certification suite.
+     *
+     * @param testContext The test context.
+     * @param level       The conformance level the benchmark builds on.
+     * @return The conformance level that is tested, 0 if not given.
+     */
+    public static int requireLevel(ITestContext testContext, int level) {
+        Assert.assertTrue(isBenchmarkSuite(testContext.getSuite()),
+                "Benchmarks only run in the benchmark suite, " + TestNGController.SUITE_BENCHMARKS);
+        Object obj = testContext.getSuite().getAttribute(SuiteAttribute.LEVEL.getName());
+        if (obj == null) {
+            return 0;
+        }
+        int ics = (Integer) obj;
+        Assert.assertTrue(ics >= level,
+                "Benchmarks of conformance level " + level + " will not be run since ics = " + ics);
+        return ics;
+    }
+
+    /**
+     * @return The number of messages to send for each case of the MQTT
+     * benchmarks, 0 if the MQTT benchmarks should not run.
+     */
+    public int getMqttMessages() {
+        return mqttMessages;
+    }
+
+    /**
+     * @return The number of subscribers of the MQTT fan-out benchmark.
+     */
+    public int getMqttSubscribers() {
+        return mqttSubscribers;
+    }
+
+    /**
+     * @return The numbers of Datastreams to subscribe to in the MQTT
+     * many-topic benchmark, in ascending order.
+     */
+    public List<Integer> getMqttTopicCounts() {
+        return mqttTopicCounts;
+    }
+
+    /**
+     * @return The number of Observations each simulated device publishes per
+     * second.
+     */
+    public double getFleetRate() {
+        return fleetRate;
+    }
+
+    /**
+     * @return The number of seconds the simulated devices publish.
+     */
+    public int getFleetDuration() {
+        return fleetDuration;
+    }
+
+    /**
+     * Fails, and thus skips the calling test class, if the fleet simulation
+     * is not requested.
+     *
+     * @return The number of devices to simulate.
+     */
+    public int requireFleetDevices() {
+        Assert.assertTrue(fleetDevices > 0,
+                "MQTT fleet simulation will not be run since " + TestRunArg.MQTT_FLEET_DEVICES + " is not set");
+        return fleetDevices;
+    }
+
+    /**
+     * @return The number of concurrent virtual clients of the HTTP ingest
+     * simulation.
+     */
+    public int getIngestClients() {
+        return ingestClients;
+    }
+
+    /**
+     * @return The number of seconds each payload shape is ingested.
+     */
+    public int getIngestDuration() {
+        return ingestDuration;
+    }
+
+    /**
+     * Fails, and thus skips the calling test class, if the HTTP ingest
+     * simulation is not requested.
+     *
+     * @return The number of requests to start per second.
+     */
+    public double requireIngestRate() {
+        Assert.assertTrue(ingestRate > 0,
+                "HTTP ingest simulation will not be run since " + TestRunArg.HTTP_INGEST_RATE + " is not set");
+        return ingestRate;
+    }
+
+    /**
+     * Fails, and thus skips the calling test class, if the MQTT benchmarks
+     * are not requested.
+     *
+     * @return The number of messages to send for each case.
+     */
+    public int requireMqttMessages() {
+        Assert.assertTrue(mqttMessages > 0,
+                "MQTT benchmarks will not be run since " + TestRunArg.MQTT_BENCHMARK_COUNT + " is not set");
+        return mqttMessages;
+    }
+
+    @Override
+    public String toString() {
+        return "Benchmarks: MQTT messages per case: " + mqttMessages
+                + ", MQTT subscribers: " + mqttSubscribers
+                + ", MQTT topics: " + mqttTopicCounts
+                + ", fleet: " + fleetDevices + " devices at " + fleetRate + "/s for " + fleetDuration + " s"
+                + ", HTTP ingest: " + ingestRate + "/s from " + ingestClients + " clients for " + ingestDuration + " s";
+    }
+}
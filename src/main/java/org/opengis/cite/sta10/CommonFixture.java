@@ -47,9 +47,14 @@ public class CommonFixture {
      */
     @BeforeClass
     public void initCommonFixture(ITestContext testContext) {
-        Object obj = testContext.getSuite().getAttribute(SuiteAttribute.CLIENT.getName());
+        Object obj = testContext.getSuite().getAttribute(SuiteAttribute.SERVICE_DESCRIPTOR.getName());
         if (null != obj) {
-            this.client = Client.class.cast(obj);
+            this.client = ServiceDescriptor.class.cast(obj).getClient();
+        } else {
+            obj = testContext.getSuite().getAttribute(SuiteAttribute.CLIENT.getName());
+            if (null != obj) {
+                this.client = Client.class.cast(obj);
+            }
         }
         obj = testContext.getSuite().getAttribute(SuiteAttribute.TEST_SUBJECT.getName());
         if (null == obj) {
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10;
+
+import java.util.concurrent.TimeUnit;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.perf.FixturePhaseEvent;
+import org.opengis.cite.sta10.util.perf.PhaseProfiler;
+import org.opengis.cite.sta10.util.perf.RunMetrics;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+/**
+ * A listener that labels the run metrics with the conformance level and test
+ * class of each invoked method, and records the duration of configuration
+ * methods as fixture phases and of test methods as tests. Configuration
+ * methods are also emitted as Flight Recorder events. Both kinds of methods
+ * are added to the {@link PhaseProfiler} of the run, which
+ * {@link SuiteFixtureListener} writes at the end of the suite.
+ *
+ * @author scf
+ */
+public class MetricsListener implements IInvokedMethodListener {
+
+    /**
+     * The event of the configuration method running on this thread.
+     */
+    private final ThreadLocal<FixturePhaseEvent> phaseEvent = new ThreadLocal<>();
+
+    @Override
+    public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {
+        String level = testResult.getTestContext().getName();
+        String testClass = testResult.getTestClass().getRealClass().getSimpleName();
+        HTTPMethods.getMetrics().setContext(level, testClass);
+        HTTPMethods.getProfiler().setContext(level, testClass);
+        if (method.isConfigurationMethod()) {
+            FixturePhaseEvent event = new FixturePhaseEvent();
+            event.begin();
+            phaseEvent.set(event);
+        }
+    }
+
+    @Override
+    public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+        RunMetrics metrics = HTTPMethods.getMetrics();
+        long nanos = TimeUnit.MILLISECONDS.toNanos(testResult.getEndMillis() - testResult.getStartMillis());
+        ITestNGMethod testMethod = method.getTestMethod();
+        if (method.isTestMethod()) {
+            metrics.recordTest(testMethod.getMethodName(), statusName(testResult.getStatus()), nanos);
+            HTTPMethods.getProfiler().record(testMethod.getMethodName(), nanos);
+        } else {
+            String phase = phaseName(testMethod);
+            metrics.recordPhase(phase, nanos);
+            HTTPMethods.getProfiler().record(phase, nanos);
+            FixturePhaseEvent event = phaseEvent.get();
+            if (event != null) {
+                phaseEvent.remove();
+                event.commit(testResult.getTestContext().getName(), testResult.getTestClass().getRealClass().getSimpleName(), phase);
+            }
+        }
+    }
+
+    private static String phaseName(ITestNGMethod method) {
+        if (method.isBeforeClassConfiguration()) {
+            return "setup";
+        }
+        if (method.isAfterClassConfiguration()) {
+            return "teardown";
+        }
+        if (method.isBeforeMethodConfiguration()) {
+            return "method setup";
+        }
+        if (method.isAfterMethodConfiguration()) {
+            return "method teardown";
+        }
+        return "other";
+    }
+
+    private static String statusName(int status) {
+        switch (status) {
+            case ITestResult.SUCCESS:
+                return "success";
+            case ITestResult.FAILURE:
+                return "failure";
+            case ITestResult.SKIP:
+                return "skip";
+            default:
+                return "other";
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10;
+
+import com.sun.jersey.api.client.Client;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.Extension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.ISuite;
+import org.testng.ITestContext;
+
+/**
+ * Everything the suite learned about the service under test before the first
+ * test ran. It is built once by the {@link SuiteFixtureListener} and shared
+ * through the {@link SuiteAttribute#SERVICE_DESCRIPTOR} attribute, so test
+ * classes do not have to fetch the service root or build their own clients.
+ *
+ * @author scf
+ */
+public class ServiceDescriptor {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceDescriptor.class);
+
+    private final String rootUri;
+    private final String rootResponse;
+    private final Set<Extension> extensions;
+    private final Set<EntityType> enabledEntityTypes;
+    private final String mqttServerUri;
+    private final long mqttTimeout;
+    private final long baselineRttNanos;
+    private final Client client;
+    private final SensorThingsService service;
+
+    /**
+     * Creates a new descriptor.
+     *
+     * @param rootUri          The root URI of the service, normalised with
+     *                         {@link #normaliseRootUri(String)}.
+     * @param rootResponse     The response of the service root.
+     * @param extensions       The extensions listed in the service root.
+     * @param mqttServerUri    The MQTT endpoint, may be null.
+     * @param mqttTimeout      The time to wait for MQTT messages, in
+     *                         milliseconds.
+     * @param baselineRttNanos The fastest round trip time of the service root
+     *                         request, in nanoseconds.
+     * @param client           The client for XML requests, may be null.
+     */
+    public ServiceDescriptor(String rootUri, String rootResponse, Set<Extension> extensions, String mqttServerUri, long mqttTimeout, long baselineRttNanos, Client client) {
+        this.rootUri = rootUri;
+        this.rootResponse = rootResponse;
+        Set<Extension> extensionsCopy = EnumSet.of(Extension.CORE);
+        extensionsCopy.addAll(extensions);
+        this.extensions = Collections.unmodifiableSet(extensionsCopy);
+        Set<EntityType> entityTypes = EnumSet.noneOf(EntityType.class);
+        for (EntityType entityType : EntityType.values()) {
+            if (extensionsCopy.contains(entityType.getExtension())) {
+                entityTypes.add(entityType);
+            }
+        }
+        this.enabledEntityTypes = Collections.unmodifiableSet(entityTypes);
+        this.mqttServerUri = mqttServerUri;
+        this.mqttTimeout = mqttTimeout;
+        this.baselineRttNanos = baselineRttNanos;
+        this.client = client;
+        this.service = createService(rootUri);
+    }
+
+    private static SensorThingsService createService(String rootUri) {
+        try {
+            return new SensorThingsService(new URL(rootUri));
+        } catch (MalformedURLException ex) {
+            LOGGER.error("Failed to create service uri.", ex);
+        } catch (Exception ex) {
+            LOGGER.error("Unknown Exception.", ex);
+        }
+        return null;
+    }
+
+    /**
+     * Trims the given URI and removes a trailing slash.
+     *
+     * @param rootUri The URI to normalise.
+     * @return The normalised URI.
+     */
+    public static String normaliseRootUri(String rootUri) {
+        rootUri = rootUri.trim();
+        if (rootUri.endsWith("/")) {
+            rootUri = rootUri.substring(0, rootUri.length() - 1);
+        }
+        return rootUri;
+    }
+
+    /**
+     * Finds the descriptor of the suite the given test context belongs to.
+     *
+     * @param testContext The test context.
+     * @return The service descriptor.
+     */
+    public static ServiceDescriptor fromContext(ITestContext testContext) {
+        return fromSuite(testContext.getSuite());
+    }
+
+    /**
+     * Finds the descriptor of the given suite.
+     *
+     * @param suite The suite.
+     * @return The service descriptor.
+     */
+    public static ServiceDescriptor fromSuite(ISuite suite) {
+        Object obj = suite.getAttribute(SuiteAttribute.SERVICE_DESCRIPTOR.getName());
+        if (obj == null) {
+            Assert.fail("Service descriptor not found in suite " + suite.getName() + ".");
+        }
+        return (ServiceDescriptor) obj;
+    }
+
+    /**
+     * @return The root URI of the service, without trailing slash.
+     */
+    public String getRootUri() {
+        return rootUri;
+    }
+
+    /**
+     * @return The response of the service root, as fetched at the start of
+     * the suite.
+     */
+    public String getRootResponse() {
+        return rootResponse;
+    }
+
+    /**
+     * @return The extensions listed in the service root, always including
+     * {@link Extension#CORE}.
+     */
+    public Set<Extension> getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * @param extension The extension to check.
+     * @return true if the service implements the given extension.
+     */
+    public boolean hasExtension(Extension extension) {
+        return extensions.contains(extension);
+    }
+
+    /**
+     * @return The entity types of all extensions the service implements.
+     */
+    public Set<EntityType> getEnabledEntityTypes() {
+        return enabledEntityTypes;
+    }
+
+    /**
+     * @return The MQTT endpoint, or null if none was configured.
+     */
+    public String getMqttServerUri() {
+        return mqttServerUri;
+    }
+
+    /**
+     * Fails if no MQTT endpoint was configured.
+     *
+     * @return The MQTT endpoint.
+     */
+    public String requireMqttServerUri() {
+        if (mqttServerUri == null) {
+            Assert.fail("Property '" + SuiteAttribute.MQTT_SERVER.getName() + "' not set in configuration");
+        }
+        return mqttServerUri;
+    }
+
+    /**
+     * @return The time to wait for MQTT messages, in milliseconds.
+     */
+    public long getMqttTimeout() {
+        return mqttTimeout;
+    }
+
+    /**
+     * @return The fastest round trip time of the service root request, in
+     * nanoseconds.
+     */
+    public long getBaselineRttNanos() {
+        return baselineRttNanos;
+    }
+
+    /**
+     * @return The fastest round trip time of the service root request, in
+     * milliseconds.
+     */
+    public long getBaselineRttMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(baselineRttNanos);
+    }
+
+    /**
+     * @return The client for XML requests, may be null.
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * @return The SensorThings client shared by all test classes, or null if
+     * it could not be created.
+     */
+    public SensorThingsService getService() {
+        return service;
+    }
+
+    @Override
+    public String toString() {
+        return "Service " + rootUri + " with " + extensions
+                + ", MQTT: " + mqttServerUri
+                + ", baseline RTT: " + getBaselineRttMillis() + " ms";
+    }
+}
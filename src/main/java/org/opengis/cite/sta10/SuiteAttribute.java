@@ -1,6 +1,8 @@
 package org.opengis.cite.sta10;
 
 import com.sun.jersey.api.client.Client;
+import org.opengis.cite.sta10.util.SharedDataset;
+import org.opengis.cite.sta10.util.http.RequestThrottle;
 import org.w3c.dom.Document;
 
 /**
@@ -31,7 +33,25 @@ public enum SuiteAttribute {
      * Timeout used to wait for messages on MQTT in milliseconds (e.g. 3000
      * equals 3 seconds)
      */
-    MQTT_TIMEOUT("mqttTimeout", Long.class);
+    MQTT_TIMEOUT("mqttTimeout", Long.class),
+    /**
+     * The client-side limits all HTTP requests and MQTT publishes pass
+     * through.
+     */
+    REQUEST_THROTTLE("requestThrottle", RequestThrottle.class),
+    /**
+     * What the suite learned about the service under test at the start of the
+     * run.
+     */
+    SERVICE_DESCRIPTOR("serviceDescriptor", ServiceDescriptor.class),
+    /**
+     * The read-only entities shared by several test classes.
+     */
+    SHARED_DATASET("sharedDataset", SharedDataset.class),
+    /**
+     * The settings of the optional benchmarks.
+     */
+    BENCHMARK_SETTINGS("benchmarkSettings", BenchmarkSettings.class);
 
     private final Class attrType;
     private final String attrName;
@@ -3,14 +3,29 @@ package org.opengis.cite.sta10;
 import com.sun.jersey.api.client.Client;
 import java.io.*;
 import java.net.*;
+import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.util.BulkDelete;
 import org.opengis.cite.sta10.util.ClientUtils;
+import org.opengis.cite.sta10.util.EntityUtils;
+import org.opengis.cite.sta10.util.Extension;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.SharedDataset;
 import org.opengis.cite.sta10.util.TestSuiteLogger;
+import org.opengis.cite.sta10.util.http.AdaptiveConcurrencyLimiter;
+import org.opengis.cite.sta10.util.http.BatchTransport;
+import org.opengis.cite.sta10.util.http.RequestThrottle;
+import org.opengis.cite.sta10.util.http.ResponseMemo;
+import org.opengis.cite.sta10.util.mqtt.MqttHelper;
+import org.opengis.cite.sta10.util.perf.PhaseProfiler;
+import org.opengis.cite.sta10.util.perf.RunMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.ISuite;
@@ -39,21 +54,158 @@ public class SuiteFixtureListener implements ISuiteListener {
     public static final String KEY_HAS_MULTI_DATASTREAM = "hasMultiDatastream";
     public static final String KEY_HAS_ACTUATION = "hasActuation";
 
+    /**
+     * The number of service root requests, the fastest of which is the
+     * baseline round trip time.
+     */
+    private static final int BASELINE_SAMPLES = 3;
+
     @Override
     public void onStart(ISuite suite) {
-        processSuiteParameters(suite);
+        registerRunMetrics(suite);
+        long start = System.nanoTime();
+        registerRequestThrottle(suite);
         registerClientComponent(suite);
+        processSuiteParameters(suite);
+        registerBatchTransport(suite);
+        registerSharedDataset(suite);
+        long nanos = System.nanoTime() - start;
+        HTTPMethods.getMetrics().recordPhase("suite setup", nanos);
+        HTTPMethods.getProfiler().record("setup", nanos);
     }
 
     @Override
     public void onFinish(ISuite suite) {
+        LOGGER.info(HTTPMethods.getThrottle().getStatistics());
+        LOGGER.info(HTTPMethods.getLimiter().getHistorySummary());
+        LOGGER.info(HTTPMethods.getMemo().getStatistics());
+        LOGGER.info(HTTPMethods.getBatch().getStatistics());
+        LOGGER.info(EntityUtils.getBulkDelete().getStatistics());
+        PhaseProfiler profiler = HTTPMethods.getProfiler();
+        profiler.setContext("suite", getClass().getSimpleName());
+        long start = System.nanoTime();
+        Object dataset = suite.getAttribute(SuiteAttribute.SHARED_DATASET.getName());
+        if (dataset != null) {
+            ((SharedDataset) dataset).close();
+        }
+        profiler.record("teardown", System.nanoTime() - start);
+        LOGGER.info(profiler.getReport());
+        profiler.writeTo(Paths.get(suite.getOutputDirectory(), "profile.txt"));
+        RunMetrics metrics = HTTPMethods.getMetrics();
+        String file = suite.getXmlSuite().getParameters().get(TestRunArg.METRICS_FILE.toString());
+        metrics.writeTo(file == null ? Paths.get(suite.getOutputDirectory(), "metrics.txt") : Paths.get(file));
+        metrics.stopServing();
+    }
+
+    /**
+     * Sets up fresh metrics and a fresh phase profiler for the run, labelled
+     * as the suite set up until the first test class starts, and serves the
+     * metrics on the port given by the {@link TestRunArg#METRICS_PORT}
+     * argument, if set.
+     *
+     * @param suite The test suite instance.
+     */
+    void registerRunMetrics(ISuite suite) {
+        RunMetrics metrics = new RunMetrics();
+        metrics.setContext("suite", getClass().getSimpleName());
+        HTTPMethods.setMetrics(metrics);
+        PhaseProfiler profiler = new PhaseProfiler();
+        profiler.setContext("suite", getClass().getSimpleName());
+        HTTPMethods.setProfiler(profiler);
+        int port = (int) parseLongParam(suite.getXmlSuite().getParameters(), TestRunArg.METRICS_PORT, 0);
+        if (port > 0) {
+            metrics.serve(port);
+        }
+    }
+
+    /**
+     * Sets up the {@link SharedDataset} and counts the test classes that
+     * declare to use it. It is added to the suite fixture as the value of the
+     * {@link SuiteAttribute#SHARED_DATASET} attribute.
+     *
+     * @param suite The test suite instance.
+     */
+    void registerSharedDataset(ISuite suite) {
+        ServiceDescriptor descriptor = ServiceDescriptor.fromSuite(suite);
+        SharedDataset dataset = new SharedDataset(descriptor.getService());
+        dataset.declareConsumers(suite);
+        suite.setAttribute(SuiteAttribute.SHARED_DATASET.getName(), dataset);
+    }
+
+    /**
+     * Sets up the transport that combines independent requests into $batch
+     * requests, if the service root advertises batch support and the
+     * {@link TestRunArg#HTTP_BATCH_SIZE} argument is not 0.
+     *
+     * @param suite The test suite instance.
+     */
+    void registerBatchTransport(ISuite suite) {
+        ServiceDescriptor descriptor = ServiceDescriptor.fromSuite(suite);
+        Map<String, String> params = suite.getXmlSuite().getParameters();
+        int maxSize = (int) parseLongParam(params, TestRunArg.HTTP_BATCH_SIZE, 50);
+        boolean advertised = BatchTransport.isAdvertised(descriptor.getRootResponse());
+        HTTPMethods.setBatch(new BatchTransport(descriptor.getRootUri(), advertised, maxSize));
+        LOGGER.info("Service {} $batch, batch size {}.", advertised ? "advertises" : "does not advertise", maxSize);
+    }
+
+    /**
+     * Sets up the client-side limits for requests to the service under test,
+     * as configured by the HTTP_* test run arguments, and a fresh adaptive
+     * concurrency limiter that does not exceed the configured maximum
+     * concurrency, the memo for GET responses, and a fresh detection of
+     * delete-by-filter support. The throttle is also added to the suite
+     * fixture as the value of the {@link SuiteAttribute#REQUEST_THROTTLE}
+     * attribute.
+     *
+     * @param suite The test suite instance.
+     */
+    void registerRequestThrottle(ISuite suite) {
+        Map<String, String> params = suite.getXmlSuite().getParameters();
+        double rate = 0;
+        String rateParam = params.get(TestRunArg.HTTP_RATE.toString());
+        if (null != rateParam) {
+            try {
+                rate = Double.parseDouble(rateParam);
+            } catch (NumberFormatException nfe) { // use default value instead
+            }
+        }
+        int burst = (int) parseLongParam(params, TestRunArg.HTTP_BURST, 1);
+        int maxConcurrency = (int) parseLongParam(params, TestRunArg.HTTP_MAX_CONCURRENCY, 0);
+        long budget = parseLongParam(params, TestRunArg.HTTP_REQUEST_BUDGET, 0);
+        RequestThrottle throttle = new RequestThrottle(rate, burst, maxConcurrency, budget);
+        HTTPMethods.setThrottle(throttle);
+        if (BenchmarkSettings.isBenchmarkSuite(suite)) {
+            // The ingest benchmark keeps a fixed number of clients busy, the
+            // adaptive limiter would cap them and back off as latency grows.
+            int clients = new BenchmarkSettings(params).getIngestClients();
+            HTTPMethods.setLimiter(new AdaptiveConcurrencyLimiter(clients, clients, clients));
+        } else {
+            HTTPMethods.setLimiter(new AdaptiveConcurrencyLimiter(2, maxConcurrency > 0 ? maxConcurrency : 8));
+        }
+        HTTPMethods.setMemo(new ResponseMemo((int) parseLongParam(params, TestRunArg.HTTP_GET_MEMO_SIZE, 256)));
+        EntityUtils.setBulkDelete(new BulkDelete());
+        suite.setAttribute(SuiteAttribute.REQUEST_THROTTLE.getName(), throttle);
+    }
+
+    static long parseLongParam(Map<String, String> params, TestRunArg arg, long dflt) {
+        String value = params.get(arg.toString());
+        if (null == value) {
+            return dflt;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) { // use default value instead
+            return dflt;
+        }
     }
 
     /**
      * Processes test suite arguments and sets suite attributes accordingly. The
      * entity referenced by the {@link TestRunArg#IUT iut} argument is parsed
      * and the resulting Document is set as the value of the "testSubject"
-     * attribute.
+     * attribute. The service root is fetched and checked once, and the
+     * resulting {@link ServiceDescriptor} is set as the value of the
+     * {@link SuiteAttribute#SERVICE_DESCRIPTOR} attribute.
      *
      * @param suite An ISuite object representing a TestNG test suite.
      */
@@ -72,8 +224,22 @@ public class SuiteFixtureListener implements ISuiteListener {
         suite.setAttribute(SuiteAttribute.LEVEL.getName(), level);
 
         String iutParam = params.get(TestRunArg.IUT.toString());
+        String rootUri = ServiceDescriptor.normaliseRootUri(iutParam);
 
-        String response = checkServiceRootUri(iutParam, params);
+        long start = System.nanoTime();
+        String rootResponse = fetchServiceRoot(rootUri);
+        long rtt = System.nanoTime() - start;
+        if (rootResponse == null) {
+            throw new IllegalArgumentException("Cannot connect to " + rootUri + ".");
+        }
+        // The first request includes setting up the connection.
+        for (int i = 1; i < BASELINE_SAMPLES; i++) {
+            start = System.nanoTime();
+            if (fetchServiceRoot(rootUri) != null) {
+                rtt = Math.min(rtt, System.nanoTime() - start);
+            }
+        }
+        String response = checkServiceRootUri(rootUri, rootResponse, params);
         if (!response.equals("")) {
             throw new IllegalArgumentException(
                     response);
@@ -90,6 +256,29 @@ public class SuiteFixtureListener implements ISuiteListener {
             }
         }
         suite.setAttribute(SuiteAttribute.MQTT_TIMEOUT.getName(), mqttTimeout);
+        MqttHelper.setPublishWindow((int) parseLongParam(params, TestRunArg.MQTT_PUBLISH_WINDOW, 100));
+        BenchmarkSettings benchmarkSettings = new BenchmarkSettings(params);
+        suite.setAttribute(SuiteAttribute.BENCHMARK_SETTINGS.getName(), benchmarkSettings);
+        LOGGER.info("{}", benchmarkSettings);
+
+        Set<Extension> extensions = EnumSet.of(Extension.CORE);
+        if (Boolean.TRUE.toString().equals(params.get(KEY_HAS_MULTI_DATASTREAM))) {
+            extensions.add(Extension.MULTI_DATASTREAM);
+        }
+        if (Boolean.TRUE.toString().equals(params.get(KEY_HAS_ACTUATION))) {
+            extensions.add(Extension.ACTUATION);
+        }
+        Client client = (Client) suite.getAttribute(SuiteAttribute.CLIENT.getName());
+        ServiceDescriptor descriptor = new ServiceDescriptor(
+                rootUri,
+                rootResponse,
+                extensions,
+                params.get(TestRunArg.MQTT_SERVER.toString()),
+                mqttTimeout,
+                rtt,
+                client);
+        suite.setAttribute(SuiteAttribute.SERVICE_DESCRIPTOR.getName(), descriptor);
+        LOGGER.info("{}", descriptor);
         if (TestSuiteLogger.isLoggable(Level.FINE)) {
             StringBuilder logMsg = new StringBuilder(
                     "Parsed resource retrieved from ");
@@ -114,19 +303,13 @@ public class SuiteFixtureListener implements ISuiteListener {
     }
 
     /**
-     * Checking the service root URL to be compliant with SensorThings API
+     * Fetches the service root.
      *
-     * @param rootUri The root URL for the service under test.
-     * @param params  The params map for passing if MultiDatastreams is enabled.
-     * @return If the root URL of the service is not compliant to SensorThings
-     * API, it will return the reason it is not compliant. Otherwise it returns
-     * empty String.
+     * @param rootUri The normalised root URL for the service under test.
+     * @return The response of the service root, or null if the service could
+     * not be reached.
      */
-    private String checkServiceRootUri(String rootUri, Map<String, String> params) {
-        rootUri = rootUri.trim();
-        if (rootUri.endsWith("/")) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
+    private String fetchServiceRoot(String rootUri) {
         HttpURLConnection connection = null;
         String response = null;
         //Create connection
@@ -155,8 +338,23 @@ public class SuiteFixtureListener implements ISuiteListener {
             rd.close();
         } catch (IOException e) {
             LOGGER.error("Cannot connect to " + rootUri + ".", e);
-            return "Cannot connect to " + rootUri + ".";
+            return null;
         }
+        return response;
+    }
+
+    /**
+     * Checking the service root URL to be compliant with SensorThings API
+     *
+     * @param rootUri  The normalised root URL for the service under test.
+     * @param response The response of the service root.
+     * @param params   The params map for passing if MultiDatastreams is
+     *                 enabled.
+     * @return If the root URL of the service is not compliant to SensorThings
+     * API, it will return the reason it is not compliant. Otherwise it returns
+     * empty String.
+     */
+    private String checkServiceRootUri(String rootUri, String response, Map<String, String> params) {
         JSONObject jsonResponse = null;
         JSONArray entities = null;
         try {
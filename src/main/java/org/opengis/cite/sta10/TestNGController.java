@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -15,6 +16,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.transform.Source;
 
 import org.opengis.cite.sta10.util.TestSuiteLogger;
+import org.opengis.cite.sta10.util.perf.FlightRecorder;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -28,6 +30,24 @@ import com.occamlab.te.spi.jaxrs.TestSuiteController;
  */
 public class TestNGController implements TestSuiteController {
 
+    /**
+     * The certification suite.
+     */
+    public static final String SUITE_CONFORMANCE = "testng.xml";
+    /**
+     * The benchmarks, which are not part of the certification suite.
+     */
+    public static final String SUITE_BENCHMARKS = "testng-benchmarks.xml";
+    /**
+     * The end of the name of the benchmark suite.
+     */
+    public static final String BENCHMARK_SUITE_SUFFIX = "-benchmarks";
+    /**
+     * The system property that selects the suite {@link #main(String[])}
+     * runs, {@link #SUITE_CONFORMANCE} if not set.
+     */
+    public static final String PROPERTY_SUITE = "sta10.suite";
+
     private TestRunExecutor executor;
     private Properties etsProperties = new Properties();
 
@@ -37,7 +57,11 @@ public class TestNGController implements TestSuiteController {
      * @param args Test run arguments (optional). The first argument must refer
      *             to an XML properties file containing the expected set of test
      *             run arguments. If no argument is supplied, the file located at
-     *             ${user.home}/test-run-props.xml will be used.
+     *             ${user.home}/test-run-props.xml will be used. The optional
+     *             second argument is a file to write a Java Flight Recorder
+     *             recording of the whole run to. The benchmarks run instead of
+     *             the certification suite when the system property
+     *             {@value #PROPERTY_SUITE} is {@value #SUITE_BENCHMARKS}.
      * @throws Exception If the test run cannot be executed (usually due to
      *                   unsatisfied pre-conditions).
      */
@@ -57,9 +81,22 @@ public class TestNGController implements TestSuiteController {
 //                    "Test run arguments not found at " + xmlArgs);
 //        }
         Document testRunArgs = db.parse(xmlArgs);
-        TestNGController controller = new TestNGController();
-        Source testResults = controller.doTestRun(testRunArgs);
-        System.out.println("Test results: " + testResults.getSystemId());
+        AutoCloseable recording = null;
+        if (args.length > 1) {
+            recording = FlightRecorder.startRecording(Paths.get(args[1]));
+        }
+        try {
+            String homeUri = new File(System.getProperty("user.home")).toURI().toString();
+            String suite = System.getProperty(PROPERTY_SUITE, SUITE_CONFORMANCE);
+            TestNGController controller = new TestNGController(homeUri, suite);
+            Source testResults = controller.doTestRun(testRunArgs);
+            System.out.println("Test results: " + testResults.getSystemId());
+        } finally {
+            if (recording != null) {
+                recording.close();
+                System.out.println("Flight recording: " + args[1]);
+            }
+        }
     }
 
     /**
@@ -78,6 +115,20 @@ public class TestNGController implements TestSuiteController {
      *                     does not exist.
      */
     public TestNGController(String outputDirUri) {
+        this(outputDirUri, SUITE_CONFORMANCE);
+    }
+
+    /**
+     * Construct a controller that runs the given suite, and writes results to
+     * the given output directory.
+     *
+     * @param outputDirUri  A file URI that specifies the location of the
+     *                      directory in which test results will be written. It
+     *                      will be created if it does not exist.
+     * @param suiteResource The TestNG suite to run, {@link #SUITE_CONFORMANCE}
+     *                      or {@link #SUITE_BENCHMARKS}.
+     */
+    public TestNGController(String outputDirUri, String suiteResource) {
         InputStream is = getClass().getResourceAsStream("ets.properties");
         try {
             this.etsProperties.load(is);
@@ -85,7 +136,10 @@ public class TestNGController implements TestSuiteController {
             TestSuiteLogger.log(Level.WARNING,
                     "Unable to load ets.properties. " + ex.getMessage());
         }
-        URL tngSuite = TestNGController.class.getResource("testng.xml");
+        URL tngSuite = TestNGController.class.getResource(suiteResource);
+        if (tngSuite == null) {
+            throw new IllegalArgumentException("No TestNG suite named " + suiteResource);
+        }
         File resultsDir = new File(URI.create(outputDirUri));
         TestSuiteLogger.log(Level.CONFIG, "Using TestNG config: " + tngSuite);
         TestSuiteLogger.log(Level.CONFIG,
@@ -23,7 +23,98 @@ public enum TestRunArg {
      * Timeout used to wait for messages on MQTT in milliseconds (e.g. 3000
      * equals 3 seconds)
      */
-    MQTT_TIMEOUT;
+    MQTT_TIMEOUT,
+    /**
+     * The maximum number of HTTP requests per second sent to the service
+     * (e.g. 20). Not limited if not set.
+     */
+    HTTP_RATE,
+    /**
+     * The number of HTTP requests that may be sent without delay after an idle
+     * period when a rate limit is set (e.g. 5). Defaults to 1.
+     */
+    HTTP_BURST,
+    /**
+     * The maximum number of HTTP requests in flight at the same time (e.g.
+     * 4). Not limited if not set.
+     */
+    HTTP_MAX_CONCURRENCY,
+    /**
+     * The maximum number of HTTP requests for the whole test run. The run
+     * fails once the budget is exhausted. Not limited if not set.
+     */
+    HTTP_REQUEST_BUDGET,
+    /**
+     * The number of GET responses remembered while the test fixture does not
+     * change (e.g. 256). Set to 0 to send every GET to the service.
+     */
+    HTTP_GET_MEMO_SIZE,
+    /**
+     * The maximum number of requests combined in one $batch request (e.g.
+     * 50), if the service advertises batch support. Set to 0 to send every
+     * request individually.
+     */
+    HTTP_BATCH_SIZE,
+    /**
+     * The number of messages to send for each case of the MQTT benchmarks
+     * (e.g. 200). The benchmarks do not run if not set.
+     */
+    MQTT_BENCHMARK_COUNT,
+    /**
+     * The number of subscribers of the MQTT fan-out benchmark (default 300).
+     */
+    MQTT_BENCHMARK_SUBSCRIBERS,
+    /**
+     * The comma separated numbers of Datastreams to subscribe to in the MQTT
+     * many-topic benchmark (default 10,100,1000).
+     */
+    MQTT_BENCHMARK_TOPICS,
+    /**
+     * The maximum number of MQTT messages published without confirmation
+     * from the broker (default 100).
+     */
+    MQTT_PUBLISH_WINDOW,
+    /**
+     * The number of devices of the MQTT fleet simulation (e.g. 1000). The
+     * simulation does not run if not set.
+     */
+    MQTT_FLEET_DEVICES,
+    /**
+     * The number of Observations each simulated device publishes per second
+     * (default 1.0).
+     */
+    MQTT_FLEET_RATE,
+    /**
+     * The number of seconds the devices publish in the MQTT fleet simulation
+     * (default 30).
+     */
+    MQTT_FLEET_DURATION,
+    /**
+     * The number of HTTP ingest requests per second to start, regardless of
+     * how fast the service answers (e.g. 50). The HTTP ingest simulation does
+     * not run if not set.
+     */
+    HTTP_INGEST_RATE,
+    /**
+     * The number of concurrent virtual clients of the HTTP ingest simulation
+     * (default 16).
+     */
+    HTTP_INGEST_CLIENTS,
+    /**
+     * The number of seconds each payload shape is ingested in the HTTP
+     * ingest simulation (default 30).
+     */
+    HTTP_INGEST_DURATION,
+    /**
+     * The file to write the metrics of the run to, in the OpenMetrics text
+     * format (default metrics.txt in the output directory of the suite).
+     */
+    METRICS_FILE,
+    /**
+     * The local port to serve the metrics of the run on, at /metrics, while
+     * the suite runs. The metrics are not served if not set.
+     */
+    METRICS_PORT;
 
     @Override
     public String toString() {
@@ -15,20 +15,21 @@
  */
 package org.opengis.cite.sta10.createObservationsViaMQTT;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
-import org.joda.time.DateTime;
-import org.joda.time.Interval;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.ControlInformation;
 import org.opengis.cite.sta10.util.EntityHelper;
 import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.JsonComparator;
+import org.opengis.cite.sta10.util.mqtt.AsyncPublisher;
 import org.opengis.cite.sta10.util.mqtt.MqttHelper;
 import static org.opengis.cite.sta10.util.mqtt.MqttHelper.WAIT_AFTER_INSERT;
 import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
@@ -45,6 +46,7 @@ import org.testng.annotations.Test;
 public class Capability7Test {
 
     private MqttHelper mqttHelper;
+    private AsyncPublisher publisher;
     private EntityHelper entityHelper;
     private String rootUri;
 
@@ -58,30 +60,29 @@ public class Capability7Test {
                     "Conformance level 8 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        if (testContext.getSuite().getAttribute(SuiteAttribute.MQTT_SERVER.getName()) == null) {
-            Assert.fail("Property '" + SuiteAttribute.MQTT_SERVER.getName() + "' not set in configuration");
-        }
-        String mqttServerUri = testContext.getSuite().getAttribute(SuiteAttribute.MQTT_SERVER.getName()).toString();
-        if (testContext.getSuite().getAttribute(SuiteAttribute.MQTT_TIMEOUT.getName()) == null) {
-            Assert.fail("Property '" + SuiteAttribute.MQTT_TIMEOUT.getName() + "' not set in configuration");
-        }
-        long mqttTimeout = Long.parseLong(testContext.getSuite().getAttribute(SuiteAttribute.MQTT_TIMEOUT.getName()).toString());
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        String mqttServerUri = descriptor.requireMqttServerUri();
+        long mqttTimeout = descriptor.getMqttTimeout();
 
         this.entityHelper = new EntityHelper(rootUri);
         this.mqttHelper = new MqttHelper(mqttServerUri, mqttTimeout);
+        this.publisher = mqttHelper.openPublisher();
     }
 
     @AfterClass
     public void clearDatabase() {
+        if (publisher != null) {
+            publisher.close();
+        }
         entityHelper.deleteEverything();
     }
 
+    private void publish(String topic, String message) {
+        publisher.publish(topic, message.getBytes(StandardCharsets.UTF_8), MqttHelper.QOS);
+        publisher.flush();
+    }
+
     @Test(description = "Create observation via MQTT on observation entity set (topic: [version]/Observations", groups = "level-7")
     public void checkCreateObservationDirect() {
         entityHelper.deleteEntityType(EntityType.OBSERVATION);
@@ -94,7 +95,7 @@ public class Capability7Test {
         JSONObject latestObservation = entityHelper.getAnyEntity(
                 EntityType.OBSERVATION,
                 "$expand=Datastream($select=id),FeatureOfInterest($select=id)&$select=result,phenomenonTime,validTime,parameters");
-        Assert.assertTrue(jsonEquals(latestObservation, createdObservation));
+        JsonComparator.DEFAULT.assertJsonEquals(createdObservation, latestObservation, "Observation created via MQTT does not match the request.");
     }
 
     @Test(description = "Create observation via MQTT using topic [version]/Datastreams([ID])/Observations", groups = "level-7")
@@ -115,7 +116,7 @@ public class Capability7Test {
         JSONObject latestObservation = entityHelper.getAnyEntity(
                 EntityType.OBSERVATION,
                 "$expand=Datastream($select=id),FeatureOfInterest($select=id)&$select=result,phenomenonTime,validTime,parameters");
-        Assert.assertTrue(jsonEquals(latestObservation, createdObservation));
+        JsonComparator.DEFAULT.assertJsonEquals(createdObservation, latestObservation, "Observation created via MQTT does not match the request.");
     }
 
     @Test(description = "Create observation via MQTT using topic [version]/FeatureOfInterests([ID])/Observations", groups = "level-7")
@@ -136,7 +137,7 @@ public class Capability7Test {
         JSONObject latestObservation = entityHelper.getAnyEntity(
                 EntityType.OBSERVATION,
                 "$expand=Datastream($select=id),FeatureOfInterest($select=id)&$select=result,phenomenonTime,validTime,parameters");
-        Assert.assertTrue(jsonEquals(latestObservation, createdObservation));
+        JsonComparator.DEFAULT.assertJsonEquals(createdObservation, latestObservation, "Observation created via MQTT does not match the request.");
     }
 
     @Test(description = "Create observation with deep insert via MQTT on observation entity set (topic: [version]/Observations", groups = "level-7")
@@ -151,7 +152,7 @@ public class Capability7Test {
         JSONObject latestObservation = entityHelper.getAnyEntity(
                 EntityType.OBSERVATION,
                 expandQueryFromJsonObject(createdObservation));
-        Assert.assertTrue(jsonEquals(latestObservation, createdObservation));
+        JsonComparator.DEFAULT.assertJsonEquals(createdObservation, latestObservation, "Observation created via MQTT does not match the request.");
     }
 
     private String expandQueryFromJsonObject(JSONObject expectedResult) {
@@ -194,91 +195,6 @@ public class Capability7Test {
         return result;
     }
 
-    private static boolean jsonEquals(JSONObject obj1, JSONObject obj2) {
-        if (obj1 == obj2) {
-            return true;
-        }
-        if (obj1 == null) {
-            return false;
-        }
-        if (obj1.getClass() != obj2.getClass()) {
-            return false;
-        }
-        if (obj1.length() != obj2.length()) {
-            return false;
-        }
-        Iterator iterator = obj1.keys();
-        while (iterator.hasNext()) {
-            String key = iterator.next().toString();
-            if (!obj2.has(key)) {
-                return false;
-            }
-            try {
-                Object val1 = obj1.get(key);
-                if (val1 instanceof JSONObject) {
-                    if (!jsonEquals((JSONObject) val1, (JSONObject) obj2.getJSONObject(key))) {
-                        return false;
-                    }
-                } else if (val1 instanceof JSONArray) {
-                    JSONArray arr1 = (JSONArray) val1;
-                    JSONArray arr2 = obj2.getJSONArray(key);
-                    if (!jsonEquals(arr1, arr2)) {
-                        return false;
-                    }
-                } // check here for properties ending on 'time"
-                else if (key.toLowerCase().endsWith("time")) {
-                    if (!checkTimeEquals(val1.toString(), obj2.get(key).toString())) {
-                        return false;
-                    }
-                } else if (!val1.equals(obj2.get(key))) {
-                    return false;
-                }
-            } catch (JSONException ex) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static boolean jsonEquals(JSONArray arr1, JSONArray arr2) {
-        if (arr1.length() != arr2.length()) {
-            return false;
-        }
-        for (int i = 0; i < arr1.length(); i++) {
-            Object val1 = arr1.get(i);
-            if (val1 instanceof JSONObject) {
-                if (!jsonEquals((JSONObject) val1, arr2.getJSONObject(i))) {
-                    return false;
-                }
-            } else if (val1 instanceof JSONArray) {
-                if (!jsonEquals((JSONArray) val1, arr2.getJSONArray(i))) {
-                    return false;
-                }
-            } else if (!val1.equals(arr2.get(i))) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static boolean checkTimeEquals(String val1, String val2) {
-        try {
-            DateTime dateTime1 = DateTime.parse(val1);
-            DateTime dateTime2 = DateTime.parse(val2);
-            return dateTime1.isEqual(dateTime2);
-        } catch (Exception ex) {
-            // do nothing
-        }
-        try {
-            Interval interval1 = Interval.parse(val1);
-            Interval interval2 = Interval.parse(val2);
-            return interval1.isEqual(interval2);
-        } catch (Exception ex) {
-            Assert.fail("time properies could neither be parsed as time nor as interval");
-        }
-        return false;
-    }
-
     private JSONObject getObservation() {
         long value = new Random().nextLong();
         Object thingId = entityHelper.createThing();
@@ -13,14 +13,13 @@ import de.fraunhofer.iosb.ilt.sta.model.Thing;
 import de.fraunhofer.iosb.ilt.sta.model.builder.HistoricalLocationBuilder;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityUtils;
 import org.slf4j.Logger;
@@ -62,21 +61,9 @@ public class AdditionalTests {
                     "Conformance level 2 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
-        try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
-        } catch (MalformedURLException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (Exception ex) {
-            LOGGER.error("Unknown Exception.", ex);
-        }
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
     }
 
     @AfterClass
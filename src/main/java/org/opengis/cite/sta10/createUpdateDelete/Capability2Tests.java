@@ -10,12 +10,13 @@ import java.util.Set;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
-import org.opengis.cite.sta10.SuiteFixtureListener;
 import org.opengis.cite.sta10.util.ControlInformation;
 import org.opengis.cite.sta10.util.EntityType;
 import org.opengis.cite.sta10.util.Extension;
 import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.JsonComparator;
 import org.opengis.cite.sta10.util.ServiceURLBuilder;
 import org.opengis.cite.sta10.util.Utils;
 import static org.opengis.cite.sta10.util.Utils.quoteIdForJson;
@@ -99,28 +100,13 @@ public class Capability2Tests {
                     "Conformance level 2 will not be checked since ics = " + level);
         }
 
-        rootUri = suite.getAttribute(SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
+        ServiceDescriptor descriptor = ServiceDescriptor.fromSuite(suite);
+        rootUri = descriptor.getRootUri();
 
-        hasMultiDatastream = suite.getXmlSuite().getParameter(SuiteFixtureListener.KEY_HAS_MULTI_DATASTREAM) != null;
-        hasActuation = suite.getXmlSuite().getParameter(SuiteFixtureListener.KEY_HAS_ACTUATION) != null;
-        extensions.add(Extension.CORE);
-        if (hasMultiDatastream) {
-            extensions.add(Extension.MULTI_DATASTREAM);
-        }
-        if (hasActuation) {
-            extensions.add(Extension.ACTUATION);
-        }
-
-        for (EntityType entityType : EntityType.values()) {
-            if (!extensions.contains(entityType.getExtension())) {
-                continue;
-            }
-            enabledEntityTypes.add(entityType);
-        }
+        hasMultiDatastream = descriptor.hasExtension(Extension.MULTI_DATASTREAM);
+        hasActuation = descriptor.hasExtension(Extension.ACTUATION);
+        extensions.addAll(descriptor.getExtensions());
+        enabledEntityTypes.addAll(descriptor.getEnabledEntityTypes());
 
         deleteEverythings();
     }
@@ -1560,9 +1546,9 @@ public class Capability2Tests {
         try {
             for (EntityType.EntityProperty property : entityType.getProperties()) {
                 if (diffs.containsKey(property.name)) {
-                    Assert.assertEquals(newEntity.get(property.name).toString(), diffs.get(property.name).toString(), "PATCH was not applied correctly for " + entityType + "'s " + property.name + ".");
+                    assertPropertyEquals(property.name, diffs.get(property.name), newEntity.get(property.name), "PATCH was not applied correctly for " + entityType + "'s " + property.name + ".");
                 } else if (newEntity.has(property.name) && oldEntity.has(property.name)) {
-                    Assert.assertEquals(newEntity.get(property.name).toString(), oldEntity.get(property.name).toString(), "PATCH was not applied correctly for " + entityType + "'s " + property.name + ".");
+                    assertPropertyEquals(property.name, oldEntity.get(property.name), newEntity.get(property.name), "PATCH was not applied correctly for " + entityType + "'s " + property.name + ".");
                 } else {
                     Assert.assertEquals(newEntity.has(property.name), oldEntity.has(property.name), "PATCH was not applied correctly for " + entityType + "'s " + property.name + ".");
                 }
@@ -1586,7 +1572,7 @@ public class Capability2Tests {
         try {
             for (EntityType.EntityProperty property : entityType.getProperties()) {
                 if (diffs.containsKey(property.name)) {
-                    Assert.assertEquals(newEntity.get(property.name).toString(), diffs.get(property.name).toString(), "PUT was not applied correctly for " + entityType + ".");
+                    assertPropertyEquals(property.name, diffs.get(property.name), newEntity.get(property.name), "PUT was not applied correctly for " + entityType + ".");
                 } else {
 //                    Assert.assertEquals(newEntity.get(property), oldEntity.get(property), "PUT was not applied correctly for "+entityType+".");
                 }
@@ -1598,6 +1584,25 @@ public class Capability2Tests {
         }
     }
 
+    /**
+     * Check an updated property has the expected value. Simple values that
+     * have the same text are equal, so a result sent as "99" may be returned
+     * as the number 99. Other values are compared by JSON value, with time
+     * properties compared as instants.
+     *
+     * @param name     The name of the property.
+     * @param expected The expected value.
+     * @param actual   The value of the updated entity.
+     * @param message  The failure message.
+     */
+    private void assertPropertyEquals(String name, Object expected, Object actual, String message) {
+        if (!(expected instanceof JSONObject) && !(expected instanceof JSONArray)
+                && expected.toString().equals(actual.toString())) {
+            return;
+        }
+        JsonComparator.DEFAULT.assertValueEquals(name, expected, actual, message);
+    }
+
     /**
      * Check the FeatureOfInterest is created automatically correctly if not
      * inserted in Observation
@@ -1759,10 +1764,12 @@ public class Capability2Tests {
                 int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
                 JSONObject result = new JSONObject(responseMap.get("response").toString());
                 array = result.getJSONArray("value");
+                List<Runnable> deletes = new ArrayList<>(array.length());
                 for (int i = 0; i < array.length(); i++) {
                     Object id = array.getJSONObject(i).get(ControlInformation.ID);
-                    deleteEntity(entityType, id);
+                    deletes.add(() -> deleteEntity(entityType, id));
                 }
+                HTTPMethods.getLimiter().runAll(deletes);
             } catch (JSONException e) {
                 e.printStackTrace();
                 Assert.fail("An Exception occurred during testing!:\n" + e.getMessage());
@@ -13,15 +13,14 @@ import de.fraunhofer.iosb.ilt.sta.model.TimeObject;
 import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import static org.opengis.cite.sta10.filteringExtension.DateTimeTests.getFromListExcept;
 import static org.opengis.cite.sta10.filteringExtension.DateTimeTests.removeFromList;
@@ -91,19 +90,11 @@ public class DeleteFilterTests {
                     "Conformance level 2 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
         }
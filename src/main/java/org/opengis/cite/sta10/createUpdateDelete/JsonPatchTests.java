@@ -43,6 +43,7 @@ import java.util.Map;
 import org.geojson.Point;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityType;
 import org.opengis.cite.sta10.util.HTTPMethods;
@@ -92,13 +93,9 @@ public class JsonPatchTests {
                     "Conformance level 2 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        service = new SensorThingsService(new URL(rootUri));
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
         deleteEverything();
         createEntities();
     }
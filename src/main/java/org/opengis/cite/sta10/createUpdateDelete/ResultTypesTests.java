@@ -12,15 +12,14 @@ import de.fraunhofer.iosb.ilt.sta.model.Thing;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import java.math.BigDecimal;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityUtils;
 import org.slf4j.Logger;
@@ -62,20 +61,12 @@ public class ResultTypesTests {
                     "Conformance level 2 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException | URISyntaxException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (ServiceFailureException ex) {
+        } catch (ServiceFailureException | URISyntaxException ex) {
             LOGGER.error("Failed to create entities.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
@@ -20,10 +20,8 @@ import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,9 +30,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityType;
 import org.opengis.cite.sta10.util.EntityUtils;
+import org.opengis.cite.sta10.util.SharedDataset;
+import org.opengis.cite.sta10.util.UsesSharedDataset;
 import org.opengis.cite.sta10.util.HTTPMethods;
 import org.opengis.cite.sta10.util.ServiceURLBuilder;
 import org.slf4j.Logger;
@@ -51,6 +52,7 @@ import org.testng.annotations.Test;
  *
  * @author Hylke van der Schaaf
  */
+@UsesSharedDataset(SharedDataset.Part.SENSOR)
 public class DataArrayTests {
 
     /**
@@ -68,6 +70,7 @@ public class DataArrayTests {
     private String rootUri;
     boolean hasMultiDatastream;
     private SensorThingsService service;
+    private SharedDataset sharedDataset;
     private final List<Thing> THINGS = new ArrayList<>();
     private final List<Location> LOCATIONS = new ArrayList<>();
     private final List<Sensor> SENSORS = new ArrayList<>();
@@ -95,20 +98,14 @@ public class DataArrayTests {
         hasMultiDatastream = suite.getXmlSuite().getParameter("hasMultiDatastream") != null;
         Assert.assertTrue(hasMultiDatastream, "Conformance level 5 not checked since MultiDatastreams not listed in Service Root.");
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
+        sharedDataset = SharedDataset.fromContext(testContext);
+        sharedDataset.acquire(getClass());
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException | URISyntaxException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (ServiceFailureException ex) {
+        } catch (ServiceFailureException | URISyntaxException ex) {
             LOGGER.error("Failed to create entities.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
@@ -119,12 +116,17 @@ public class DataArrayTests {
     public void tearDown() {
         LOGGER.info("tearing down class.");
         try {
-            EntityUtils.deleteAll(service);
+            EntityUtils.deleteAllExcept(service, sharedDataset.getIdUrls());
         } catch (ServiceFailureException ex) {
             LOGGER.error("Failed to clean database.", ex);
         }
     }
 
+    @AfterClass(alwaysRun = true)
+    public void releaseSharedDataset(ITestContext testContext) {
+        SharedDataset.fromContext(testContext).release(getClass());
+    }
+
     private void createEntities() throws ServiceFailureException, URISyntaxException {
         Thing thing = new Thing("Thing 1", "The first thing.");
         service.create(thing);
@@ -136,8 +138,7 @@ public class DataArrayTests {
         service.create(location);
         LOCATIONS.add(location);
 
-        Sensor sensor = new Sensor("Sensor 1", "The first sensor.", "text", "Some metadata.");
-        service.create(sensor);
+        Sensor sensor = sharedDataset.getSensor();
         SENSORS.add(sensor);
 
         sensor = new Sensor("Sensor 2", "The second sensor.", "text", "Some metadata.");
@@ -6,10 +6,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.joda.time.DateTime;
-import org.joda.time.format.ISODateTimeFormat;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.ControlInformation;
 import org.opengis.cite.sta10.util.EntityCounts;
@@ -17,12 +17,16 @@ import org.opengis.cite.sta10.util.EntityPropertiesSampleValue;
 import org.opengis.cite.sta10.util.EntityType;
 import org.opengis.cite.sta10.util.EntityUtils;
 import org.opengis.cite.sta10.util.Expand;
+import org.opengis.cite.sta10.util.FixtureGraph;
 import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.OrderByVerifier;
 import org.opengis.cite.sta10.util.PathElement;
 import org.opengis.cite.sta10.util.Query;
 import org.opengis.cite.sta10.util.Request;
 import org.opengis.cite.sta10.util.ServiceURLBuilder;
+import org.opengis.cite.sta10.util.TimeUtils;
 import org.opengis.cite.sta10.util.Utils;
+import org.opengis.cite.sta10.util.http.BatchTransport;
 import static org.opengis.cite.sta10.util.Utils.quoteIdForJson;
 import org.testng.Assert;
 import org.testng.ITestContext;
@@ -68,13 +72,11 @@ public class Capability3Tests {
                     "Conformance level 3 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
         createEntities();
+        // The entities do not change until the class is done.
+        HTTPMethods.getMemo().beginEpoch(getClass().getSimpleName());
     }
 
     /**
@@ -423,97 +425,8 @@ public class Capability3Tests {
                     continue;
                 }
                 EntityType relationEntityType = EntityType.getForRelation(relation);
-                List<EntityType.EntityProperty> properties = relationEntityType.getProperties();
-                //single orderby
-                for (EntityType.EntityProperty property : properties) {
-                    if (!property.canSort) {
-                        continue;
-                    }
-                    urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, "?$orderby=" + property.name);
-                    responseMap = HTTPMethods.doGet(urlString);
-                    response = responseMap.get("response").toString();
-                    array = new JSONObject(response).getJSONArray("value");
-                    for (int i = 1; i < array.length(); i++) {
-                        Assert.assertTrue(compareWithPrevious(i, array, property.name) <= 0, "The ordering is not correct for EntityType " + entityType + " orderby property " + property);
-                    }
-                    urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, "?$orderby=" + property.name + "%20asc");
-                    responseMap = HTTPMethods.doGet(urlString);
-                    response = responseMap.get("response").toString();
-                    array = new JSONObject(response).getJSONArray("value");
-                    for (int i = 1; i < array.length(); i++) {
-                        Assert.assertTrue(compareWithPrevious(i, array, property.name) <= 0, "The ordering is not correct for EntityType " + entityType + " orderby asc property " + property);
-                    }
-                    urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, "?$orderby=" + property.name + "%20desc");
-                    responseMap = HTTPMethods.doGet(urlString);
-                    response = responseMap.get("response").toString();
-                    array = new JSONObject(response).getJSONArray("value");
-                    for (int i = 1; i < array.length(); i++) {
-                        Assert.assertTrue(compareWithPrevious(i, array, property.name) >= 0, "The ordering is not correct for EntityType " + entityType + " orderby desc property " + property);
-                    }
-                }
-
-                //multiple orderby
-                List<String> orderbyPropeties = new ArrayList<>();
-                String orderby = "?$orderby=";
-                String orderbyAsc = "?$orderby=";
-                String orderbyDesc = "?$orderby=";
-                for (EntityType.EntityProperty property : properties) {
-                    if (!property.canSort) {
-                        continue;
-                    }
-                    if (orderby.charAt(orderby.length() - 1) != '=') {
-                        orderby += ",";
-                    }
-                    orderby += property.name;
-                    orderbyPropeties.add(property.name);
-                    urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, orderby);
-                    responseMap = HTTPMethods.doGet(urlString);
-                    response = responseMap.get("response").toString();
-                    array = new JSONObject(response).getJSONArray("value");
-                    for (int i = 1; i < array.length(); i++) {
-                        for (String orderProperty : orderbyPropeties) {
-                            int compare = compareWithPrevious(i, array, orderProperty);
-                            Assert.assertTrue(compare <= 0, "The ordering is not correct for EntityType " + entityType + " orderby property " + orderProperty);
-                            if (compare != 0) {
-                                break;
-                            }
-                        }
-                    }
-                    if (orderbyAsc.charAt(orderbyAsc.length() - 1) != '=') {
-                        orderbyAsc += ",";
-                    }
-                    orderbyAsc += property + "%20asc";
-                    urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, orderbyAsc);
-                    responseMap = HTTPMethods.doGet(urlString);
-                    response = responseMap.get("response").toString();
-                    array = new JSONObject(response).getJSONArray("value");
-                    for (int i = 1; i < array.length(); i++) {
-                        for (String orderProperty : orderbyPropeties) {
-                            int compare = compareWithPrevious(i, array, orderProperty);
-                            Assert.assertTrue(compare <= 0, "The ordering is not correct for EntityType " + entityType + " orderby asc property " + orderProperty);
-                            if (compare != 0) {
-                                break;
-                            }
-                        }
-                    }
-                    if (orderbyDesc.charAt(orderbyDesc.length() - 1) != '=') {
-                        orderbyDesc += ",";
-                    }
-                    orderbyDesc += property + "%20desc";
-                    urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, orderbyDesc);
-                    responseMap = HTTPMethods.doGet(urlString);
-                    response = responseMap.get("response").toString();
-                    array = new JSONObject(response).getJSONArray("value");
-                    for (int i = 1; i < array.length(); i++) {
-                        for (String orderProperty : orderbyPropeties) {
-                            int compare = compareWithPrevious(i, array, orderProperty);
-                            Assert.assertTrue(compare >= 0, "The ordering is not correct for EntityType " + entityType + " orderby desc property " + orderProperty);
-                            if (compare != 0) {
-                                break;
-                            }
-                        }
-                    }
-                }
+                urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, relationEntityType, null);
+                OrderByVerifier.verifyOrderBy(urlString, relationEntityType);
             }
         } catch (JSONException e) {
             e.printStackTrace();
@@ -528,130 +441,8 @@ public class Capability3Tests {
      * @param entityType Entity type from EntityType enum list
      */
     private void checkOrderbyForEntityType(EntityType entityType) {
-        List<EntityType.EntityProperty> properties = entityType.getProperties();
-        try {
-            //single orderby
-            for (EntityType.EntityProperty property : properties) {
-                if (!property.canSort) {
-                    continue;
-                }
-                String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, "?$orderby=" + property.name);
-                Map<String, Object> responseMap = HTTPMethods.doGet(urlString);
-                String response = responseMap.get("response").toString();
-                JSONArray array = new JSONObject(response).getJSONArray("value");
-                for (int i = 1; i < array.length(); i++) {
-                    Assert.assertTrue(compareWithPrevious(i, array, property.name) <= 0, "The default ordering is not correct for EntityType " + entityType + " orderby property " + property.name);
-                }
-                urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, "?$orderby=" + property.name + "%20asc");
-                responseMap = HTTPMethods.doGet(urlString);
-                response = responseMap.get("response").toString();
-                array = new JSONObject(response).getJSONArray("value");
-                for (int i = 1; i < array.length(); i++) {
-                    Assert.assertTrue(compareWithPrevious(i, array, property.name) <= 0, "The ascending ordering is not correct for EntityType " + entityType + " orderby asc property " + property.name);
-                }
-                urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, "?$orderby=" + property.name + "%20desc");
-                responseMap = HTTPMethods.doGet(urlString);
-                response = responseMap.get("response").toString();
-                array = new JSONObject(response).getJSONArray("value");
-                for (int i = 1; i < array.length(); i++) {
-                    Assert.assertTrue(compareWithPrevious(i, array, property.name) >= 0, "The descending ordering is not correct for EntityType " + entityType + " orderby desc property " + property.name);
-                }
-            }
-
-            //multiple orderby
-            List<String> orderbyPropeties = new ArrayList<>();
-            String orderby = "?$orderby=";
-            String orderbyAsc = "?$orderby=";
-            String orderbyDesc = "?$orderby=";
-            for (EntityType.EntityProperty property : properties) {
-                if (!property.canSort) {
-                    continue;
-                }
-                if (orderby.charAt(orderby.length() - 1) != '=') {
-                    orderby += ",";
-                }
-                orderby += property.name;
-                orderbyPropeties.add(property.name);
-                String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, orderby);
-                Map<String, Object> responseMap = HTTPMethods.doGet(urlString);
-                String response = responseMap.get("response").toString();
-                JSONArray array = new JSONObject(response).getJSONArray("value");
-                for (int i = 1; i < array.length(); i++) {
-                    for (String orderProperty : orderbyPropeties) {
-                        int compare = compareWithPrevious(i, array, orderProperty);
-                        Assert.assertTrue(compare <= 0, "The ordering is not correct for EntityType " + entityType + " orderby property " + orderProperty);
-                        if (compare != 0) {
-                            break;
-                        }
-                    }
-                }
-                if (orderbyAsc.charAt(orderbyAsc.length() - 1) != '=') {
-                    orderbyAsc += ",";
-                }
-                orderbyAsc += property + "%20asc";
-                urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, orderbyAsc);
-                responseMap = HTTPMethods.doGet(urlString);
-                response = responseMap.get("response").toString();
-                array = new JSONObject(response).getJSONArray("value");
-                for (int i = 1; i < array.length(); i++) {
-                    for (String orderProperty : orderbyPropeties) {
-                        int compare = compareWithPrevious(i, array, orderProperty);
-                        Assert.assertTrue(compare <= 0, "The ordering is not correct for EntityType " + entityType + " orderby asc property " + orderProperty);
-                        if (compare != 0) {
-                            break;
-                        }
-                    }
-                }
-                if (orderbyDesc.charAt(orderbyDesc.length() - 1) != '=') {
-                    orderbyDesc += ",";
-                }
-                orderbyDesc += property + "%20desc";
-                urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, orderbyDesc);
-                responseMap = HTTPMethods.doGet(urlString);
-                response = responseMap.get("response").toString();
-                array = new JSONObject(response).getJSONArray("value");
-                for (int i = 1; i < array.length(); i++) {
-                    for (String orderProperty : orderbyPropeties) {
-                        int compare = compareWithPrevious(i, array, orderProperty);
-                        Assert.assertTrue(compare >= 0, "The ordering is not correct for EntityType " + entityType + " orderby desc property " + orderProperty);
-                        if (compare != 0) {
-                            break;
-                        }
-                    }
-                }
-            }
-        } catch (JSONException e) {
-            e.printStackTrace();
-            Assert.fail("An Exception occurred during testing " + entityType + ":\n" + e.getMessage());
-        }
-
-    }
-
-    private int compareWithPrevious(int idx, JSONArray array, String property) throws JSONException {
-        JSONObject jObj1 = array.getJSONObject(idx - 1);
-        JSONObject jObj2 = array.getJSONObject(idx);
-        if (!jObj1.has(property) && !jObj2.has(property)) {
-            // Neither has the property, they are the same.
-            return 0;
-        }
-        if (!jObj1.has(property) || !jObj2.has(property)) {
-            // One of the two does not have the property, oder undefined?
-            return 0;
-        }
-        Object o1 = jObj1.get(property);
-        Object o2 = jObj2.get(property);
-        return compareForOrder(o1, o2);
-    }
-
-    private int compareForOrder(Object o1, Object o2) {
-        if (o1 instanceof Comparable && o2 instanceof Comparable) {
-            if (o1.getClass().isAssignableFrom(o2.getClass())) {
-                return ((Comparable) o1).compareTo(o2);
-            } else if (o2.getClass().isAssignableFrom(o1.getClass())) {
-                return -((Comparable) o2).compareTo(o1);
-            }
-        }
-        return o1.toString().compareTo(o2.toString());
+        String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, null);
+        OrderByVerifier.verifyOrderBy(urlString, entityType);
     }
 
     /**
@@ -1287,11 +1078,15 @@ public class Capability3Tests {
                         if (!(propertyValue instanceof String)) {
                             propertyValue = propertyValue.toString();
                         }
-                    } else if (value instanceof DateTime) {
-                        propertyValue = ISODateTimeFormat.dateTime().parseDateTime(propertyValue.toString());
                     }
 
-                    int result = value.compareTo(propertyValue);
+                    int result;
+                    if (value instanceof DateTime) {
+                        long propertyMillis = TimeUtils.parseDateTimeOrFail(propertyValue.toString());
+                        result = Long.compare(((DateTime) value).getMillis(), propertyMillis);
+                    } else {
+                        result = value.compareTo(propertyValue);
+                    }
                     switch (operator) {
                         case -3:
                             Assert.assertTrue(result != 0, properties.get(j) + " should not be equal to " + value + ". But the property value is " + propertyValue);
@@ -1320,331 +1115,114 @@ public class Capability3Tests {
         }
     }
 
-    private Object postAndGetId(String urlString, String postContent) {
-        Map<String, Object> responseMap = HTTPMethods.doPost(urlString, postContent);
-        String response = responseMap.get("response").toString();
-        return Utils.idObjectFromPostResult(response);
-    }
-
     /**
      * Create entities as a pre-process for testing query options.
      */
     private void createEntities() {
         try {
-            //First Thing
-            String urlParameters = "{\n"
-                    + "    \"name\": \"thing 1\",\n"
-                    + "    \"description\": \"thing 1\",\n"
-                    + "    \"properties\": {\n"
-                    + "        \"reference\": \"first\"\n"
-                    + "    },\n"
-                    + "    \"Locations\": [\n"
-                    + "        {\n"
-                    + "            \"name\": \"location 1\",\n"
-                    + "            \"description\": \"location 1\",\n"
-                    + "            \"location\": {\n"
-                    + "                \"type\": \"Point\",\n"
-                    + "                \"coordinates\": [\n"
-                    + "                    -117.05,\n"
-                    + "                    51.05\n"
-                    + "                ]\n"
-                    + "            },\n"
-                    + "            \"encodingType\": \"application/vnd.geo+json\"\n"
-                    + "        }\n"
-                    + "    ],\n"
-                    + "    \"Datastreams\": [\n"
-                    + "        {\n"
-                    + "            \"unitOfMeasurement\": {\n"
-                    + "                \"name\": \"Lumen\",\n"
-                    + "                \"symbol\": \"lm\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\"\n"
-                    + "            },\n"
-                    + "            \"name\": \"datastream 1\",\n"
-                    + "            \"description\": \"datastream 1\",\n"
-                    + "            \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
-                    + "            \"ObservedProperty\": {\n"
-                    + "                \"name\": \"Luminous Flux\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/LuminousFlux\",\n"
-                    + "                \"description\": \"observedProperty 1\"\n"
-                    + "            },\n"
-                    + "            \"Sensor\": {\n"
-                    + "                \"name\": \"sensor 1\",\n"
-                    + "                \"description\": \"sensor 1\",\n"
-                    + "                \"encodingType\": \"application/pdf\",\n"
-                    + "                \"metadata\": \"Light flux sensor\"\n"
-                    + "            }\n"
-                    + "        },\n"
-                    + "        {\n"
-                    + "            \"unitOfMeasurement\": {\n"
-                    + "                \"name\": \"Centigrade\",\n"
-                    + "                \"symbol\": \"C\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\"\n"
-                    + "            },\n"
-                    + "            \"name\": \"datastream 2\",\n"
-                    + "            \"description\": \"datastream 2\",\n"
-                    + "            \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
-                    + "            \"ObservedProperty\": {\n"
-                    + "                \"name\": \"Tempretaure\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/Tempreture\",\n"
-                    + "                \"description\": \"observedProperty 2\"\n"
-                    + "            },\n"
-                    + "            \"Sensor\": {\n"
-                    + "                \"name\": \"sensor 2\",\n"
-                    + "                \"description\": \"sensor 2\",\n"
-                    + "                \"encodingType\": \"application/pdf\",\n"
-                    + "                \"metadata\": \"Tempreture sensor\"\n"
-                    + "            }\n"
-                    + "        }\n"
-                    + "    ]\n"
-                    + "}";
-            String urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, null, null, null);
-            thingId1 = postAndGetId(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId1, EntityType.LOCATION, null);
-            Map<String, Object> responseMap = HTTPMethods.doGet(urlString);
-            String response = responseMap.get("response").toString();
-            JSONArray array = new JSONObject(response).getJSONArray("value");
-            locationId1 = array.getJSONObject(0).get(ControlInformation.ID);
+            FixtureGraph fixture = new FixtureGraph(rootUri)
+                    .expandGenerated(EntityType.THING, EntityType.HISTORICAL_LOCATION.plural);
+            String lumen = "{\"name\": \"Lumen\", \"symbol\": \"lm\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\"}";
+            String centigrade = "{\"name\": \"Centigrade\", \"symbol\": \"C\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\"}";
+            String measurement = "\"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\"";
 
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId1, EntityType.DATASTREAM, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            array = new JSONObject(response).getJSONArray("value");
-            // We can not assume the Datastreams are returned in the order we expect.
-            if ("datastream 1".equals(array.getJSONObject(0).get("name"))) {
-                datastreamId1 = array.getJSONObject(0).get(ControlInformation.ID);
-                datastreamId2 = array.getJSONObject(1).get(ControlInformation.ID);
-            } else {
-                datastreamId1 = array.getJSONObject(1).get(ControlInformation.ID);
-                datastreamId2 = array.getJSONObject(0).get(ControlInformation.ID);
-            }
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId1, EntityType.SENSOR, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            sensorId1 = new JSONObject(response).get(ControlInformation.ID);
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId1, EntityType.OBSERVED_PROPERTY, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            observedPropertyId1 = new JSONObject(response).get(ControlInformation.ID);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId2, EntityType.SENSOR, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            sensorId2 = new JSONObject(response).get(ControlInformation.ID);
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId2, EntityType.OBSERVED_PROPERTY, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            observedPropertyId2 = new JSONObject(response).get(ControlInformation.ID);
+            //First Thing
+            FixtureGraph.Node thing1 = fixture.root(EntityType.THING, "{\"name\": \"thing 1\", \"description\": \"thing 1\", \"properties\": {\"reference\": \"first\"}}");
+            FixtureGraph.Node location1 = fixture.node(EntityType.LOCATION, "{\"name\": \"location 1\", \"description\": \"location 1\", \"encodingType\": \"application/vnd.geo+json\", \"location\": {\"type\": \"Point\", \"coordinates\": [-117.05, 51.05]}}");
+            FixtureGraph.Node datastream1 = fixture.node(EntityType.DATASTREAM, "{\"name\": \"datastream 1\", \"description\": \"datastream 1\", " + measurement + ", \"unitOfMeasurement\": " + lumen + "}");
+            FixtureGraph.Node datastream2 = fixture.node(EntityType.DATASTREAM, "{\"name\": \"datastream 2\", \"description\": \"datastream 2\", " + measurement + ", \"unitOfMeasurement\": " + centigrade + "}");
+            FixtureGraph.Node observedProperty1 = fixture.node(EntityType.OBSERVED_PROPERTY, "{\"name\": \"Luminous Flux\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/LuminousFlux\", \"description\": \"observedProperty 1\"}");
+            FixtureGraph.Node observedProperty2 = fixture.node(EntityType.OBSERVED_PROPERTY, "{\"name\": \"Tempretaure\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/Tempreture\", \"description\": \"observedProperty 2\"}");
+            FixtureGraph.Node sensor1 = fixture.node(EntityType.SENSOR, "{\"name\": \"sensor 1\", \"description\": \"sensor 1\", \"encodingType\": \"application/pdf\", \"metadata\": \"Light flux sensor\"}");
+            FixtureGraph.Node sensor2 = fixture.node(EntityType.SENSOR, "{\"name\": \"sensor 2\", \"description\": \"sensor 2\", \"encodingType\": \"application/pdf\", \"metadata\": \"Tempreture sensor\"}");
+            thing1.link(location1).link(datastream1).link(datastream2);
+            datastream1.link(observedProperty1).link(sensor1);
+            datastream2.link(observedProperty2).link(sensor2);
 
             //Second Thing
-            urlParameters = "{\n"
-                    + "    \"name\": \"thing 2\",\n"
-                    + "    \"description\": \"thing 2\",\n"
-                    + "    \"properties\": {\n"
-                    + "        \"reference\": \"second\"\n"
-                    + "    },\n"
-                    + "    \"Locations\": [\n"
-                    + "        {\n"
-                    + "            \"name\": \"location 2\",\n"
-                    + "            \"description\": \"location 2\",\n"
-                    + "            \"location\": {\n"
-                    + "                \"type\": \"Point\",\n"
-                    + "                \"coordinates\": [\n"
-                    + "                    -100.05,\n"
-                    + "                    50.05\n"
-                    + "                ]\n"
-                    + "            },\n"
-                    + "            \"encodingType\": \"application/vnd.geo+json\"\n"
-                    + "        }\n"
-                    + "    ],\n"
-                    + "    \"Datastreams\": [\n"
-                    + "        {\n"
-                    + "            \"unitOfMeasurement\": {\n"
-                    + "                \"name\": \"Lumen\",\n"
-                    + "                \"symbol\": \"lm\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\"\n"
-                    + "            },\n"
-                    + "            \"name\": \"datastream 3\",\n"
-                    + "            \"description\": \"datastream 3\",\n"
-                    + "            \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
-                    + "            \"ObservedProperty\": {\n"
-                    + "                \"name\": \"Second Luminous Flux\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/LuminousFlux\",\n"
-                    + "                \"description\": \"observedProperty 3\"\n"
-                    + "            },\n"
-                    + "            \"Sensor\": {\n"
-                    + "                \"name\": \"sensor 3\",\n"
-                    + "                \"description\": \"sensor 3\",\n"
-                    + "                \"encodingType\": \"application/pdf\",\n"
-                    + "                \"metadata\": \"Second Light flux sensor\"\n"
-                    + "            }\n"
-                    + "        },\n"
-                    + "        {\n"
-                    + "            \"unitOfMeasurement\": {\n"
-                    + "                \"name\": \"Centigrade\",\n"
-                    + "                \"symbol\": \"C\",\n"
-                    + "                \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\"\n"
-                    + "            },\n"
-                    + "            \"name\": \"datastream 2\",\n"
-                    + "            \"description\": \"datastream 2\",\n"
-                    + "            \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
-                    + "            \"ObservedProperty\": {\n"
-                    + "                \"@iot.id\": " + quoteIdForJson(observedPropertyId2) + "\n"
-                    + "            },\n"
-                    + "            \"Sensor\": {\n"
-                    + "                \"name\": \"sensor 4 \",\n"
-                    + "                \"description\": \"sensor 4 \",\n"
-                    + "                \"encodingType\": \"application/pdf\",\n"
-                    + "                \"metadata\": \"Second Tempreture sensor\"\n"
-                    + "            }\n"
-                    + "        }\n"
-                    + "    ]\n"
-                    + "}";
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, null, null, null);
-            thingId2 = postAndGetId(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId2, EntityType.LOCATION, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            array = new JSONObject(response).getJSONArray("value");
-            locationId2 = array.getJSONObject(0).get(ControlInformation.ID);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId2, EntityType.DATASTREAM, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            array = new JSONObject(response).getJSONArray("value");
-            // We can not assume the Datastreams are returned in the order we expect.
-            if ("datastream 3".equals(array.getJSONObject(0).get("name"))) {
-                datastreamId3 = array.getJSONObject(0).get(ControlInformation.ID);
-                datastreamId4 = array.getJSONObject(1).get(ControlInformation.ID);
-            } else {
-                datastreamId4 = array.getJSONObject(0).get(ControlInformation.ID);
-                datastreamId3 = array.getJSONObject(1).get(ControlInformation.ID);
-            }
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId3, EntityType.SENSOR, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            sensorId3 = new JSONObject(response).get(ControlInformation.ID);
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId3, EntityType.OBSERVED_PROPERTY, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            observedPropertyId3 = new JSONObject(response).get(ControlInformation.ID);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId4, EntityType.SENSOR, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            sensorId4 = new JSONObject(response).get(ControlInformation.ID);
-
-            //HistoricalLocations
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId1, null, null);
-            urlParameters = "{\"Locations\": [\n"
-                    + "    {\n"
-                    + "      \"@iot.id\": " + quoteIdForJson(locationId2) + "\n"
-                    + "    }\n"
-                    + "  ]}";
-            HTTPMethods.doPatch(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId2, null, null);
-            urlParameters = "{\"Locations\": [\n"
-                    + "    {\n"
-                    + "      \"@iot.id\": " + quoteIdForJson(locationId1) + "\n"
-                    + "    }\n"
-                    + "  ]}";
-            HTTPMethods.doPatch(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId1, EntityType.HISTORICAL_LOCATION, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            array = new JSONObject(response).getJSONArray("value");
+            FixtureGraph.Node thing2 = fixture.root(EntityType.THING, "{\"name\": \"thing 2\", \"description\": \"thing 2\", \"properties\": {\"reference\": \"second\"}}");
+            FixtureGraph.Node location2 = fixture.node(EntityType.LOCATION, "{\"name\": \"location 2\", \"description\": \"location 2\", \"encodingType\": \"application/vnd.geo+json\", \"location\": {\"type\": \"Point\", \"coordinates\": [-100.05, 50.05]}}");
+            FixtureGraph.Node datastream3 = fixture.node(EntityType.DATASTREAM, "{\"name\": \"datastream 3\", \"description\": \"datastream 3\", " + measurement + ", \"unitOfMeasurement\": " + lumen + "}");
+            FixtureGraph.Node datastream4 = fixture.node(EntityType.DATASTREAM, "{\"name\": \"datastream 2\", \"description\": \"datastream 2\", " + measurement + ", \"unitOfMeasurement\": " + centigrade + "}");
+            FixtureGraph.Node observedProperty3 = fixture.node(EntityType.OBSERVED_PROPERTY, "{\"name\": \"Second Luminous Flux\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/LuminousFlux\", \"description\": \"observedProperty 3\"}");
+            FixtureGraph.Node sensor3 = fixture.node(EntityType.SENSOR, "{\"name\": \"sensor 3\", \"description\": \"sensor 3\", \"encodingType\": \"application/pdf\", \"metadata\": \"Second Light flux sensor\"}");
+            FixtureGraph.Node sensor4 = fixture.node(EntityType.SENSOR, "{\"name\": \"sensor 4 \", \"description\": \"sensor 4 \", \"encodingType\": \"application/pdf\", \"metadata\": \"Second Tempreture sensor\"}");
+            thing2.link(location2).link(datastream3).link(datastream4);
+            datastream3.link(observedProperty3).link(sensor3);
+            // The second Thing shares the ObservedProperty of the first.
+            datastream4.link(observedProperty2).link(sensor4);
+
+            fixture.create();
+            thingId1 = thing1.getId();
+            thingId2 = thing2.getId();
+            locationId1 = location1.getId();
+            locationId2 = location2.getId();
+            datastreamId1 = datastream1.getId();
+            datastreamId2 = datastream2.getId();
+            datastreamId3 = datastream3.getId();
+            datastreamId4 = datastream4.getId();
+            sensorId1 = sensor1.getId();
+            sensorId2 = sensor2.getId();
+            sensorId3 = sensor3.getId();
+            sensorId4 = sensor4.getId();
+            observedPropertyId1 = observedProperty1.getId();
+            observedPropertyId2 = observedProperty2.getId();
+            observedPropertyId3 = observedProperty3.getId();
+
+            //HistoricalLocations, moving each Thing to the Location of the other.
+            List<BatchTransport.Call> moves = new ArrayList<>();
+            moves.add(BatchTransport.Call.patch(
+                    ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId1, null, null),
+                    "{\"Locations\": [{\"@iot.id\": " + quoteIdForJson(locationId2) + "}]}"));
+            moves.add(BatchTransport.Call.patch(
+                    ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId2, null, null),
+                    "{\"Locations\": [{\"@iot.id\": " + quoteIdForJson(locationId1) + "}]}"));
+            HTTPMethods.getBatch().execute(moves);
+
+            fixture.resolve();
+            JSONArray array = thing1.getExpanded().getJSONArray(EntityType.HISTORICAL_LOCATION.plural);
             historicalLocationId1 = array.getJSONObject(0).get(ControlInformation.ID);
             historicalLocationId2 = array.getJSONObject(1).get(ControlInformation.ID);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.THING, thingId2, EntityType.HISTORICAL_LOCATION, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            array = new JSONObject(response).getJSONArray("value");
+            array = thing2.getExpanded().getJSONArray(EntityType.HISTORICAL_LOCATION.plural);
             historicalLocationId3 = array.getJSONObject(0).get(ControlInformation.ID);
             historicalLocationId4 = array.getJSONObject(1).get(ControlInformation.ID);
 
-            //Observations
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId1, EntityType.OBSERVATION, null);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-01T00:00:00Z\",\n"
-                    + "  \"result\": 1 \n"
-                    + "   }";
-            observationId1 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-02T00:00:00Z\",\n"
-                    + "  \"result\": 2 \n"
-                    + "   }";
-            observationId2 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-03T00:00:00Z\",\n"
-                    + "  \"result\": 3 \n"
-                    + "   }";
-            observationId3 = postAndGetId(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId2, EntityType.OBSERVATION, null);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-04T00:00:00Z\",\n"
-                    + "  \"result\": 4 \n"
-                    + "   }";
-            observationId4 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-05T00:00:00Z\",\n"
-                    + "  \"result\": 5 \n"
-                    + "   }";
-            observationId5 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-06T00:00:00Z\",\n"
-                    + "  \"result\": 6 \n"
-                    + "   }";
-            observationId6 = postAndGetId(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId3, EntityType.OBSERVATION, null);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-07T00:00:00Z\",\n"
-                    + "  \"result\": 7 \n"
-                    + "   }";
-            observationId7 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-08T00:00:00Z\",\n"
-                    + "  \"result\": 8 \n"
-                    + "   }";
-            observationId8 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-09T00:00:00Z\",\n"
-                    + "  \"result\": 9 \n"
-                    + "   }";
-            observationId9 = postAndGetId(urlString, urlParameters);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId4, EntityType.OBSERVATION, null);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-10T00:00:00Z\",\n"
-                    + "  \"result\": 10 \n"
-                    + "   }";
-            observationId10 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-11T00:00:00Z\",\n"
-                    + "  \"result\": 11 \n"
-                    + "   }";
-            observationId11 = postAndGetId(urlString, urlParameters);
-            urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-12T00:00:00Z\",\n"
-                    + "  \"result\": 12 \n"
-                    + "   }";
-            observationId12 = postAndGetId(urlString, urlParameters);
+            //Observations, after the moves, so their FeaturesOfInterest are
+            //generated from the second Location of each Thing.
+            List<BatchTransport.Call> posts = new ArrayList<>();
+            Object[] datastreamIds = {datastreamId1, datastreamId2, datastreamId3, datastreamId4};
+            for (int i = 1; i <= 12; i++) {
+                posts.add(BatchTransport.Call.post(
+                        ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamIds[(i - 1) / 3], EntityType.OBSERVATION, null),
+                        String.format("{\"phenomenonTime\": \"2015-03-%02dT00:00:00Z\", \"result\": %d}", i, i)));
+            }
+            HTTPMethods.getBatch().execute(posts);
+            Object[] observationIds = new Object[posts.size()];
+            for (int i = 0; i < posts.size(); i++) {
+                BatchTransport.Call post = posts.get(i);
+                Assert.assertEquals(post.getResponseCode(), 201, "Creating " + post + " failed: " + post.getResponse().get("response"));
+                observationIds[i] = Utils.idObjectFromPostResult(post.getResponse().get("response").toString());
+            }
+            observationId1 = observationIds[0];
+            observationId2 = observationIds[1];
+            observationId3 = observationIds[2];
+            observationId4 = observationIds[3];
+            observationId5 = observationIds[4];
+            observationId6 = observationIds[5];
+            observationId7 = observationIds[6];
+            observationId8 = observationIds[7];
+            observationId9 = observationIds[8];
+            observationId10 = observationIds[9];
+            observationId11 = observationIds[10];
+            observationId12 = observationIds[11];
 
             //FeatureOfInterest
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, observationId1, EntityType.FEATURE_OF_INTEREST, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            featureOfInterestId1 = new JSONObject(response).get(ControlInformation.ID);
-
-            urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, observationId7, EntityType.FEATURE_OF_INTEREST, null);
-            responseMap = HTTPMethods.doGet(urlString);
-            response = responseMap.get("response").toString();
-            featureOfInterestId2 = new JSONObject(response).get(ControlInformation.ID);
+            List<BatchTransport.Call> features = new ArrayList<>();
+            features.add(BatchTransport.Call.get(ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, observationId1, EntityType.FEATURE_OF_INTEREST, null)));
+            features.add(BatchTransport.Call.get(ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, observationId7, EntityType.FEATURE_OF_INTEREST, null)));
+            HTTPMethods.getBatch().execute(features);
+            featureOfInterestId1 = new JSONObject(features.get(0).getResponse().get("response").toString()).get(ControlInformation.ID);
+            featureOfInterestId2 = new JSONObject(features.get(1).getResponse().get("response").toString()).get(ControlInformation.ID);
 
             entityCounts.setGlobalCount(EntityType.DATASTREAM, 4);
             entityCounts.setGlobalCount(EntityType.FEATURE_OF_INTEREST, 2);
@@ -1696,6 +1274,7 @@ public class Capability3Tests {
      */
     @AfterClass
     public void deleteEverythings() {
+        HTTPMethods.getMemo().endEpoch();
         deleteEntityType(EntityType.OBSERVATION);
         deleteEntityType(EntityType.FEATURE_OF_INTEREST);
         deleteEntityType(EntityType.DATASTREAM);
@@ -15,17 +15,17 @@ import de.fraunhofer.iosb.ilt.sta.model.TimeObject;
 import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
-import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityUtils;
+import org.opengis.cite.sta10.util.SharedDataset;
+import org.opengis.cite.sta10.util.UsesSharedDataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -40,6 +40,7 @@ import org.threeten.extra.Interval;
  *
  * @author Hylke van der Schaaf
  */
+@UsesSharedDataset({SharedDataset.Part.SENSOR, SharedDataset.Part.OBSERVED_PROPERTY})
 public class DateTimeTests {
 
     /**
@@ -48,6 +49,7 @@ public class DateTimeTests {
     private static final Logger LOGGER = LoggerFactory.getLogger(DateTimeTests.class);
     private String rootUri;
     private SensorThingsService service;
+    private SharedDataset sharedDataset;
     private final List<Thing> THINGS = new ArrayList<>();
     private final List<Observation> OBSERVATIONS = new ArrayList<>();
     private ZonedDateTime T2015;
@@ -90,20 +92,14 @@ public class DateTimeTests {
                     "Conformance level 3 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
+        sharedDataset = SharedDataset.fromContext(testContext);
+        sharedDataset.acquire(getClass());
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException | URISyntaxException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (ServiceFailureException ex) {
+        } catch (ServiceFailureException | URISyntaxException ex) {
             LOGGER.error("Failed to create entities.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
@@ -114,12 +110,17 @@ public class DateTimeTests {
     public void tearDown() {
         LOGGER.info("tearing down class.");
         try {
-            EntityUtils.deleteAll(service);
+            EntityUtils.deleteAllExcept(service, sharedDataset.getIdUrls());
         } catch (ServiceFailureException ex) {
             LOGGER.error("Failed to clean database.", ex);
         }
     }
 
+    @AfterClass(alwaysRun = true)
+    public void releaseSharedDataset(ITestContext testContext) {
+        SharedDataset.fromContext(testContext).release(getClass());
+    }
+
     private void createEntities() throws ServiceFailureException, URISyntaxException {
         Thing thing = new Thing("Thing 1", "The first thing.");
         THINGS.add(thing);
@@ -127,8 +128,8 @@ public class DateTimeTests {
         thing.getLocations().add(location);
         service.create(thing);
 
-        Sensor sensor = new Sensor("Sensor 1", "The first sensor.", "text", "Some metadata.");
-        ObservedProperty obsProp = new ObservedProperty("Temperature", new URI("http://ucom.org/temperature"), "The temperature of the thing.");
+        Sensor sensor = sharedDataset.getSensor();
+        ObservedProperty obsProp = sharedDataset.getObservedProperty();
         Datastream datastream = new Datastream("Datastream 1", "The temperature of thing 1, sensor 1.", "someType", new UnitOfMeasurement("degree celcius", "°C", "ucum:T"));
         datastream.setThing(thing);
         datastream.setSensor(sensor);
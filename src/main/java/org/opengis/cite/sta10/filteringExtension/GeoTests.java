@@ -13,10 +13,7 @@ import de.fraunhofer.iosb.ilt.sta.model.Thing;
 import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
-import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -25,8 +22,11 @@ import org.geojson.LineString;
 import org.geojson.LngLatAlt;
 import org.geojson.Point;
 import org.geojson.Polygon;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityUtils;
+import org.opengis.cite.sta10.util.SharedDataset;
+import org.opengis.cite.sta10.util.UsesSharedDataset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -41,6 +41,7 @@ import org.threeten.extra.Interval;
  *
  * @author Hylke van der Schaaf
  */
+@UsesSharedDataset({SharedDataset.Part.SENSOR, SharedDataset.Part.OBSERVED_PROPERTY})
 public class GeoTests {
 
     /**
@@ -49,6 +50,7 @@ public class GeoTests {
     private static final Logger LOGGER = LoggerFactory.getLogger(GeoTests.class);
     private String rootUri;
     private SensorThingsService service;
+    private SharedDataset sharedDataset;
     private final List<Datastream> DATASTREAMS = new ArrayList<>();
     private final List<FeatureOfInterest> FEATURESOFINTEREST = new ArrayList<>();
     private final List<Location> LOCATIONS = new ArrayList<>();
@@ -71,20 +73,14 @@ public class GeoTests {
                     "Conformance level 3 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
+        sharedDataset = SharedDataset.fromContext(testContext);
+        sharedDataset.acquire(getClass());
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException | URISyntaxException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (ServiceFailureException ex) {
+        } catch (ServiceFailureException | URISyntaxException ex) {
             LOGGER.error("Failed to create entities.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
@@ -95,12 +91,17 @@ public class GeoTests {
     public void tearDown() {
         LOGGER.info("tearing down class.");
         try {
-            EntityUtils.deleteAll(service);
+            EntityUtils.deleteAllExcept(service, sharedDataset.getIdUrls());
         } catch (ServiceFailureException ex) {
             LOGGER.error("Failed to clean database.", ex);
         }
     }
 
+    @AfterClass(alwaysRun = true)
+    public void releaseSharedDataset(ITestContext testContext) {
+        SharedDataset.fromContext(testContext).release(getClass());
+    }
+
     private void createEntities() throws ServiceFailureException, URISyntaxException {
         {
             Thing thing = new Thing("Thing 1", "The first thing.");
@@ -120,14 +121,10 @@ public class GeoTests {
             THINGS.add(thing);
         }
         {
-            Sensor sensor = new Sensor("Sensor 1", "The first sensor.", "text", "Some metadata.");
-            service.create(sensor);
-            SENSORS.add(sensor);
+            SENSORS.add(sharedDataset.getSensor());
         }
         {
-            ObservedProperty obsProp = new ObservedProperty("Temperature", new URI("http://ucom.org/temperature"), "The temperature of the thing.");
-            service.create(obsProp);
-            O_PROPS.add(obsProp);
+            O_PROPS.add(sharedDataset.getObservedProperty());
         }
         {
             Datastream datastream = new Datastream("Datastream 1", "The temperature of thing 1, sensor 1.", "someType", new UnitOfMeasurement("degree celcius", "°C", "ucum:T"));
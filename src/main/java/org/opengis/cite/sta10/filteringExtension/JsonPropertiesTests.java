@@ -15,10 +15,7 @@ import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import java.io.IOException;
-import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -26,8 +23,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
 import org.opengis.cite.sta10.util.EntityUtils;
+import org.opengis.cite.sta10.util.SharedDataset;
+import org.opengis.cite.sta10.util.UsesSharedDataset;
 import org.opengis.cite.sta10.util.HTTPMethods;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +42,7 @@ import org.testng.annotations.Test;
  *
  * @author Hylke van der Schaaf
  */
+@UsesSharedDataset({SharedDataset.Part.SENSOR, SharedDataset.Part.OBSERVED_PROPERTY})
 public class JsonPropertiesTests {
 
     /**
@@ -50,6 +51,7 @@ public class JsonPropertiesTests {
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonPropertiesTests.class);
     private String rootUri;
     private SensorThingsService service;
+    private SharedDataset sharedDataset;
     private final List<Thing> THINGS = new ArrayList<>();
     private final List<Location> LOCATIONS = new ArrayList<>();
     private final List<Sensor> SENSORS = new ArrayList<>();
@@ -71,20 +73,14 @@ public class JsonPropertiesTests {
                     "Conformance level 3 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
+        sharedDataset = SharedDataset.fromContext(testContext);
+        sharedDataset.acquire(getClass());
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException | URISyntaxException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (ServiceFailureException ex) {
+        } catch (ServiceFailureException | URISyntaxException ex) {
             LOGGER.error("Failed to create entities.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
@@ -95,12 +91,17 @@ public class JsonPropertiesTests {
     public void tearDown() {
         LOGGER.info("tearing down class.");
         try {
-            EntityUtils.deleteAll(service);
+            EntityUtils.deleteAllExcept(service, sharedDataset.getIdUrls());
         } catch (ServiceFailureException ex) {
             LOGGER.error("Failed to clean database.", ex);
         }
     }
 
+    @AfterClass(alwaysRun = true)
+    public void releaseSharedDataset(ITestContext testContext) {
+        SharedDataset.fromContext(testContext).release(getClass());
+    }
+
     private void createEntities() throws ServiceFailureException, URISyntaxException {
         for (int i = 0; i < 4; i++) {
             Map<String, Object> properties = new HashMap<>();
@@ -121,12 +122,10 @@ public class JsonPropertiesTests {
         service.create(location);
         LOCATIONS.add(location);
 
-        Sensor sensor = new Sensor("Sensor 1", "The first sensor.", "text", "Some metadata.");
-        service.create(sensor);
+        Sensor sensor = sharedDataset.getSensor();
         SENSORS.add(sensor);
 
-        ObservedProperty obsProp = new ObservedProperty("Temperature", new URI("http://ucom.org/temperature"), "The temperature of the thing.");
-        service.create(obsProp);
+        ObservedProperty obsProp = sharedDataset.getObservedProperty();
         O_PROPS.add(obsProp);
 
         Datastream datastream = new Datastream("Datastream 1", "The temperature of thing 1, sensor 1.", "someType", new UnitOfMeasurement("degree celcius", "°C", "Cel"));
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.httpBenchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.opengis.cite.sta10.BenchmarkSettings;
+import org.opengis.cite.sta10.ServiceDescriptor;
+import org.opengis.cite.sta10.TestRunArg;
+import org.opengis.cite.sta10.util.BenchmarkFixture;
+import org.opengis.cite.sta10.util.EntityHelper;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.ServiceURLBuilder;
+import static org.opengis.cite.sta10.util.Utils.quoteIdForJson;
+import org.opengis.cite.sta10.util.perf.OpenLoopLatency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Simulates gateways that POST Observations over HTTP. Requests are started
+ * at a fixed rate, independent of how fast the service answers, and handed
+ * to a pool of virtual clients; when all clients are busy, requests queue up
+ * as they would in front of a slow service. Latency is reported both from
+ * the time the schedule intended to start a request, which includes that
+ * queueing, and from the time it was actually sent. Each payload shape is ingested
+ * in turn: the body of {@link EntityHelper#createObservation(Object, Object)},
+ * that of {@link EntityHelper#createObservationWithDeepInsert(Object)}, and,
+ * if the service implements the Data Array extension, CreateObservations
+ * requests.
+ *
+ * The benchmark suite replaces the adaptive concurrency limiter by a fixed
+ * limit of one slot per client, since the adaptive limiter would cap the
+ * clients and back off as the latency grows. The concurrency limit of the
+ * request throttle still applies.
+ *
+ * @author scf
+ */
+public class HttpIngestTests {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpIngestTests.class);
+
+    /**
+     * The number of Observations in one CreateObservations request.
+     */
+    private static final int DATA_ARRAY_SIZE = 10;
+
+    private EntityHelper entityHelper;
+    private String rootUri;
+    private double rate;
+    private int clients;
+    private int duration;
+    private boolean hasDataArray;
+    private Object datastreamId;
+    private Object featureOfInterestId;
+
+    @BeforeClass
+    public void init(ITestContext testContext) {
+        int level = BenchmarkSettings.requireLevel(testContext, 2);
+        hasDataArray = level > 5;
+        BenchmarkSettings settings = BenchmarkSettings.fromContext(testContext);
+        rate = settings.requireIngestRate();
+        clients = settings.getIngestClients();
+        duration = settings.getIngestDuration();
+
+        rootUri = ServiceDescriptor.fromContext(testContext).getRootUri();
+        entityHelper = new EntityHelper(rootUri);
+        BenchmarkFixture fixture = new BenchmarkFixture(entityHelper);
+        datastreamId = fixture.createDatastream();
+        featureOfInterestId = fixture.getFeatureOfInterestId();
+
+        int maxConcurrency = HTTPMethods.getThrottle().getMaxConcurrency();
+        if (maxConcurrency > 0 && clients > maxConcurrency) {
+            LOGGER.warn("{} ingest clients, but at most {} requests are in flight, as set with {}.",
+                    clients, maxConcurrency, TestRunArg.HTTP_MAX_CONCURRENCY);
+        }
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearDatabase() {
+        if (entityHelper != null) {
+            entityHelper.deleteEverything();
+        }
+    }
+
+    @Test(description = "Ingest Observations with the body of EntityHelper.createObservation", groups = "level-2")
+    public void ingestObservations() {
+        String urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, null, null, null);
+        String body = EntityHelper.observationJson(datastreamId, featureOfInterestId);
+        runCase("Observation", urlString, body, 1);
+    }
+
+    @Test(description = "Ingest Observations with a deep inserted FeatureOfInterest", groups = "level-2")
+    public void ingestObservationsWithDeepInsert() {
+        String urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, null, null, null);
+        String body = EntityHelper.observationWithDeepInsertJson(datastreamId);
+        runCase("Deep insert", urlString, body, 1);
+    }
+
+    @Test(description = "Ingest Observations with CreateObservations requests", groups = "level-6")
+    public void ingestDataArrays() {
+        if (!hasDataArray) {
+            LOGGER.info("Not ingesting with CreateObservations, the Data Array extension is not tested.");
+            return;
+        }
+        StringBuilder body = new StringBuilder("[{\"Datastream\": {\"@iot.id\": ")
+                .append(quoteIdForJson(datastreamId))
+                .append("}, \"components\": [\"phenomenonTime\", \"result\", \"FeatureOfInterest/id\"],")
+                .append(" \"dataArray@iot.count\": ").append(DATA_ARRAY_SIZE).append(", \"dataArray\": [");
+        for (int i = 0; i < DATA_ARRAY_SIZE; i++) {
+            if (i > 0) {
+                body.append(", ");
+            }
+            body.append("[\"2015-03-01T00:").append(String.format("%02d", i)).append(":00Z\", ").append(i)
+                    .append(", ").append(quoteIdForJson(featureOfInterestId)).append("]");
+        }
+        body.append("]}]");
+        runCase("Data array", rootUri + "/CreateObservations", body.toString(), DATA_ARRAY_SIZE);
+    }
+
+    /**
+     * The outcome of one payload shape.
+     */
+    private static class CaseResult {
+
+        private final OpenLoopLatency latency = new OpenLoopLatency();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong lastCompletion = new AtomicLong();
+    }
+
+    /**
+     * Starts requests at the configured rate for the configured duration, and
+     * logs the outcome.
+     *
+     * @param name         The name of the payload shape.
+     * @param urlString    The URL to POST to.
+     * @param body         The body to POST.
+     * @param observations The number of Observations one request creates.
+     */
+    private void runCase(String name, String urlString, String body, int observations) {
+        CaseResult result = new CaseResult();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long intervalNanos = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+        long started = 0;
+        try {
+            for (long intended = start; intended < end; intended += intervalNanos) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                long intendedStart = intended;
+                pool.execute(() -> post(urlString, body, observations, intendedStart, result));
+                started++;
+            }
+            pool.shutdown();
+            if (!pool.awaitTermination(Math.max(60, duration), TimeUnit.SECONDS)) {
+                LOGGER.warn("{}: requests still running after the wait, stopping them.", name);
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.warn("{}: interrupted while waiting for requests.", name);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long completed = result.latency.getCount();
+        long elapsed = Math.max(1, result.lastCompletion.get() - start);
+        LOGGER.info("HTTP ingest {}: {} requests started at {}/s from {} clients, {} completed, {} errors ({}), {} Observations, {} inserts/s sustained, latency: {}",
+                name, started, rate, clients, completed, result.errors.get(),
+                String.format("%.2f %%", completed == 0 ? 0 : 100.0 * result.errors.get() / completed),
+                result.inserted.get(), String.format("%.1f", result.inserted.get() * 1e9 / elapsed),
+                result.latency.getSummary());
+    }
+
+    private static void post(String urlString, String body, int observations, long intendedStart, CaseResult result) {
+        long called = System.nanoTime();
+        Map<String, Object> responseMap = HTTPMethods.doPost(urlString, body);
+        long now = System.nanoTime();
+        // Waiting for the throttle and limiter is queueing, not service time.
+        long sent = responseMap == null ? called : (Long) responseMap.get("sent-nanos");
+        result.latency.record(intendedStart, sent, now);
+        result.lastCompletion.accumulateAndGet(now, Math::max);
+        if (responseMap == null || Integer.parseInt(responseMap.get("response-code").toString()) != 201) {
+            result.errors.incrementAndGet();
+            return;
+        }
+        if (observations == 1) {
+            result.inserted.incrementAndGet();
+            return;
+        }
+        // CreateObservations answers with a self link, or "error", per Observation.
+        try {
+            JSONArray links = new JSONArray(responseMap.get("response").toString());
+            int created = 0;
+            for (int i = 0; i < links.length(); i++) {
+                if (!"error".equals(links.optString(i))) {
+                    created++;
+                }
+            }
+            result.inserted.addAndGet(created);
+            if (created < observations) {
+                result.errors.incrementAndGet();
+            }
+        } catch (JSONException ex) {
+            result.errors.incrementAndGet();
+        }
+    }
+}
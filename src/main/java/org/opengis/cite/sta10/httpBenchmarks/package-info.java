@@ -0,0 +1,5 @@
+/**
+ * Optional benchmarks of HTTP ingest. They are not part of any conformance
+ * level, and only run in the benchmark suite, testng-benchmarks.xml.
+ */
+package org.opengis.cite.sta10.httpBenchmarks;
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.mqttBenchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opengis.cite.sta10.BenchmarkSettings;
+import org.opengis.cite.sta10.ServiceDescriptor;
+import org.opengis.cite.sta10.util.BenchmarkFixture;
+import org.opengis.cite.sta10.util.EntityHelper;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.ServiceURLBuilder;
+import org.opengis.cite.sta10.util.http.BatchTransport;
+import org.opengis.cite.sta10.util.mqtt.MqttConnection;
+import org.opengis.cite.sta10.util.mqtt.MqttHelper;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.WAIT_AFTER_INSERT;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
+import static org.opengis.cite.sta10.util.mqtt.PayloadDecoder.resultOf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks how a subscriber with a persistent session catches up after being
+ * offline. The subscriber subscribes to the Observations of a Datastream
+ * without a clean session and disconnects. Observations are then created
+ * over HTTP, and the subscriber reconnects to the same session. The time
+ * until all queued messages arrived, and how many did, are logged.
+ *
+ * Brokers only queue messages for QoS 1 and 2 subscriptions, and the MQTT
+ * specification does not require a broker to keep all of them, so lost
+ * messages are logged, not failed on. Duplicates do fail the test.
+ *
+ * @author scf
+ */
+public class CatchUpTests {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatchUpTests.class);
+
+    private EntityHelper entityHelper;
+    private BenchmarkFixture fixture;
+    private String rootUri;
+    private String mqttServerUri;
+    private long mqttTimeout;
+    private int messages;
+    private Object datastreamId;
+
+    @BeforeClass
+    public void init(ITestContext testContext) {
+        BenchmarkSettings.requireLevel(testContext, 8);
+        messages = BenchmarkSettings.fromContext(testContext).requireMqttMessages();
+
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        mqttServerUri = descriptor.requireMqttServerUri();
+        mqttTimeout = descriptor.getMqttTimeout();
+
+        entityHelper = new EntityHelper(rootUri);
+        fixture = new BenchmarkFixture(entityHelper);
+        datastreamId = fixture.createDatastream();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearDatabase() {
+        if (entityHelper != null) {
+            entityHelper.deleteEverything();
+        }
+    }
+
+    @Test(description = "Reconnect to a persistent session and receive the messages queued while offline", groups = "level-8")
+    public void checkCatchUpAfterReconnect() {
+        String clientId = MqttHelper.CLIENT_ID + "-catchup-" + UUID.randomUUID();
+        String topic = MqttHelper.getTopic(EntityType.DATASTREAM, datastreamId, "Observations");
+        int qos = Math.max(1, MqttHelper.QOS);
+
+        try (MqttConnection subscriber = new MqttConnection(mqttServerUri, clientId, mqttTimeout)) {
+            subscriber.connect(false);
+            subscriber.subscribe(topic, qos, (t, payload, arrivalNanos) -> {
+                // Nothing is created yet.
+            });
+        }
+
+        long ingestStart = System.nanoTime();
+        createObservations();
+        long ingestMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ingestStart);
+        // Give the service time to hand the messages to the broker.
+        waitMillis(WAIT_AFTER_INSERT);
+
+        Map<Long, Integer> receiveCounts = new ConcurrentHashMap<>();
+        AtomicLong firstArrival = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong lastArrival = new AtomicLong();
+        long connectStart;
+        try (MqttConnection subscriber = new MqttConnection(mqttServerUri, clientId, mqttTimeout)) {
+            subscriber.setSessionSink((t, payload, arrivalNanos) -> {
+                long result = resultOf(payload);
+                if (result < 0 || result >= messages) {
+                    return;
+                }
+                receiveCounts.merge(result, 1, Integer::sum);
+                firstArrival.accumulateAndGet(arrivalNanos, Math::min);
+                lastArrival.accumulateAndGet(arrivalNanos, Math::max);
+            });
+            connectStart = System.nanoTime();
+            subscriber.connect(false);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqttTimeout);
+            while (receiveCounts.size() < messages && System.nanoTime() < deadline) {
+                waitMillis(10);
+            }
+            // Give duplicates a chance to arrive.
+            waitMillis(WAIT_AFTER_INSERT);
+            subscriber.unsubscribe(topic);
+        } finally {
+            // Remove the session from the broker.
+            try (MqttConnection cleaner = new MqttConnection(mqttServerUri, clientId, mqttTimeout)) {
+                cleaner.connect(true);
+            }
+        }
+
+        int received = receiveCounts.size();
+        int duplicates = 0;
+        for (int count : receiveCounts.values()) {
+            duplicates += count - 1;
+        }
+        String firstMillis = received == 0 ? "-" : Long.toString(TimeUnit.NANOSECONDS.toMillis(firstArrival.get() - connectStart));
+        String catchUpMillis = received == 0 ? "-" : Long.toString(TimeUnit.NANOSECONDS.toMillis(lastArrival.get() - connectStart));
+        LOGGER.info("Catch-up with QoS {}: {} Observations created offline in {} ms; after reconnecting {} received ({} %), {} duplicates, first after {} ms, all after {} ms.",
+                qos, messages, ingestMillis, received, String.format("%.1f", 100.0 * received / messages), duplicates, firstMillis, catchUpMillis);
+        Assert.assertEquals(duplicates, 0, "Messages queued in the persistent session were delivered more than once.");
+    }
+
+    /**
+     * Creates the Observations over HTTP, with results 0 to messages - 1.
+     */
+    private void createObservations() {
+        String urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, null, null, null);
+        List<BatchTransport.Call> calls = new ArrayList<>();
+        for (int result = 0; result < messages; result++) {
+            calls.add(BatchTransport.Call.post(urlString, fixture.observationJson(datastreamId, result)));
+        }
+        HTTPMethods.getBatch().execute(calls);
+        for (BatchTransport.Call call : calls) {
+            Assert.assertEquals(call.getResponseCode(), 201, "Error creating Observation.");
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.mqttBenchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import org.opengis.cite.sta10.BenchmarkSettings;
+import org.opengis.cite.sta10.ServiceDescriptor;
+import org.opengis.cite.sta10.util.EntityHelper;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.mqtt.MqttConnection;
+import org.opengis.cite.sta10.util.mqtt.MqttHelper;
+import org.opengis.cite.sta10.util.mqtt.PayloadDecoder;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.WAIT_AFTER_INSERT;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
+import org.opengis.cite.sta10.util.perf.LatencyStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Benchmarks the delivery of one update to many subscribers. A Thing is
+ * updated with PATCH a number of times, while many subscribers listen on the
+ * entity topic of the Thing, the topic of its description property, and the
+ * Things topic with a $select on the description.
+ *
+ * A broker delivers a message only once per connection and topic, so
+ * subscribers only share a connection if they listen on different topics:
+ * each connection carries one subscriber on each of the three topics.
+ *
+ * @author scf
+ */
+public class FanOutTests {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FanOutTests.class);
+
+    private static final String PROPERTY = "description";
+
+    /**
+     * One subscription on one topic, with the updates it received.
+     */
+    private static class Subscriber {
+
+        private final String topic;
+        private final Set<String> received = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger duplicates = new AtomicInteger();
+        private final LatencyStats latency = new LatencyStats();
+
+        public Subscriber(String topic) {
+            this.topic = topic;
+        }
+    }
+
+    private EntityHelper entityHelper;
+    private String mqttServerUri;
+    private long mqttTimeout;
+    private int updates;
+    private int subscriberCount;
+    private Object thingId;
+
+    @BeforeClass
+    public void init(ITestContext testContext) {
+        BenchmarkSettings.requireLevel(testContext, 8);
+        BenchmarkSettings settings = BenchmarkSettings.fromContext(testContext);
+        updates = settings.requireMqttMessages();
+        subscriberCount = settings.getMqttSubscribers();
+
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        mqttServerUri = descriptor.requireMqttServerUri();
+        mqttTimeout = descriptor.getMqttTimeout();
+
+        entityHelper = new EntityHelper(descriptor.getRootUri());
+        thingId = entityHelper.createThing();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearDatabase() {
+        if (entityHelper != null) {
+            entityHelper.deleteEverything();
+        }
+    }
+
+    @Test(description = "Benchmark delivering updates of one Thing to many subscribers", groups = "level-8")
+    public void benchmarkFanOut() {
+        List<String> topics = Arrays.asList(
+                MqttHelper.getTopic(EntityType.THING, thingId),
+                MqttHelper.getTopic(EntityType.THING, thingId, PROPERTY),
+                MqttHelper.getTopic(EntityType.THING, Collections.singletonList(PROPERTY)));
+        int connectionCount = (subscriberCount + topics.size() - 1) / topics.size();
+
+        Map<String, Long> sendTimes = new ConcurrentHashMap<>();
+        Map<String, LongAccumulator> firstArrivals = new ConcurrentHashMap<>();
+        Map<String, LongAccumulator> lastArrivals = new ConcurrentHashMap<>();
+        List<Subscriber> subscribers = new ArrayList<>();
+        List<MqttConnection> connections = new ArrayList<>();
+        try {
+            long setupStart = System.nanoTime();
+            String clientPrefix = MqttHelper.CLIENT_ID + "-fanout-" + UUID.randomUUID() + "-";
+            for (int c = 0; c < connectionCount; c++) {
+                MqttConnection connection = new MqttConnection(mqttServerUri, clientPrefix + c, mqttTimeout);
+                connections.add(connection);
+                connection.connect(true);
+                for (int t = 0; t < topics.size() && subscribers.size() < subscriberCount; t++) {
+                    Subscriber subscriber = new Subscriber(topics.get(t));
+                    subscribers.add(subscriber);
+                    connection.subscribe(subscriber.topic, MqttHelper.QOS, (topic, payload, arrivalNanos) -> {
+                        String value = valueOf(payload);
+                        Long sentAt = value == null ? null : sendTimes.get(value);
+                        if (sentAt == null) {
+                            return;
+                        }
+                        if (!subscriber.received.add(value)) {
+                            subscriber.duplicates.incrementAndGet();
+                            return;
+                        }
+                        subscriber.latency.record(arrivalNanos - sentAt);
+                        firstArrivals.computeIfAbsent(value, k -> new LongAccumulator(Math::min, Long.MAX_VALUE)).accumulate(arrivalNanos);
+                        lastArrivals.computeIfAbsent(value, k -> new LongAccumulator(Math::max, Long.MIN_VALUE)).accumulate(arrivalNanos);
+                    });
+                }
+            }
+            long setupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - setupStart);
+            LOGGER.info("Subscribed {} subscribers on {} connections in {} ms.", subscribers.size(), connections.size(), setupMillis);
+
+            String runId = UUID.randomUUID().toString();
+            for (int u = 0; u < updates; u++) {
+                String value = "fan-out " + runId + " " + u;
+                sendTimes.put(value, System.nanoTime());
+                entityHelper.patchEntity(EntityType.THING, Collections.singletonMap(PROPERTY, value), thingId);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqttTimeout);
+            while (!allReceived(subscribers) && System.nanoTime() < deadline) {
+                waitMillis(10);
+            }
+            // Give duplicates a chance to arrive.
+            waitMillis(WAIT_AFTER_INSERT);
+        } finally {
+            for (MqttConnection connection : connections) {
+                connection.close();
+            }
+        }
+
+        report(topics, subscribers, firstArrivals, lastArrivals);
+    }
+
+    private boolean allReceived(List<Subscriber> subscribers) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.received.size() < updates) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void report(List<String> topics, List<Subscriber> subscribers, Map<String, LongAccumulator> firstArrivals, Map<String, LongAccumulator> lastArrivals) {
+        for (String topic : topics) {
+            LatencyStats all = new LatencyStats();
+            LatencyStats medians = new LatencyStats();
+            int count = 0;
+            int complete = 0;
+            long delivered = 0;
+            long duplicates = 0;
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.topic.equals(topic)) {
+                    continue;
+                }
+                count++;
+                delivered += subscriber.received.size();
+                duplicates += subscriber.duplicates.get();
+                if (subscriber.received.size() == updates) {
+                    complete++;
+                }
+                if (subscriber.latency.getCount() > 0) {
+                    medians.record(subscriber.latency.getPercentile(0.5));
+                }
+                all.add(subscriber.latency);
+            }
+            LOGGER.info("Fan-out on {}: {} subscribers, {} complete, {} of {} deliveries, {} duplicates.",
+                    topic, count, complete, delivered, (long) count * updates, duplicates);
+            LOGGER.info("    latency percentiles over all subscribers: {}", all.getSummary());
+            LOGGER.info("    spread of the per-subscriber median latency: {}", medians.getSummary());
+        }
+        LatencyStats spread = new LatencyStats();
+        for (Map.Entry<String, LongAccumulator> entry : firstArrivals.entrySet()) {
+            spread.record(lastArrivals.get(entry.getKey()).get() - entry.getValue().get());
+        }
+        LOGGER.info("Time between the first and last delivery of an update: {}", spread.getSummary());
+    }
+
+    private static String valueOf(byte[] payload) {
+        String[] values = PayloadDecoder.fields(payload, PROPERTY);
+        return values == null ? null : values[0];
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.mqttBenchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opengis.cite.sta10.BenchmarkSettings;
+import org.opengis.cite.sta10.ServiceDescriptor;
+import org.opengis.cite.sta10.util.BenchmarkFixture;
+import org.opengis.cite.sta10.util.EntityHelper;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.ServiceURLBuilder;
+import org.opengis.cite.sta10.util.http.BatchTransport;
+import org.opengis.cite.sta10.util.mqtt.AsyncPublisher;
+import org.opengis.cite.sta10.util.mqtt.MqttHelper;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Simulates a fleet of devices that each publish Observations on the
+ * Observations topic of their own Datastream. The devices are light tasks on
+ * a small scheduler, that share a publisher connection per group of
+ * devices, and publish at the configured rate with a random jitter. While
+ * they run, the number of Observations the service stored is sampled with
+ * $count, to show how far ingest lags behind. Afterwards the number of
+ * Observations of each Datastream is compared to what its device published.
+ * A device whose publisher has no room in its window does not wait for it,
+ * that would hold up the scheduler and all other devices, but tries again a
+ * little later.
+ *
+ * @author scf
+ */
+public class FleetSimulatorTests {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FleetSimulatorTests.class);
+
+    /**
+     * The number of devices sharing one MQTT connection.
+     */
+    private static final int DEVICES_PER_CONNECTION = 100;
+    /**
+     * The maximum deviation of an interval between two publishes, as a
+     * fraction of the average interval.
+     */
+    private static final double JITTER = 0.5;
+    /**
+     * The delay before a device tries again when its publisher window is
+     * full, in microseconds.
+     */
+    private static final long RETRY_MICROS = 1000;
+
+    private EntityHelper entityHelper;
+    private BenchmarkFixture fixture;
+    private String rootUri;
+    private String mqttServerUri;
+    private long mqttTimeout;
+    private int deviceCount;
+    private double rate;
+    private int duration;
+    private List<Object> datastreamIds;
+
+    @BeforeClass
+    public void init(ITestContext testContext) {
+        BenchmarkSettings.requireLevel(testContext, 7);
+        BenchmarkSettings settings = BenchmarkSettings.fromContext(testContext);
+        deviceCount = settings.requireFleetDevices();
+        rate = settings.getFleetRate();
+        duration = settings.getFleetDuration();
+
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        mqttServerUri = descriptor.requireMqttServerUri();
+        mqttTimeout = descriptor.getMqttTimeout();
+
+        entityHelper = new EntityHelper(rootUri);
+        long start = System.nanoTime();
+        fixture = new BenchmarkFixture(entityHelper);
+        datastreamIds = fixture.createDatastreams(deviceCount);
+        LOGGER.info("Provisioned {} devices in {} ms.", deviceCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearDatabase() {
+        if (entityHelper != null) {
+            entityHelper.deleteEverything();
+        }
+    }
+
+    /**
+     * One simulated device, that publishes and then schedules its next
+     * publish.
+     */
+    private class Device implements Runnable {
+
+        private final int index;
+        private final String topic;
+        private final AsyncPublisher publisher;
+        private final ScheduledExecutorService scheduler;
+        private final long endNanos;
+        private final AtomicLongArray published;
+        private final AtomicLong failures;
+        private final AtomicLong retries;
+
+        public Device(int index, AsyncPublisher publisher, ScheduledExecutorService scheduler, long endNanos, AtomicLongArray published, AtomicLong failures, AtomicLong retries) {
+            this.index = index;
+            this.topic = MqttHelper.getTopic(EntityType.DATASTREAM, datastreamIds.get(index), "Observations");
+            this.publisher = publisher;
+            this.scheduler = scheduler;
+            this.endNanos = endNanos;
+            this.published = published;
+            this.failures = failures;
+            this.retries = retries;
+        }
+
+        @Override
+        public void run() {
+            if (System.nanoTime() >= endNanos) {
+                return;
+            }
+            String body = fixture.observationJson(null, Instant.now().toString(), published.get(index));
+            try {
+                if (publisher.tryPublish(topic, body.getBytes(StandardCharsets.UTF_8), MqttHelper.QOS) == null) {
+                    retries.incrementAndGet();
+                    scheduler.schedule(this, RETRY_MICROS, TimeUnit.MICROSECONDS);
+                    return;
+                }
+                published.incrementAndGet(index);
+            } catch (Throwable ex) {
+                // A failed publish stops the device, the others carry on.
+                LOGGER.debug("Device {} failed: {}", index, ex.getMessage());
+                failures.incrementAndGet();
+                return;
+            }
+            scheduler.schedule(this, nextDelayMicros(ThreadLocalRandom.current()), TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private long nextDelayMicros(Random random) {
+        double interval = 1e6 / rate;
+        return (long) (interval * (1 + JITTER * (2 * random.nextDouble() - 1)));
+    }
+
+    @Test(description = "Simulate a fleet of devices publishing Observations over MQTT", groups = "level-7")
+    public void simulateFleet() {
+        long baseline = countObservations(rootUri + "/Observations?$count=true&$top=0");
+        if (baseline < 0) {
+            Assert.fail("Failed to count the Observations before starting the fleet.");
+        }
+        AtomicLongArray published = new AtomicLongArray(deviceCount);
+        AtomicLong failures = new AtomicLong();
+        AtomicLong retries = new AtomicLong();
+        List<AsyncPublisher> publishers = new ArrayList<>();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())));
+        long maxBacklog = 0;
+        long drainMillis = -1;
+        try {
+            String clientPrefix = MqttHelper.CLIENT_ID + "-fleet-" + UUID.randomUUID() + "-";
+            for (int c = 0; c * DEVICES_PER_CONNECTION < deviceCount; c++) {
+                publishers.add(new AsyncPublisher(mqttServerUri, clientPrefix + c, mqttTimeout, MqttHelper.getPublishWindow()));
+            }
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(duration);
+            Random random = new Random();
+            for (int i = 0; i < deviceCount; i++) {
+                Device device = new Device(i, publishers.get(i / DEVICES_PER_CONNECTION), scheduler, end, published, failures, retries);
+                // Spread the first publishes over one interval.
+                scheduler.schedule(device, (long) (random.nextDouble() * 1e6 / rate), TimeUnit.MICROSECONDS);
+            }
+
+            while (System.nanoTime() < end) {
+                waitMillis(1000);
+                long sent = sum(published);
+                long count = countObservations(rootUri + "/Observations?$count=true&$top=0");
+                if (count < 0) {
+                    LOGGER.info("Fleet after {} s: {} published, count failed.",
+                            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), sent);
+                    continue;
+                }
+                long stored = count - baseline;
+                maxBacklog = Math.max(maxBacklog, sent - stored);
+                LOGGER.info("Fleet after {} s: {} published, {} stored, {} behind.",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), sent, stored, sent - stored);
+            }
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(mqttTimeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                LOGGER.warn("Interrupted while stopping the devices.");
+            }
+            for (AsyncPublisher publisher : publishers) {
+                publisher.flush();
+            }
+
+            long stopped = System.nanoTime();
+            long deadline = stopped + TimeUnit.MILLISECONDS.toNanos(mqttTimeout);
+            long sent = sum(published);
+            while (System.nanoTime() < deadline) {
+                long count = countObservations(rootUri + "/Observations?$count=true&$top=0");
+                if (count >= 0 && count - baseline >= sent) {
+                    drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stopped);
+                    break;
+                }
+                waitMillis(100);
+            }
+        } finally {
+            scheduler.shutdownNow();
+            for (AsyncPublisher publisher : publishers) {
+                publisher.close();
+            }
+        }
+        report(published, failures.get(), retries.get(), maxBacklog, drainMillis);
+    }
+
+    private void report(AtomicLongArray published, long failures, long retries, long maxBacklog, long drainMillis) {
+        List<BatchTransport.Call> calls = new ArrayList<>(deviceCount);
+        for (Object datastreamId : datastreamIds) {
+            calls.add(BatchTransport.Call.get(ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, datastreamId, EntityType.OBSERVATION, null) + "?$count=true&$top=0"));
+        }
+        HTTPMethods.getBatch().execute(calls);
+        int complete = 0;
+        int unknown = 0;
+        long stored = 0;
+        double worstRatio = 1;
+        int worstDevice = -1;
+        for (int i = 0; i < deviceCount; i++) {
+            long deviceStored = countFromResponse(calls.get(i).getResponse());
+            if (deviceStored < 0) {
+                unknown++;
+                continue;
+            }
+            long devicePublished = published.get(i);
+            stored += deviceStored;
+            if (deviceStored >= devicePublished) {
+                complete++;
+            } else {
+                double ratio = (double) deviceStored / devicePublished;
+                if (ratio < worstRatio) {
+                    worstRatio = ratio;
+                    worstDevice = i;
+                }
+            }
+        }
+        long total = sum(published);
+        LOGGER.info("Fleet of {} devices at {}/s for {} s: {} published ({}/s), {} stored, {} devices complete, {} devices failed.",
+                deviceCount, rate, duration, total, String.format("%.1f", (double) total / duration), stored, complete, failures);
+        LOGGER.info("    {} publishes retried on a full window, {} devices not counted.", retries, unknown);
+        LOGGER.info("    largest ingest backlog {} Observations, backlog cleared {}.",
+                maxBacklog, drainMillis < 0 ? "not within the MQTT timeout" : drainMillis + " ms after the devices stopped");
+        if (worstDevice >= 0) {
+            LOGGER.info("    least complete device {}: {} of {} stored.",
+                    worstDevice, String.format("%.1f %%", 100 * worstRatio), published.get(worstDevice));
+        }
+    }
+
+    private static long sum(AtomicLongArray values) {
+        long sum = 0;
+        for (int i = 0; i < values.length(); i++) {
+            sum += values.get(i);
+        }
+        return sum;
+    }
+
+    private static long countObservations(String urlString) {
+        return countFromResponse(HTTPMethods.doGet(urlString, false));
+    }
+
+    /**
+     * @param responseMap The response of a $count request.
+     * @return The count, or -1 if the request failed.
+     */
+    private static long countFromResponse(Map<String, Object> responseMap) {
+        try {
+            if (Integer.parseInt(responseMap.get("response-code").toString()) != 200) {
+                return -1;
+            }
+            return new JSONObject(responseMap.get("response").toString()).getLong("@iot.count");
+        } catch (JSONException ex) {
+            Assert.fail("Invalid count response: " + ex.getMessage());
+            return -1;
+        }
+    }
+}
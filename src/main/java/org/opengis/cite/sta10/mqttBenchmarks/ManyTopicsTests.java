@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.mqttBenchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.opengis.cite.sta10.BenchmarkSettings;
+import org.opengis.cite.sta10.ServiceDescriptor;
+import org.opengis.cite.sta10.util.BenchmarkFixture;
+import org.opengis.cite.sta10.util.EntityHelper;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.mqtt.AsyncPublisher;
+import org.opengis.cite.sta10.util.mqtt.MqttConnection;
+import org.opengis.cite.sta10.util.mqtt.MqttHelper;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
+import static org.opengis.cite.sta10.util.mqtt.PayloadDecoder.resultOf;
+import org.opengis.cite.sta10.util.perf.LatencyStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Benchmarks one client subscribing to the Observations of many Datastreams.
+ * For each configured number of Datastreams N, one connection subscribes to
+ * the Observations topic of each of N Datastreams, and Observations are
+ * published round-robin over the Datastreams. The time to set up the
+ * subscriptions and the latency of the messages are logged for each N, and
+ * each message must arrive, once, on the topic of its own Datastream.
+ *
+ * @author scf
+ */
+public class ManyTopicsTests {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ManyTopicsTests.class);
+
+    private EntityHelper entityHelper;
+    private BenchmarkFixture fixture;
+    private String mqttServerUri;
+    private long mqttTimeout;
+    private int messages;
+    private List<Integer> topicCounts;
+    private final List<Object> datastreamIds = new ArrayList<>();
+    private long nextResult = 0;
+
+    @BeforeClass
+    public void init(ITestContext testContext) {
+        BenchmarkSettings.requireLevel(testContext, 8);
+        BenchmarkSettings settings = BenchmarkSettings.fromContext(testContext);
+        messages = settings.requireMqttMessages();
+        topicCounts = settings.getMqttTopicCounts();
+
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        mqttServerUri = descriptor.requireMqttServerUri();
+        mqttTimeout = descriptor.getMqttTimeout();
+
+        entityHelper = new EntityHelper(descriptor.getRootUri());
+        fixture = new BenchmarkFixture(entityHelper);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearDatabase() {
+        if (entityHelper != null) {
+            entityHelper.deleteEverything();
+        }
+    }
+
+    @Test(description = "Benchmark subscribing to the Observations of a growing number of Datastreams", groups = "level-8")
+    public void benchmarkManyTopics() {
+        List<String> failures = new ArrayList<>();
+        for (int topicCount : topicCounts) {
+            createDatastreams(topicCount);
+            String failure = runCase(topicCount);
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        Assert.assertTrue(failures.isEmpty(), String.join(" ", failures));
+    }
+
+    /**
+     * Creates Datastreams until there are the given number, in batches if the
+     * service supports them.
+     */
+    private void createDatastreams(int count) {
+        if (datastreamIds.size() >= count) {
+            return;
+        }
+        long start = System.nanoTime();
+        int missing = count - datastreamIds.size();
+        datastreamIds.addAll(fixture.createDatastreams(missing));
+        LOGGER.info("Created {} Datastreams in {} ms.", missing, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Subscribes to the Observations of the first topicCount Datastreams and
+     * publishes Observations round-robin over them.
+     *
+     * @return A description of the failure, or null if all messages arrived
+     * on the right topic.
+     */
+    private String runCase(int topicCount) {
+        int total = Math.max(messages, topicCount);
+        long firstResult = nextResult;
+        nextResult += total;
+        List<String> topics = new ArrayList<>();
+        for (int i = 0; i < topicCount; i++) {
+            topics.add(MqttHelper.getTopic(EntityType.DATASTREAM, datastreamIds.get(i), "Observations"));
+        }
+        Map<Long, Long> sendTimes = new ConcurrentHashMap<>();
+        Map<Long, Integer> receiveCounts = new ConcurrentHashMap<>();
+        AtomicInteger misrouted = new AtomicInteger();
+        LatencyStats latency = new LatencyStats();
+        MqttConnection.MessageSink sink = (topic, payload, arrivalNanos) -> {
+            long result = resultOf(payload);
+            Long sentAt = sendTimes.get(result);
+            if (sentAt == null) {
+                return;
+            }
+            if (!topic.equals(topics.get((int) ((result - firstResult) % topicCount)))) {
+                misrouted.incrementAndGet();
+                return;
+            }
+            if (receiveCounts.merge(result, 1, Integer::sum) == 1) {
+                latency.record(arrivalNanos - sentAt);
+            }
+        };
+
+        String clientPrefix = MqttHelper.CLIENT_ID + "-topics-" + UUID.randomUUID();
+        long setupNanos;
+        try (MqttConnection subscriber = new MqttConnection(mqttServerUri, clientPrefix + "-sub", mqttTimeout);
+                AsyncPublisher publisher = new AsyncPublisher(mqttServerUri, clientPrefix + "-pub", mqttTimeout, MqttHelper.getPublishWindow())) {
+            subscriber.connect(true);
+            long setupStart = System.nanoTime();
+            for (String topic : topics) {
+                subscriber.subscribe(topic, MqttHelper.QOS, sink);
+            }
+            setupNanos = System.nanoTime() - setupStart;
+
+            String publishTopic = MqttHelper.getTopic(EntityType.OBSERVATION);
+            for (long result = firstResult; result < firstResult + total; result++) {
+                Object datastreamId = datastreamIds.get((int) ((result - firstResult) % topicCount));
+                String body = fixture.observationJson(datastreamId, result);
+                sendTimes.put(result, System.nanoTime());
+                publisher.publish(publishTopic, body.getBytes(StandardCharsets.UTF_8), MqttHelper.QOS);
+            }
+            publisher.flush();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqttTimeout);
+            while (receiveCounts.size() < total && System.nanoTime() < deadline) {
+                waitMillis(10);
+            }
+            waitMillis(MqttHelper.WAIT_AFTER_INSERT);
+        }
+
+        int duplicates = 0;
+        for (int count : receiveCounts.values()) {
+            duplicates += count - 1;
+        }
+        int lost = total - receiveCounts.size();
+        LOGGER.info("{} topics: subscribed in {} ms ({} ms per topic), {} messages, {} lost, {} duplicates, {} on a wrong topic, latency: {}",
+                topicCount,
+                TimeUnit.NANOSECONDS.toMillis(setupNanos),
+                String.format("%.2f", setupNanos / 1e6 / topicCount),
+                total, lost, duplicates, misrouted.get(), latency.getSummary());
+        if (lost > 0 || duplicates > 0 || misrouted.get() > 0) {
+            return topicCount + " topics: " + lost + " lost, " + duplicates + " duplicates, " + misrouted.get() + " on a wrong topic.";
+        }
+        return null;
+    }
+}
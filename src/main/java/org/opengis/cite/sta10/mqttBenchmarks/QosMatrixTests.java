@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.mqttBenchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opengis.cite.sta10.BenchmarkSettings;
+import org.opengis.cite.sta10.ServiceDescriptor;
+import org.opengis.cite.sta10.util.BenchmarkFixture;
+import org.opengis.cite.sta10.util.EntityHelper;
+import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.ServiceURLBuilder;
+import org.opengis.cite.sta10.util.mqtt.AsyncPublisher;
+import org.opengis.cite.sta10.util.mqtt.MqttConnection;
+import org.opengis.cite.sta10.util.mqtt.MqttHelper;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.WAIT_AFTER_INSERT;
+import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
+import static org.opengis.cite.sta10.util.mqtt.PayloadDecoder.resultOf;
+import org.opengis.cite.sta10.util.perf.LatencyStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Benchmarks the flows of Conformance Level 7 and 8 for all combinations of
+ * publish and subscribe QoS. For each combination a number of Observations is
+ * created, either by publishing them on MQTT or by posting them over HTTP,
+ * while a subscriber listens on the Observations of their Datastream. The
+ * latency from create to notification, the throughput, and the number of
+ * duplicate and lost notifications are logged for each combination.
+ *
+ * @author scf
+ */
+public class QosMatrixTests {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QosMatrixTests.class);
+
+    private static final int[] QOS_LEVELS = {0, 1, 2};
+
+    /**
+     * Creates one Observation with the given unique result.
+     */
+    private interface Sender {
+
+        void send(long result);
+    }
+
+    private EntityHelper entityHelper;
+    private BenchmarkFixture fixture;
+    private String rootUri;
+    private String mqttServerUri;
+    private long mqttTimeout;
+    private int messages;
+    private Object datastreamId;
+    private long nextResult = 0;
+    private final List<String> report = new ArrayList<>();
+
+    @BeforeClass
+    public void init(ITestContext testContext) {
+        BenchmarkSettings.requireLevel(testContext, 8);
+        messages = BenchmarkSettings.fromContext(testContext).requireMqttMessages();
+
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        mqttServerUri = descriptor.requireMqttServerUri();
+        mqttTimeout = descriptor.getMqttTimeout();
+
+        entityHelper = new EntityHelper(rootUri);
+        fixture = new BenchmarkFixture(entityHelper);
+        datastreamId = fixture.createDatastream();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void clearDatabase() {
+        if (!report.isEmpty()) {
+            LOGGER.info("QoS matrix, {} messages per case:\n{}", messages, String.join("\n", report));
+        }
+        if (entityHelper != null) {
+            entityHelper.deleteEverything();
+        }
+    }
+
+    @Test(description = "Benchmark creating Observations via MQTT for all combinations of publish and subscribe QoS", groups = "level-8")
+    public void benchmarkCreateViaMqtt() {
+        for (int publishQos : QOS_LEVELS) {
+            try (AsyncPublisher publisher = new AsyncPublisher(mqttServerUri, MqttHelper.CLIENT_ID + "-pub-" + UUID.randomUUID(), mqttTimeout, MqttHelper.getPublishWindow())) {
+                String topic = MqttHelper.getTopic(EntityType.OBSERVATION);
+                for (int subscribeQos : QOS_LEVELS) {
+                    runCase("MQTT QoS " + publishQos + " -> QoS " + subscribeQos, subscribeQos,
+                            result -> publisher.publish(topic, fixture.observationJson(datastreamId, result).getBytes(StandardCharsets.UTF_8), publishQos));
+                    publisher.flush();
+                }
+            }
+        }
+    }
+
+    @Test(description = "Benchmark receiving Observations created over HTTP for all subscribe QoS", groups = "level-8")
+    public void benchmarkCreateViaHttp() {
+        String urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.OBSERVATION, null, null, null);
+        for (int subscribeQos : QOS_LEVELS) {
+            runCase("HTTP        -> QoS " + subscribeQos, subscribeQos, result -> {
+                Map<String, Object> responseMap = HTTPMethods.doPost(urlString, fixture.observationJson(datastreamId, result));
+                int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
+                Assert.assertEquals(responseCode, 201, "Error creating Observation.");
+            });
+        }
+    }
+
+    /**
+     * Creates the configured number of Observations with the given sender
+     * while listening for them with the given QoS, and adds the results to
+     * the report.
+     */
+    private void runCase(String name, int subscribeQos, Sender sender) {
+        long firstResult = nextResult;
+        nextResult += messages;
+        Map<Long, Long> sendTimes = new ConcurrentHashMap<>();
+        Map<Long, Integer> receiveCounts = new ConcurrentHashMap<>();
+        LatencyStats latency = new LatencyStats();
+        AtomicLong lastArrival = new AtomicLong();
+        String topic = MqttHelper.getTopic(EntityType.DATASTREAM, datastreamId, "Observations");
+
+        long start;
+        try (MqttConnection subscriber = new MqttConnection(mqttServerUri, MqttHelper.CLIENT_ID + "-sub-" + UUID.randomUUID(), mqttTimeout)) {
+            subscriber.connect(true);
+            subscriber.subscribe(topic, subscribeQos, (t, payload, arrivalNanos) -> {
+                long result = resultOf(payload);
+                Long sentAt = sendTimes.get(result);
+                if (sentAt == null) {
+                    // Not one of ours, or the raw publish echoed by the broker.
+                    return;
+                }
+                if (receiveCounts.merge(result, 1, Integer::sum) == 1) {
+                    latency.record(arrivalNanos - sentAt);
+                }
+                lastArrival.accumulateAndGet(arrivalNanos, Math::max);
+            });
+
+            start = System.nanoTime();
+            for (long result = firstResult; result < firstResult + messages; result++) {
+                sendTimes.put(result, System.nanoTime());
+                sender.send(result);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mqttTimeout);
+            while (receiveCounts.size() < messages && System.nanoTime() < deadline) {
+                waitMillis(10);
+            }
+            // Give duplicates a chance to arrive.
+            waitMillis(WAIT_AFTER_INSERT);
+            subscriber.unsubscribe(topic);
+        }
+
+        int received = receiveCounts.size();
+        int duplicates = 0;
+        for (int count : receiveCounts.values()) {
+            duplicates += count - 1;
+        }
+        long elapsed = Math.max(1, (received == 0 ? System.nanoTime() : lastArrival.get()) - start);
+        double throughput = received * 1e9 / elapsed;
+        String line = String.format("%-20s sent=%d received=%d duplicates=%d lost=%d throughput=%.1f msg/s latency: %s",
+                name, messages, received, duplicates, messages - received, throughput, latency.getSummary());
+        LOGGER.info(line);
+        report.add(line);
+    }
+}
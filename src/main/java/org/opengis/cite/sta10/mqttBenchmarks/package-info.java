@@ -0,0 +1,6 @@
+/**
+ * Optional benchmarks of the MQTT extension. They are not part of any
+ * conformance level, and only run in the benchmark suite,
+ * testng-benchmarks.xml, when the benchmark test run arguments are set.
+ */
+package org.opengis.cite.sta10.mqttBenchmarks;
@@ -15,19 +15,18 @@ import de.fraunhofer.iosb.ilt.sta.model.ext.EntityList;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.geojson.Point;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
-import static org.opengis.cite.sta10.SuiteFixtureListener.KEY_HAS_MULTI_DATASTREAM;
 import org.opengis.cite.sta10.util.EntityUtils;
+import org.opengis.cite.sta10.util.Extension;
 import org.opengis.cite.sta10.util.HTTPMethods;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,22 +73,15 @@ public class MultiDatastreamTests {
                     "Conformance level 5 will not be checked since ics = " + level);
         }
 
-        boolean hasMultiDatastream = Boolean.TRUE.toString().equals(suite.getXmlSuite().getParameter(KEY_HAS_MULTI_DATASTREAM));
+        ServiceDescriptor descriptor = ServiceDescriptor.fromSuite(suite);
+        boolean hasMultiDatastream = descriptor.hasExtension(Extension.MULTI_DATASTREAM);
         Assert.assertTrue(hasMultiDatastream, "Conformance level 5 not checked since MultiDatastreams not listed in Service Root.");
 
-        rootUri = suite.getAttribute(SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        URL url;
+        rootUri = descriptor.getRootUri();
+        service = descriptor.getService();
         try {
-            url = new URL(rootUri);
-            service = new SensorThingsService(url);
             createEntities();
-        } catch (MalformedURLException | URISyntaxException ex) {
-            LOGGER.error("Failed to create service uri.", ex);
-        } catch (ServiceFailureException ex) {
+        } catch (ServiceFailureException | URISyntaxException ex) {
             LOGGER.error("Failed to create entities.", ex);
         } catch (Exception ex) {
             LOGGER.error("Unknown Exception.", ex);
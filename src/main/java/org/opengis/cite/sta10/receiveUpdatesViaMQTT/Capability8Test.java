@@ -15,7 +15,6 @@
  */
 package org.opengis.cite.sta10.receiveUpdatesViaMQTT;
 
-import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -26,19 +25,22 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.Callable;
-import org.joda.time.DateTime;
-import org.joda.time.Interval;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
+import org.opengis.cite.sta10.util.ControlInformation;
 import org.opengis.cite.sta10.util.EntityHelper;
 import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.JsonComparator;
 import org.opengis.cite.sta10.util.Utils;
+import org.opengis.cite.sta10.util.mqtt.MessageCapture;
 import org.opengis.cite.sta10.util.mqtt.MqttBatchResult;
 import org.opengis.cite.sta10.util.mqtt.MqttHelper;
 import static org.opengis.cite.sta10.util.mqtt.MqttHelper.WAIT_AFTER_INSERT;
 import static org.opengis.cite.sta10.util.mqtt.MqttHelper.waitMillis;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.ITestContext;
 import org.testng.annotations.AfterClass;
@@ -51,6 +53,11 @@ import org.testng.annotations.Test;
  */
 public class Capability8Test {
 
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Capability8Test.class);
+
     private static final List<EntityType> ENTITY_TYPES_FOR_CREATE = Arrays.asList(
             EntityType.THING,
             EntityType.LOCATION,
@@ -73,6 +80,11 @@ public class Capability8Test {
             EntityType.HISTORICAL_LOCATION,
             EntityType.LOCATION,
             EntityType.THING);
+    /**
+     * The number of Observations inserted in one go, to check that every
+     * insert is notified once, in order.
+     */
+    private static final int MULTIPLE_INSERT_COUNT = 5;
 
     private EntityHelper entityHelper;
     private final Map<EntityType, Object> ids = new HashMap<>();
@@ -95,6 +107,27 @@ public class Capability8Test {
         });
     }
 
+    @Test(description = "Subcribe to EntitySet and insert multiple Observations", groups = "level-8")
+    public void checkSubscribeToEntitySetMultipleInserts() {
+        deleteCreatedEntities();
+        createEntities();
+        // Give the server a second to send out the messages created by the setup.
+        waitMillis(WAIT_AFTER_INSERT);
+
+        String topic = MqttHelper.getTopic(EntityType.OBSERVATION);
+        MqttBatchResult<Object> result = mqttHelper.executeRequests(() -> {
+            for (int i = 0; i < MULTIPLE_INSERT_COUNT; i++) {
+                entityHelper.createObservation(ids.get(EntityType.DATASTREAM), ids.get(EntityType.FEATURE_OF_INTEREST), "2015-03-01T0" + i + ":00:00Z", i);
+            }
+            return null;
+        }, MULTIPLE_INSERT_COUNT, topic);
+        MessageCapture capture = result.getCapture(topic);
+        // The standard does not require messages to arrive in insert order,
+        // so only the count and uniqueness are checked.
+        capture.verifyCount(MULTIPLE_INSERT_COUNT);
+        capture.verifyNoDuplicates(ControlInformation.ID);
+    }
+
     @Test(description = "Subcribe to EntitySet and update (PATCH) Entity", groups = "level-8")
     public void checkSubscribeToEntitySetUpdatePATCH() {
         deleteCreatedEntities();
@@ -315,14 +348,23 @@ public class Capability8Test {
         // Give the server a second to send out the messages created by the setup.
         waitMillis(WAIT_AFTER_INSERT);
 
+        // Resolve all relative topics up front, with one request per parent
+        // entity. The updates below refresh the cached entities.
+        List<String> allTopics = new ArrayList<>();
+        ENTITY_TYPES_FOR_CREATE.stream().forEach((entityType) -> {
+            allTopics.addAll(MqttHelper.getRelativeTopicsForEntity(entityType, ids));
+        });
+        entityHelper.resolveRelated(allTopics);
+
         ENTITY_TYPES_FOR_CREATE.stream().forEach((entityType) -> {
             List<String> relativeTopics = MqttHelper.getRelativeTopicsForEntity(entityType, ids);
             if (!(relativeTopics.isEmpty())) {
                 MqttBatchResult<JSONObject> result = mqttHelper.executeRequests(
                         getUpdatePutEntityAction(entityType),
                         relativeTopics.toArray(new String[relativeTopics.size()]));
+                Map<String, JSONObject> expectedResults = entityHelper.resolveRelated(result.getMessages().keySet());
                 result.getMessages().entrySet().stream().forEach((entry) -> {
-                    JSONObject expectedResult = entityHelper.getEntity(entry.getKey());
+                    JSONObject expectedResult = expectedResults.get(entry.getKey());
                     assertJsonEqualsWithLinkResolving(expectedResult, entry.getValue(), entry.getKey());
                 });
             }
@@ -389,6 +431,7 @@ public class Capability8Test {
      */
     @AfterClass
     public void clearDatabase() {
+        LOGGER.info(entityHelper.getNavigationCache().getStatistics());
         entityHelper.deleteEverything();
     }
 
@@ -409,20 +452,10 @@ public class Capability8Test {
                     "Conformance level 8 will not be checked since ics = " + level);
         }
 
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        if (testContext.getSuite().getAttribute(SuiteAttribute.MQTT_SERVER.getName()) == null) {
-            Assert.fail("Property '" + SuiteAttribute.MQTT_SERVER.getName() + "' not set in configuration");
-        }
-        String mqttServerUri = testContext.getSuite().getAttribute(SuiteAttribute.MQTT_SERVER.getName()).toString();
-        if (testContext.getSuite().getAttribute(SuiteAttribute.MQTT_TIMEOUT.getName()) == null) {
-            Assert.fail("Property '" + SuiteAttribute.MQTT_TIMEOUT.getName() + "' not set in configuration");
-        }
-        long mqttTimeout = Long.parseLong(testContext.getSuite().getAttribute(SuiteAttribute.MQTT_TIMEOUT.getName()).toString());
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        rootUri = descriptor.getRootUri();
+        String mqttServerUri = descriptor.requireMqttServerUri();
+        long mqttTimeout = descriptor.getMqttTimeout();
 
         this.entityHelper = new EntityHelper(rootUri);
         this.mqttHelper = new MqttHelper(mqttServerUri, mqttTimeout);
@@ -566,117 +599,7 @@ public class Capability8Test {
     }
 
     private static void assertJsonEqualsWithLinkResolving(JSONObject expected, JSONObject received, String topic) {
-        String message = "";
-        boolean equals = jsonEqualsWithLinkResolving(expected, received, topic);
-        if (!equals) {
-            message = "Expected " + expected.toString() + " got " + received.toString() + " for topic " + topic;
-        }
-        Assert.assertTrue(equals, message);
-    }
-
-    private static boolean jsonEqualsWithLinkResolving(JSONArray arr1, JSONArray arr2, String topic) {
-        if (arr1.length() != arr2.length()) {
-            return false;
-        }
-        for (int i = 0; i < arr1.length(); i++) {
-            Object val1 = arr1.get(i);
-            if (val1 instanceof JSONObject) {
-                if (!jsonEqualsWithLinkResolving((JSONObject) val1, arr2.getJSONObject(i), topic)) {
-                    return false;
-                }
-            } else if (val1 instanceof JSONArray) {
-                if (!jsonEqualsWithLinkResolving((JSONArray) val1, arr2.getJSONArray(i), topic)) {
-                    return false;
-                }
-            } else if (!val1.equals(arr2.get(i))) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static boolean jsonEqualsWithLinkResolving(JSONObject obj1, JSONObject obj2, String topic) {
-        if (obj1 == obj2) {
-            return true;
-        }
-        if (obj1 == null) {
-            return false;
-        }
-        if (obj1.getClass() != obj2.getClass()) {
-            return false;
-        }
-        if (obj1.length() != obj2.length()) {
-            return false;
-        }
-        Iterator iterator = obj1.keys();
-        while (iterator.hasNext()) {
-            String key = iterator.next().toString();
-            if (!obj2.has(key)) {
-                return false;
-            }
-            try {
-                Object val1 = obj1.get(key);
-                if (val1 instanceof JSONObject) {
-                    if (!jsonEqualsWithLinkResolving((JSONObject) val1, (JSONObject) obj2.getJSONObject(key), topic)) {
-                        return false;
-                    }
-                } else if (val1 instanceof JSONArray) {
-                    JSONArray arr1 = (JSONArray) val1;
-                    JSONArray arr2 = obj2.getJSONArray(key);
-                    if (!jsonEqualsWithLinkResolving(arr1, arr2, topic)) {
-                        return false;
-                    }
-                } else if (key.toLowerCase().endsWith("time")) {
-                    if (!checkTimeEquals(val1.toString(), obj2.get(key).toString())) {
-                        return false;
-                    }
-                } else if (topic != null && !topic.isEmpty() && key.endsWith("@iot.navigationLink")) {
-                    String version = topic.substring(0, topic.indexOf("/"));
-
-                    String selfLink1 = obj1.getString("@iot.selfLink");
-                    URI baseUri1 = URI.create(selfLink1.substring(0, selfLink1.indexOf(version))).resolve(topic);
-                    String navLink1 = obj1.getString(key);
-                    String absoluteUri1 = baseUri1.resolve(navLink1).toString();
-
-                    String selfLink2 = obj2.getString("@iot.selfLink");
-                    URI baseUri2 = URI.create(selfLink2.substring(0, selfLink2.indexOf(version))).resolve(topic);
-                    String navLink2 = obj2.getString(key);
-                    String absoluteUri2 = baseUri2.resolve(navLink2).toString();
-                    if (!absoluteUri1.equals(absoluteUri2)) {
-                        return false;
-                    }
-
-                } else if (!val1.equals(obj2.get(key))) {
-                    return false;
-                }
-            } catch (JSONException ex) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static boolean checkTimeEquals(String val1, String val2) {
-        if (val1.equals(val2)) {
-            return true;
-        }
-
-        try {
-            DateTime dateTime1 = DateTime.parse(val1);
-            DateTime dateTime2 = DateTime.parse(val2);
-            return dateTime1.isEqual(dateTime2);
-        } catch (Exception ex) {
-            // do nothing
-        }
-        try {
-            Interval interval1 = Interval.parse(val1);
-            Interval interval2 = Interval.parse(val2);
-            return interval1.isEqual(interval2);
-        } catch (Exception ex) {
-            Assert.fail("time properies could neither be parsed as time nor as interval");
-        }
-
-        return false;
+        new JsonComparator(topic).assertJsonEquals(expected, received, "Received entity does not match the expected entity for topic " + topic + ".");
     }
 
     private class BFSStructure {
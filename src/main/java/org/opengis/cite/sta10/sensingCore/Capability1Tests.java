@@ -9,8 +9,8 @@ import java.util.Set;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.SuiteAttribute;
-import org.opengis.cite.sta10.SuiteFixtureListener;
 import org.opengis.cite.sta10.util.ControlInformation;
 import org.opengis.cite.sta10.util.EntityType;
 import org.opengis.cite.sta10.util.Extension;
@@ -21,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.ISuite;
 import org.testng.ITestContext;
+import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
@@ -37,6 +38,10 @@ public class Capability1Tests {
      * The root URL of the SensorThings service under the test
      */
     public String rootUri;//="http://localhost:8080/OGCSensorThings/v1.0";
+    /**
+     * The service under test, as seen at the start of the suite.
+     */
+    private ServiceDescriptor descriptor;
     /**
      * The variable that defines to which recursive level the resource path
      * should be tested
@@ -64,29 +69,24 @@ public class Capability1Tests {
                     "Conformance level 1 will not be checked since ics = " + level);
         }
 
-        rootUri = suite.getAttribute(SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
-        hasMultiDatastream = suite.getXmlSuite().getParameter(SuiteFixtureListener.KEY_HAS_MULTI_DATASTREAM) != null;
-        hasActuation = suite.getXmlSuite().getParameter(SuiteFixtureListener.KEY_HAS_ACTUATION) != null;
-        extensions.add(Extension.CORE);
-        if (hasMultiDatastream) {
-            extensions.add(Extension.MULTI_DATASTREAM);
-        }
-        if (hasActuation) {
-            extensions.add(Extension.ACTUATION);
-        }
-
-        for (EntityType entityType : EntityType.values()) {
-            if (!extensions.contains(entityType.getExtension())) {
-                continue;
-            }
-            enabledEntityTypes.add(entityType);
-        }
+        descriptor = ServiceDescriptor.fromSuite(suite);
+        rootUri = descriptor.getRootUri();
+        hasMultiDatastream = descriptor.hasExtension(Extension.MULTI_DATASTREAM);
+        hasActuation = descriptor.hasExtension(Extension.ACTUATION);
+        extensions.addAll(descriptor.getExtensions());
+        enabledEntityTypes.addAll(descriptor.getEnabledEntityTypes());
 
         TestEntityCreator.maybeCreateTestEntities(testContext);
+        // This class only reads, the entities do not change until it is done.
+        HTTPMethods.getMemo().beginEpoch(getClass().getSimpleName());
+    }
+
+    /**
+     * Ends the memo epoch started for this class.
+     */
+    @AfterClass
+    public void endMemoEpoch() {
+        HTTPMethods.getMemo().endEpoch();
     }
 
     /**
@@ -222,9 +222,12 @@ public class Capability1Tests {
      */
     @Test(description = "Check Resource Path", groups = "level-1")
     public void checkResourcePaths() {
+        // The paths of each entity type are crawled independently.
+        List<Runnable> crawlers = new ArrayList<>();
         for (EntityType entityType : enabledEntityTypes) {
-            readRelatedEntityOfEntityWithEntityType(entityType);
+            crawlers.add(() -> readRelatedEntityOfEntityWithEntityType(entityType));
         }
+        HTTPMethods.getLimiter().runAll(crawlers);
     }
 
     /**
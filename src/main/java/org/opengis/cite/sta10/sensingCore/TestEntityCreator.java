@@ -1,16 +1,16 @@
 package org.opengis.cite.sta10.sensingCore;
 
+import java.util.Arrays;
 import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.opengis.cite.sta10.SuiteAttribute;
-import static org.opengis.cite.sta10.SuiteFixtureListener.KEY_HAS_ACTUATION;
+import org.opengis.cite.sta10.ServiceDescriptor;
 import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.Extension;
 import org.opengis.cite.sta10.util.HTTPMethods;
 import org.opengis.cite.sta10.util.ServiceURLBuilder;
 import org.testng.Assert;
-import org.testng.ISuite;
 import org.testng.ITestContext;
 
 /**
@@ -19,26 +19,21 @@ import org.testng.ITestContext;
 public class TestEntityCreator {
 
     public static void maybeCreateTestEntities(ITestContext testContext) {
-        String rootUri;
-        rootUri = testContext.getSuite().getAttribute(
-                SuiteAttribute.TEST_SUBJECT.getName()).toString();
-        rootUri = rootUri.trim();
-        if (rootUri.lastIndexOf('/') == rootUri.length() - 1) {
-            rootUri = rootUri.substring(0, rootUri.length() - 1);
-        }
+        ServiceDescriptor descriptor = ServiceDescriptor.fromContext(testContext);
+        String rootUri = descriptor.getRootUri();
 
         // Check if there is data to test on. We check Observation and
         // HistoricalLocation, since if those exist, all other entities should
         // also exist.
-        String responseObservations = getEntities(rootUri, EntityType.OBSERVATION);
-        String responseHistLocations = getEntities(rootUri, EntityType.HISTORICAL_LOCATION);
-        int countObservations = countEntitiesInResponse(responseObservations);
-        int countHistLocations = countEntitiesInResponse(responseHistLocations);
+        String[] responses = new String[2];
+        HTTPMethods.getLimiter().runAll(Arrays.<Runnable>asList(
+                () -> responses[0] = getEntities(rootUri, EntityType.OBSERVATION),
+                () -> responses[1] = getEntities(rootUri, EntityType.HISTORICAL_LOCATION)));
+        int countObservations = countEntitiesInResponse(responses[0]);
+        int countHistLocations = countEntitiesInResponse(responses[1]);
         if (countHistLocations == 0 || countObservations == 0) {
             // No data found, insert test data.
-            ISuite suite = testContext.getSuite();
-            boolean hasActuation = Boolean.TRUE.toString().equals(suite.getXmlSuite().getParameter(KEY_HAS_ACTUATION));
-            createTestEntities(rootUri, hasActuation);
+            createTestEntities(rootUri, descriptor.hasExtension(Extension.ACTUATION));
         }
     }
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import java.util.List;
+import static org.opengis.cite.sta10.util.Utils.quoteIdForJson;
+
+/**
+ * The entities the benchmarks create their Observations in: one
+ * ObservedProperty, Sensor and FeatureOfInterest, shared by any number of
+ * Datastreams that each have their own Thing. Also builds the bodies of the
+ * Observations the benchmarks send. The results of those Observations are
+ * whole numbers, so a notification can be traced back to the Observation it
+ * is about.
+ *
+ * @author scf
+ */
+public class BenchmarkFixture {
+
+    /**
+     * The phenomenonTime of Observations that do not need a specific time.
+     */
+    public static final String PHENOMENON_TIME = "2015-03-01T00:00:00Z";
+
+    private final EntityHelper entityHelper;
+    private final Object observedPropertyId;
+    private final Object sensorId;
+    private final Object featureOfInterestId;
+
+    /**
+     * Creates the shared ObservedProperty, Sensor and FeatureOfInterest.
+     *
+     * @param entityHelper The helper to create the entities with.
+     */
+    public BenchmarkFixture(EntityHelper entityHelper) {
+        this.entityHelper = entityHelper;
+        this.observedPropertyId = entityHelper.createObservedProperty();
+        this.sensorId = entityHelper.createSensor();
+        this.featureOfInterestId = entityHelper.createFeatureOfInterest();
+    }
+
+    /**
+     * Creates one Datastream, with its own Thing.
+     *
+     * @return The id of the Datastream.
+     */
+    public Object createDatastream() {
+        return createDatastreams(1).get(0);
+    }
+
+    /**
+     * Creates Datastreams, each with its own Thing.
+     *
+     * @param count The number of Datastreams to create.
+     * @return The ids of the Datastreams.
+     */
+    public List<Object> createDatastreams(int count) {
+        return entityHelper.createDatastreamsWithThings(count, observedPropertyId, sensorId);
+    }
+
+    /**
+     * @return The id of the shared FeatureOfInterest.
+     */
+    public Object getFeatureOfInterestId() {
+        return featureOfInterestId;
+    }
+
+    /**
+     * Builds the body of an Observation of the shared FeatureOfInterest.
+     *
+     * @param datastreamId The id of the Datastream.
+     * @param result       The result.
+     * @return The JSON body.
+     */
+    public String observationJson(Object datastreamId, long result) {
+        return observationJson(datastreamId, PHENOMENON_TIME, result);
+    }
+
+    /**
+     * Builds the body of an Observation of the shared FeatureOfInterest.
+     *
+     * @param datastreamId   The id of the Datastream, or null to leave it
+     *                       out, when it follows from the topic or URL.
+     * @param phenomenonTime The phenomenonTime.
+     * @param result         The result.
+     * @return The JSON body.
+     */
+    public String observationJson(Object datastreamId, String phenomenonTime, long result) {
+        StringBuilder body = new StringBuilder("{\"phenomenonTime\": \"").append(phenomenonTime)
+                .append("\", \"result\": ").append(result);
+        if (datastreamId != null) {
+            body.append(", \"Datastream\": {\"@iot.id\": ").append(quoteIdForJson(datastreamId)).append('}');
+        }
+        return body.append(", \"FeatureOfInterest\": {\"@iot.id\": ").append(quoteIdForJson(featureOfInterestId)).append("}}")
+                .toString();
+    }
+}
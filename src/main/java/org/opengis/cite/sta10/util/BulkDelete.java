@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.StatusCodeException;
+import de.fraunhofer.iosb.ilt.sta.dao.BaseDao;
+import de.fraunhofer.iosb.ilt.sta.model.Entity;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes entire collections, or the part of a collection matching a filter,
+ * with one DELETE request, for services that support delete by filter.
+ * Deleting a whole collection and deleting with a $filter are tracked
+ * separately, since a service may support the first but not the second. Once
+ * the service answers that a kind of delete is not supported, later calls of
+ * that kind return false right away and the caller deletes entity by entity.
+ * Other failures only fail the attempt itself.
+ *
+ * The time spent on both kinds of deletes is recorded, so the log shows what
+ * deleting by filter saves compared to deleting individually.
+ *
+ * @author scf
+ */
+public class BulkDelete {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDelete.class);
+
+    /**
+     * The response codes that mean the service does not support the delete.
+     */
+    private static final Set<Integer> UNSUPPORTED_CODES = new HashSet<>(Arrays.asList(400, 404, 405, 501));
+
+    /**
+     * Whether the service supports deleting a whole collection, null if not
+     * known yet.
+     */
+    private Boolean unfilteredSupported;
+    /**
+     * Whether the service supports deleting with a $filter, null if not known
+     * yet.
+     */
+    private Boolean filteredSupported;
+    private long bulkRequests = 0;
+    private long bulkNanos = 0;
+    private long individualEntities = 0;
+    private long individualNanos = 0;
+
+    /**
+     * @param filtered Whether the delete has a $filter.
+     * @return false if the service is known not to support the delete.
+     */
+    public synchronized boolean isSupported(boolean filtered) {
+        return !Boolean.FALSE.equals(filtered ? filteredSupported : unfilteredSupported);
+    }
+
+    /**
+     * Deletes all entities in the given collection with one request.
+     *
+     * @param collectionUrl The URL of the collection, optionally with a
+     *                      $filter.
+     * @return true if the service accepted the delete, false if the caller
+     * has to delete the entities individually.
+     */
+    public boolean deleteCollection(String collectionUrl) {
+        boolean filtered = collectionUrl.contains("$filter");
+        if (!isSupported(filtered)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        Map<String, Object> responseMap = HTTPMethods.doDelete(collectionUrl);
+        int responseCode = responseMap == null ? -1 : Integer.parseInt(responseMap.get("response-code").toString());
+        return recordAttempt(collectionUrl, filtered, responseCode, System.nanoTime() - start);
+    }
+
+    /**
+     * Deletes all entities the given dao can reach, that match the given
+     * filter, with one request.
+     *
+     * @param <T>    The entity type of the dao.
+     * @param doa    The dao of the collection.
+     * @param filter The filter, or null to delete all.
+     * @return true if the service accepted the delete, false if the caller
+     * has to delete the entities individually.
+     */
+    public <T extends Entity<T>> boolean deleteCollection(BaseDao<T> doa, String filter) {
+        boolean filtered = filter != null;
+        if (!isSupported(filtered)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        int responseCode;
+        try {
+            if (filter == null) {
+                doa.query().delete();
+            } else {
+                doa.query().filter(filter).delete();
+            }
+            responseCode = 200;
+        } catch (StatusCodeException ex) {
+            LOGGER.debug("Delete by filter failed: {}", ex.getMessage());
+            responseCode = ex.getStatusCode();
+        } catch (ServiceFailureException ex) {
+            LOGGER.debug("Delete by filter failed: {}", ex.getMessage());
+            responseCode = -1;
+        }
+        String target = doa.getClass().getSimpleName() + (filter == null ? "" : " " + filter);
+        return recordAttempt(target, filtered, responseCode, System.nanoTime() - start);
+    }
+
+    private synchronized boolean recordAttempt(String target, boolean filtered, int responseCode, long nanos) {
+        if (responseCode < 200 || responseCode >= 300) {
+            if (!UNSUPPORTED_CODES.contains(responseCode)) {
+                LOGGER.info("Deleting {} by filter failed with response code {}, deleting entities individually.", target, responseCode);
+            } else if (filtered) {
+                if (filteredSupported == null) {
+                    LOGGER.info("Service does not support delete with $filter, deleting entities individually.");
+                }
+                filteredSupported = false;
+            } else {
+                if (unfilteredSupported == null) {
+                    LOGGER.info("Service does not support deleting whole collections, deleting entities individually.");
+                }
+                unfilteredSupported = false;
+            }
+            return false;
+        }
+        if (filtered) {
+            filteredSupported = true;
+        } else {
+            unfilteredSupported = true;
+        }
+        bulkRequests++;
+        bulkNanos += nanos;
+        if (individualEntities > 0) {
+            LOGGER.info("Deleted {} by filter in {} ms, individual deletes took {} ms per entity.",
+                    target, TimeUnit.NANOSECONDS.toMillis(nanos), individualNanos / individualEntities / 1000000.0);
+        } else {
+            LOGGER.info("Deleted {} by filter in {} ms.", target, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        return true;
+    }
+
+    /**
+     * Records entities that were deleted one by one, for comparison.
+     *
+     * @param count The number of entities deleted.
+     * @param nanos The time it took, in nanoseconds.
+     */
+    public synchronized void recordIndividual(int count, long nanos) {
+        individualEntities += count;
+        individualNanos += nanos;
+    }
+
+    /**
+     * @return A one-line summary comparing both kinds of deletes.
+     */
+    public synchronized String getStatistics() {
+        StringBuilder sb = new StringBuilder("Delete: ");
+        if (bulkRequests > 0) {
+            sb.append(bulkRequests).append(" by filter in ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(bulkNanos)).append(" ms");
+        } else {
+            sb.append("none by filter");
+        }
+        sb.append(" (collections ").append(describe(unfilteredSupported))
+                .append(", with $filter ").append(describe(filteredSupported)).append(')');
+        sb.append(", ").append(individualEntities).append(" individually in ")
+                .append(TimeUnit.NANOSECONDS.toMillis(individualNanos)).append(" ms");
+        if (individualEntities > 0) {
+            sb.append(" (").append(individualNanos / individualEntities / 1000000.0).append(" ms per entity)");
+        }
+        return sb.append('.').toString();
+    }
+
+    private static String describe(Boolean supported) {
+        if (supported == null) {
+            return "not tried";
+        }
+        return supported ? "supported" : "not supported";
+    }
+}
@@ -15,8 +15,12 @@
  */
 package org.opengis.cite.sta10.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -24,6 +28,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.opengis.cite.sta10.receiveUpdatesViaMQTT.DeepInsertInfo;
+import org.opengis.cite.sta10.util.http.BatchTransport;
 import static org.opengis.cite.sta10.util.Utils.quoteIdForJson;
 import org.testng.Assert;
 
@@ -35,6 +40,7 @@ public class EntityHelper {
 
     private final String rootUri;
     private Map<EntityType, Object> latestEntities = new HashMap<>();
+    private final NavigationLinkCache navigationCache = new NavigationLinkCache();
 
     public EntityHelper(String rootUri) {
         this.rootUri = rootUri;
@@ -55,6 +61,7 @@ public class EntityHelper {
     }
 
     public void deleteEverything() {
+        navigationCache.clear();
         deleteEntityType(EntityType.OBSERVATION);
         deleteEntityType(EntityType.FEATURE_OF_INTEREST);
         deleteEntityType(EntityType.DATASTREAM);
@@ -71,6 +78,11 @@ public class EntityHelper {
      * @param entityType The entity type from EntityType enum
      */
     public void deleteEntityType(EntityType entityType) {
+        // Whatever the bulk delete left over is deleted individually below.
+        if (EntityUtils.getBulkDelete().deleteCollection(ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, null))) {
+            // Deletes cascade, so cached entities of other types may be gone too.
+            navigationCache.clear();
+        }
         JSONArray array = null;
         do {
             try {
@@ -79,9 +91,22 @@ public class EntityHelper {
                 int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
                 JSONObject result = new JSONObject(responseMap.get("response").toString());
                 array = result.getJSONArray("value");
+                List<Object> ids = new ArrayList<>(array.length());
                 for (int i = 0; i < array.length(); i++) {
-                    Object id = array.getJSONObject(i).get(ControlInformation.ID);
-                    deleteEntity(entityType, id);
+                    ids.add(array.getJSONObject(i).get(ControlInformation.ID));
+                }
+                long start = System.nanoTime();
+                if (HTTPMethods.getBatch().isSupported()) {
+                    deleteEntities(entityType, ids);
+                } else {
+                    List<Runnable> deletes = new ArrayList<>(ids.size());
+                    for (Object id : ids) {
+                        deletes.add(() -> deleteEntity(entityType, id));
+                    }
+                    HTTPMethods.getLimiter().runAll(deletes);
+                }
+                if (!ids.isEmpty()) {
+                    EntityUtils.getBulkDelete().recordIndividual(ids.size(), System.nanoTime() - start);
                 }
             } catch (JSONException e) {
                 e.printStackTrace();
@@ -153,6 +178,40 @@ public class EntityHelper {
         return -1l;
     }
 
+    /**
+     * Creates the given number of Datastreams, each with its own new Thing,
+     * sharing the given ObservedProperty and Sensor. The Datastreams are
+     * created in batches if the service supports them.
+     *
+     * @param count              The number of Datastreams to create.
+     * @param observedPropertyId The id of the ObservedProperty to use.
+     * @param sensorId           The id of the Sensor to use.
+     * @return The ids of the created Datastreams.
+     */
+    public List<Object> createDatastreamsWithThings(int count, Object observedPropertyId, Object sensorId) {
+        String urlString = ServiceURLBuilder.buildURLString(rootUri, EntityType.DATASTREAM, null, null, null);
+        List<BatchTransport.Call> calls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String body = "{\n"
+                    + "  \"unitOfMeasurement\": {\"name\": \"Celsius\", \"symbol\": \"degC\", \"definition\": \"http://qudt.org/vocab/unit#DegreeCelsius\"},\n"
+                    + "  \"name\": \"device datastream " + i + "\",\n"
+                    + "  \"description\": \"test datastream.\",\n"
+                    + "  \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
+                    + "  \"Thing\": {\"name\": \"device " + i + "\", \"description\": \"test thing.\"},\n"
+                    + "  \"ObservedProperty\": {\"@iot.id\": " + quoteIdForJson(observedPropertyId) + "},\n"
+                    + "  \"Sensor\": {\"@iot.id\": " + quoteIdForJson(sensorId) + "}\n"
+                    + "}";
+            calls.add(BatchTransport.Call.post(urlString, body));
+        }
+        HTTPMethods.getBatch().execute(calls);
+        List<Object> ids = new ArrayList<>(count);
+        for (BatchTransport.Call call : calls) {
+            Assert.assertEquals(call.getResponseCode(), 201, "Error during creation of Datastream with Thing.");
+            ids.add(Utils.idObjectFromPostResult(call.getResponse().get("response").toString()));
+        }
+        return ids;
+    }
+
     public Object createFeatureOfInterest() {
         try {
             String urlParameters = "{\n"
@@ -207,16 +266,48 @@ public class EntityHelper {
         return -1;
     }
 
+    /**
+     * The body used by {@link #createObservation(Object, Object)}.
+     *
+     * @param datastreamId       The id of the Datastream.
+     * @param featureOfInterstId The id of the FeatureOfInterest.
+     * @return The JSON body of the Observation.
+     */
+    public static String observationJson(Object datastreamId, Object featureOfInterstId) {
+        return "{\n"
+                + "  \"phenomenonTime\": \"2015-03-01T00:40:00.000Z\",\n"
+                + "  \"validTime\": \"2016-01-01T02:01:01+01:00/2016-01-02T00:59:59+01:00\",\n"
+                + "  \"result\": 8,\n"
+                + "  \"parameters\":{\"param1\": \"some value1\", \"param2\": \"some value2\"},\n"
+                + "  \"Datastream\":{\"@iot.id\": " + quoteIdForJson(datastreamId) + "},\n"
+                + "  \"FeatureOfInterest\": {\"@iot.id\": " + quoteIdForJson(featureOfInterstId) + "}  \n"
+                + "}";
+    }
+
     public Object createObservation(Object datastreamId, Object featureOfInterstId) {
         try {
-            String urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-01T00:40:00.000Z\",\n"
-                    + "  \"validTime\": \"2016-01-01T02:01:01+01:00/2016-01-02T00:59:59+01:00\",\n"
-                    + "  \"result\": 8,\n"
-                    + "  \"parameters\":{\"param1\": \"some value1\", \"param2\": \"some value2\"},\n"
-                    + "  \"Datastream\":{\"@iot.id\": " + quoteIdForJson(datastreamId) + "},\n"
-                    + "  \"FeatureOfInterest\": {\"@iot.id\": " + quoteIdForJson(featureOfInterstId) + "}  \n"
-                    + "}";
+            JSONObject entity = postEntity(EntityType.OBSERVATION, observationJson(datastreamId, featureOfInterstId));
+            return entity.get(ControlInformation.ID);
+        } catch (JSONException e) {
+            Assert.fail("An Exception occurred during testing!:\n" + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Creates an Observation with the given phenomenonTime and result.
+     *
+     * @param datastreamId        The id of the Datastream.
+     * @param featureOfInterestId The id of the FeatureOfInterest.
+     * @param phenomenonTime      The phenomenonTime.
+     * @param result              The result.
+     * @return The id of the Observation.
+     */
+    public Object createObservation(Object datastreamId, Object featureOfInterestId, String phenomenonTime, long result) {
+        String urlParameters = "{\"phenomenonTime\": \"" + phenomenonTime + "\", \"result\": " + result + ","
+                + " \"Datastream\": {\"@iot.id\": " + quoteIdForJson(datastreamId) + "},"
+                + " \"FeatureOfInterest\": {\"@iot.id\": " + quoteIdForJson(featureOfInterestId) + "}}";
+        try {
             JSONObject entity = postEntity(EntityType.OBSERVATION, urlParameters);
             return entity.get(ControlInformation.ID);
         } catch (JSONException e) {
@@ -225,26 +316,35 @@ public class EntityHelper {
         return -1;
     }
 
+    /**
+     * The body used by {@link #createObservationWithDeepInsert(Object)}.
+     *
+     * @param datastreamId The id of the Datastream.
+     * @return The JSON body of the Observation, with a new FeatureOfInterest.
+     */
+    public static String observationWithDeepInsertJson(Object datastreamId) {
+        return "{\n"
+                + "  \"phenomenonTime\": \"2015-03-01T00:00:00Z\",\n"
+                + "  \"result\": 100,\n"
+                + "  \"FeatureOfInterest\": {\n"
+                + "  \t\"name\": \"A weather station.\",\n"
+                + "  \t\"description\": \"A weather station.\",\n"
+                + "  \t\"encodingType\": \"application/vnd.geo+json\",\n"
+                + "    \"feature\": {\n"
+                + "      \"type\": \"Point\",\n"
+                + "      \"coordinates\": [\n"
+                + "        -114.05,\n"
+                + "        51.05\n"
+                + "      ]\n"
+                + "    }\n"
+                + "  },\n"
+                + "  \"Datastream\":{\"@iot.id\": " + quoteIdForJson(datastreamId) + "}\n"
+                + "}";
+    }
+
     public Object createObservationWithDeepInsert(Object datastreamId) {
         try {
-            String urlParameters = "{\n"
-                    + "  \"phenomenonTime\": \"2015-03-01T00:00:00Z\",\n"
-                    + "  \"result\": 100,\n"
-                    + "  \"FeatureOfInterest\": {\n"
-                    + "  \t\"name\": \"A weather station.\",\n"
-                    + "  \t\"description\": \"A weather station.\",\n"
-                    + "  \t\"encodingType\": \"application/vnd.geo+json\",\n"
-                    + "    \"feature\": {\n"
-                    + "      \"type\": \"Point\",\n"
-                    + "      \"coordinates\": [\n"
-                    + "        -114.05,\n"
-                    + "        51.05\n"
-                    + "      ]\n"
-                    + "    }\n"
-                    + "  },\n"
-                    + "  \"Datastream\":{\"@iot.id\": " + quoteIdForJson(datastreamId) + "}\n"
-                    + "}";
-            JSONObject entity = postEntity(EntityType.OBSERVATION, urlParameters);
+            JSONObject entity = postEntity(EntityType.OBSERVATION, observationWithDeepInsertJson(datastreamId));
             return entity.get(ControlInformation.ID);
         } catch (JSONException ex) {
             Assert.fail("An Exception occurred during testing!", ex);
@@ -348,6 +448,7 @@ public class EntityHelper {
     public void deleteEntity(EntityType entityType, Object id) {
         String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, null, null);
         Map<String, Object> responseMap = HTTPMethods.doDelete(urlString);
+        navigationCache.remove(entityType, id);
         int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
         Assert.assertEquals(responseCode, 200, "DELETE does not work properly for " + entityType + " with id " + id + ". Returned with response code " + responseCode + ".");
 
@@ -356,6 +457,34 @@ public class EntityHelper {
         Assert.assertEquals(responseCode, 404, "Deleted entity was not actually deleted : " + entityType + "(" + id + ").");
     }
 
+    /**
+     * Deletes the given entities with one change set, and checks they are
+     * gone with one batch of reads.
+     *
+     * @param entityType The type of the entities to delete.
+     * @param ids        The ids of the entities to delete.
+     */
+    public void deleteEntities(EntityType entityType, List<Object> ids) {
+        List<BatchTransport.Call> deletes = new ArrayList<>(ids.size());
+        List<BatchTransport.Call> checks = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, null, null);
+            deletes.add(BatchTransport.Call.delete(urlString));
+            checks.add(BatchTransport.Call.get(urlString));
+            navigationCache.remove(entityType, id);
+        }
+        HTTPMethods.getBatch().execute(deletes);
+        for (int i = 0; i < ids.size(); i++) {
+            int responseCode = deletes.get(i).getResponseCode();
+            Assert.assertEquals(responseCode, 200, "DELETE does not work properly for " + entityType + " with id " + ids.get(i) + ". Returned with response code " + responseCode + ".");
+        }
+        HTTPMethods.getBatch().execute(checks);
+        for (int i = 0; i < ids.size(); i++) {
+            int responseCode = checks.get(i).getResponseCode();
+            Assert.assertEquals(responseCode, 404, "Deleted entity was not actually deleted : " + entityType + "(" + ids.get(i) + ").");
+        }
+    }
+
     public DeepInsertInfo getDeepInsertInfo(EntityType entityType) {
         DeepInsertInfo result = new DeepInsertInfo(entityType);
         switch (entityType) {
@@ -405,6 +534,153 @@ public class EntityHelper {
         }
     }
 
+    /**
+     * Resolves a navigation path, like "v1.0/Observations(1)/Datastream/Thing",
+     * to the entity it points to, using the navigation link cache.
+     *
+     * @param relativeUrl The path to resolve, relative to the service root.
+     * @return The entity the path points to.
+     */
+    public JSONObject resolveRelated(String relativeUrl) {
+        return resolveRelated(Collections.singletonList(relativeUrl)).get(relativeUrl);
+    }
+
+    /**
+     * Resolves several navigation paths, like
+     * "v1.0/Observations(1)/Datastream/Thing", to the entities they point to.
+     * Paths that are not in the navigation link cache are grouped by the
+     * entity they start at, and resolved with one $expand request per
+     * starting entity. Paths that do not point to a single entity are fetched
+     * directly, without caching.
+     *
+     * @param relativeUrls The paths to resolve, relative to the service root.
+     * @return The entities the paths point to, by path.
+     */
+    public Map<String, JSONObject> resolveRelated(Collection<String> relativeUrls) {
+        Map<String, JSONObject> result = new HashMap<>();
+        Map<String, List<String>> missesByParent = new LinkedHashMap<>();
+        for (String path : relativeUrls) {
+            JSONObject cached = navigationCache.get(path);
+            if (cached != null) {
+                result.put(path, cached);
+                continue;
+            }
+            int parentEnd = findParentEnd(path);
+            if (parentEnd < 0) {
+                result.put(path, getEntity(path));
+                continue;
+            }
+            missesByParent.computeIfAbsent(path.substring(0, parentEnd), k -> new ArrayList<>()).add(path);
+        }
+        for (Map.Entry<String, List<String>> entry : missesByParent.entrySet()) {
+            resolveWithExpand(entry.getKey(), entry.getValue(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the end of the entity a path starts at, if all further segments
+     * are navigation properties to single entities.
+     *
+     * @param path The path to check.
+     * @return The index of the end of the starting entity, or -1 if the path
+     * can not be resolved with $expand.
+     */
+    private static int findParentEnd(String path) {
+        if (path.contains("?")) {
+            return -1;
+        }
+        int parentEnd = path.indexOf(")/");
+        if (parentEnd < 0) {
+            return -1;
+        }
+        parentEnd++;
+        for (String segment : path.substring(parentEnd + 1).split("/")) {
+            if (segment.contains("(") || EntityType.isPlural(segment)) {
+                return -1;
+            }
+            try {
+                EntityType.getForRelation(segment);
+            } catch (IllegalArgumentException ex) {
+                return -1;
+            }
+        }
+        return parentEnd;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resolveWithExpand(String parent, List<String> paths, Map<String, JSONObject> result) {
+        Map<String, Object> expandTree = new LinkedHashMap<>();
+        for (String path : paths) {
+            Map<String, Object> level = expandTree;
+            for (String segment : path.substring(parent.length() + 1).split("/")) {
+                level = (Map<String, Object>) level.computeIfAbsent(segment, k -> new LinkedHashMap<>());
+            }
+        }
+        JSONObject parentEntity = getEntity(parent + "?$expand=" + toExpandString(expandTree));
+        for (String path : paths) {
+            JSONObject entity = parentEntity;
+            EntityType entityType = null;
+            for (String segment : path.substring(parent.length() + 1).split("/")) {
+                entity = entity == null ? null : entity.optJSONObject(segment);
+                entityType = EntityType.getForRelation(segment);
+            }
+            if (entity == null || !hasLinks(entity, entityType)) {
+                // Not expanded as expected, fall back to a direct request.
+                result.put(path, getEntity(path));
+                continue;
+            }
+            JSONObject clean = new JSONObject(entity.toString());
+            for (String relation : entityType.getRelations()) {
+                clean.remove(relation);
+            }
+            navigationCache.put(path, entityType, clean);
+            result.put(path, clean);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toExpandString(Map<String, Object> expandTree) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : expandTree.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey());
+            Map<String, Object> sub = (Map<String, Object>) entry.getValue();
+            if (!sub.isEmpty()) {
+                sb.append("($expand=").append(toExpandString(sub)).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks if an expanded entity looks like the entity fetched directly,
+     * with a selfLink and navigation links.
+     */
+    private static boolean hasLinks(JSONObject entity, EntityType entityType) {
+        if (!entity.has("@iot.selfLink")) {
+            return false;
+        }
+        if (entityType.getRelations().isEmpty()) {
+            return true;
+        }
+        for (String key : entity.keySet()) {
+            if (key.endsWith("@iot.navigationLink")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The cache used by {@link #resolveRelated(java.util.Collection)}.
+     */
+    public NavigationLinkCache getNavigationCache() {
+        return navigationCache;
+    }
+
     public Object getLastestEntityId(EntityType entityType) {
         return latestEntities.get(entityType);
     }
@@ -454,11 +730,13 @@ public class EntityHelper {
         String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, null, null);
         try {
             Map<String, Object> responseMap = HTTPMethods.doPatch(urlString, new JSONObject(changes).toString());
+            navigationCache.update(entityType, id, null);
             int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
             Assert.assertEquals(responseCode, 200, "Error during updating(PATCH) of entity " + entityType.name());
 
             responseMap = HTTPMethods.doGet(urlString);
             JSONObject result = new JSONObject(responseMap.get("response").toString());
+            navigationCache.update(entityType, id, result);
             return result;
 
         } catch (JSONException e) {
@@ -476,10 +754,12 @@ public class EntityHelper {
                 entity.put(entry.getKey(), entry.getValue());
             }
             Map<String, Object> responseMap = HTTPMethods.doPut(urlString, entity.toString());
+            navigationCache.update(entityType, id, null);
             int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
             Assert.assertEquals(responseCode, 200, "Error during updating(PUT) of entity " + entityType.name() + ": " + responseMap.get("response"));
             responseMap = HTTPMethods.doGet(urlString);
             JSONObject result = new JSONObject(responseMap.get("response").toString());
+            navigationCache.update(entityType, id, result);
             return result;
 
         } catch (JSONException e) {
@@ -11,9 +11,11 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.util.perf.ValidationEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -27,6 +29,27 @@ public class EntityUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityUtils.class.getName());
 
+    /**
+     * Deletes collections with one request, if the service supports it.
+     */
+    private static BulkDelete bulkDelete = new BulkDelete();
+
+    /**
+     * @return The bulk delete used when cleaning the service.
+     */
+    public static BulkDelete getBulkDelete() {
+        return bulkDelete;
+    }
+
+    /**
+     * Sets the bulk delete used when cleaning the service.
+     *
+     * @param bulkDelete The bulk delete to use for all following cleanups.
+     */
+    public static void setBulkDelete(BulkDelete bulkDelete) {
+        EntityUtils.bulkDelete = bulkDelete;
+    }
+
     /**
      * Class returned by checks on results. Encapsulates the result of the
      * check, and the message.
@@ -96,9 +119,88 @@ public class EntityUtils {
         deleteAll(sts.observations());
     }
 
+    /**
+     * Deletes all entities, except the ones with the given ids. Used to clean
+     * up around entities of the {@link SharedDataset}.
+     *
+     * @param sts    The service to clean.
+     * @param keepIds The urls of the ids of the entities to keep.
+     * @throws ServiceFailureException if deleting fails.
+     */
+    public static void deleteAllExcept(SensorThingsService sts, Set<String> keepIds) throws ServiceFailureException {
+        deleteAll(sts.things());
+        deleteAll(sts.locations());
+        deleteAllExcept(sts.sensors(), keepIds);
+        deleteAll(sts.featuresOfInterest());
+        deleteAllExcept(sts.observedProperties(), keepIds);
+        deleteAll(sts.observations());
+    }
+
+    public static <T extends Entity<T>> void deleteAllExcept(BaseDao<T> doa, Set<String> keepIds) throws ServiceFailureException {
+        // Writes through the FROST-Client bypass HTTPMethods.
+        HTTPMethods.getMemo().invalidate();
+        // Anything the bulk delete left over is deleted individually below.
+        bulkDelete.deleteCollection(doa, keepFilter(keepIds));
+        boolean more = true;
+        int count = 0;
+        long start = System.nanoTime();
+        while (more) {
+            more = false;
+            EntityList<T> entities = doa.query().list();
+            for (T entity : entities) {
+                if (keepIds.contains(entity.getId().getUrl())) {
+                    continue;
+                }
+                doa.delete(entity);
+                count++;
+                more = true;
+            }
+        }
+        if (count > 0) {
+            bulkDelete.recordIndividual(count, System.nanoTime() - start);
+        }
+        LOGGER.info("Deleted {} using {}, kept {}.", count, doa.getClass().getName(), keepIds.size());
+    }
+
+    /**
+     * Creates a filter that matches all entities, except the ones with the
+     * given ids.
+     *
+     * @param keepIds The urls of the ids of the entities to keep.
+     * @return The filter, or null if no entities are kept.
+     */
+    private static String keepFilter(Set<String> keepIds) {
+        if (keepIds.isEmpty()) {
+            return null;
+        }
+        StringBuilder filter = new StringBuilder("not (");
+        boolean first = true;
+        for (String id : keepIds) {
+            if (!first) {
+                filter.append(" or ");
+            }
+            first = false;
+            filter.append("id eq ").append(id);
+        }
+        return filter.append(')').toString();
+    }
+
+    /**
+     * Deletes all entities of the given dao. Tries to delete the whole
+     * collection with one request first, then deletes whatever is left one
+     * by one.
+     *
+     * @param <T> The entity type of the dao.
+     * @param doa The dao to delete the entities of.
+     * @throws ServiceFailureException if deleting fails.
+     */
     public static <T extends Entity<T>> void deleteAll(BaseDao<T> doa) throws ServiceFailureException {
+        // Writes through the FROST-Client bypass HTTPMethods.
+        HTTPMethods.getMemo().invalidate();
+        bulkDelete.deleteCollection(doa, null);
         boolean more = true;
         int count = 0;
+        long start = System.nanoTime();
         while (more) {
             EntityList<T> entities = doa.query().list();
             if (entities.getCount() > 0) {
@@ -111,6 +213,9 @@ public class EntityUtils {
                 count++;
             }
         }
+        if (count > 0) {
+            bulkDelete.recordIndividual(count, System.nanoTime() - start);
+        }
         LOGGER.info("Deleted {} using {}.", count, doa.getClass().getName());
     }
 
@@ -159,6 +264,16 @@ public class EntityUtils {
      * @param entityCounts The object with the expected entity counts.
      */
     public static void checkResponse(JSONObject response, Request request, EntityCounts entityCounts) {
+        ValidationEvent event = new ValidationEvent();
+        event.begin();
+        try {
+            checkResponseContent(response, request, entityCounts);
+        } finally {
+            event.commit(request);
+        }
+    }
+
+    private static void checkResponseContent(JSONObject response, Request request, EntityCounts entityCounts) {
         try {
             if (request.isCollection()) {
                 checkCollection(response.getJSONArray("value"), request, entityCounts);
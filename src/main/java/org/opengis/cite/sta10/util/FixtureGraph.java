@@ -0,0 +1,543 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opengis.cite.sta10.util.http.BatchTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+
+/**
+ * Compiles a declared graph of entities into deep-insert POST requests, one
+ * for each root, and resolves the ids of all created entities with one
+ * $expand request for each type of root.
+ *
+ * Nodes are linked with the relations that the SensorThings API allows to be
+ * created inline. A node that is linked more than once is created inline the
+ * first time, and referenced by its id after that. If the reference is in a
+ * later root than the one that created the node, the earlier root is resolved
+ * before the later root is posted. A node can not be referenced from the same
+ * root that creates it, since its id is not known yet.
+ *
+ * Entities that the service generates, like HistoricalLocations and
+ * FeaturesOfInterest, can be added to the resolve request with
+ * {@link #expandGenerated(EntityType, String)} and read from
+ * {@link Node#getExpanded()}.
+ *
+ * The resolve request uses $filter on the id and nested $expand. If the
+ * service does not handle that request, the roots and their relations are
+ * read again with plain navigation requests, one for each entity and
+ * relation.
+ *
+ * @author scf
+ */
+public class FixtureGraph {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FixtureGraph.class);
+
+    /**
+     * The relations that can be created inline, for each entity type.
+     */
+    private static final Map<EntityType, Set<String>> INLINE_RELATIONS = new EnumMap<>(EntityType.class);
+
+    static {
+        addInline(EntityType.THING, EntityType.LOCATION.plural, EntityType.DATASTREAM.plural);
+        addInline(EntityType.LOCATION, EntityType.THING.plural);
+        addInline(EntityType.DATASTREAM, EntityType.THING.singular, EntityType.SENSOR.singular, EntityType.OBSERVED_PROPERTY.singular, EntityType.OBSERVATION.plural);
+        addInline(EntityType.SENSOR, EntityType.DATASTREAM.plural);
+        addInline(EntityType.OBSERVED_PROPERTY, EntityType.DATASTREAM.plural);
+        addInline(EntityType.OBSERVATION, EntityType.DATASTREAM.singular, EntityType.FEATURE_OF_INTEREST.singular);
+        addInline(EntityType.FEATURE_OF_INTEREST, EntityType.OBSERVATION.plural);
+    }
+
+    private static void addInline(EntityType entityType, String... relations) {
+        INLINE_RELATIONS.put(entityType, new HashSet<>(Arrays.asList(relations)));
+    }
+
+    /**
+     * One entity in the graph.
+     */
+    public static class Node {
+
+        private final EntityType entityType;
+        private final JSONObject properties;
+        private final Map<String, List<Node>> links = new LinkedHashMap<>();
+        private String key;
+        private Node owner;
+        private Object id;
+        private JSONObject expanded;
+
+        private Node(EntityType entityType, JSONObject properties) {
+            this.entityType = entityType;
+            this.properties = properties;
+            if (entityType == EntityType.OBSERVATION) {
+                key = "phenomenonTime";
+            } else {
+                key = "name";
+            }
+        }
+
+        /**
+         * Links the given node to this node, using the relation that fits the
+         * type of the given node.
+         *
+         * @param target The node to link.
+         * @return this.
+         */
+        public Node link(Node target) {
+            Set<String> allowed = INLINE_RELATIONS.get(entityType);
+            String relation = null;
+            if (allowed != null && allowed.contains(target.entityType.plural)) {
+                relation = target.entityType.plural;
+            } else if (allowed != null && allowed.contains(target.entityType.singular)) {
+                relation = target.entityType.singular;
+                if (links.containsKey(relation)) {
+                    Assert.fail(entityType + " can only have one " + relation + ".");
+                }
+            } else {
+                Assert.fail("A " + target.entityType + " can not be created inline in a " + entityType + ".");
+            }
+            links.computeIfAbsent(relation, k -> new ArrayList<>()).add(target);
+            return this;
+        }
+
+        /**
+         * Sets the property that identifies this node among its siblings in
+         * the resolve response. Defaults to name, or phenomenonTime for
+         * Observations.
+         *
+         * @param key The name of the property.
+         * @return this.
+         */
+        public Node key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        /**
+         * @return The id of the created entity, null until resolved.
+         */
+        public Object getId() {
+            return id;
+        }
+
+        /**
+         * @return The entity as it was returned by the last resolve request,
+         * including the generated entities that were expanded.
+         */
+        public JSONObject getExpanded() {
+            return expanded;
+        }
+
+        @Override
+        public String toString() {
+            return entityType + "[" + key + "=" + properties.opt(key) + "]";
+        }
+    }
+
+    private final String rootUri;
+    private final List<Node> roots = new ArrayList<>();
+    private final Map<EntityType, Set<String>> generated = new EnumMap<>(EntityType.class);
+    private int posts = 0;
+    private int reads = 0;
+
+    /**
+     * Creates a new, empty graph.
+     *
+     * @param rootUri The root URL of the service to create the entities in.
+     */
+    public FixtureGraph(String rootUri) {
+        this.rootUri = rootUri;
+    }
+
+    /**
+     * Declares a new node that will be posted in its own deep-insert request.
+     *
+     * @param entityType The type of the entity.
+     * @param json       The properties of the entity.
+     * @return The new node.
+     */
+    public Node root(EntityType entityType, String json) {
+        Node root = node(entityType, json);
+        roots.add(root);
+        return root;
+    }
+
+    /**
+     * Declares a new node that is created inline in the root it is linked
+     * to.
+     *
+     * @param entityType The type of the entity.
+     * @param json       The properties of the entity.
+     * @return The new node.
+     */
+    public Node node(EntityType entityType, String json) {
+        try {
+            return new Node(entityType, new JSONObject(json));
+        } catch (JSONException ex) {
+            Assert.fail("Invalid fixture JSON for " + entityType + ": " + json, ex);
+        }
+        return null;
+    }
+
+    /**
+     * Declares a node for an entity that already exists on the service.
+     *
+     * @param entityType The type of the entity.
+     * @param id         The id of the entity.
+     * @return The new node.
+     */
+    public Node existing(EntityType entityType, Object id) {
+        Node node = new Node(entityType, new JSONObject());
+        node.id = id;
+        return node;
+    }
+
+    /**
+     * Adds a relation that the service fills itself to the resolve request,
+     * for all entities of the given type.
+     *
+     * @param entityType The type of the entities to expand the relation on.
+     * @param relation   The relation to expand.
+     * @return this.
+     */
+    public FixtureGraph expandGenerated(EntityType entityType, String relation) {
+        generated.computeIfAbsent(entityType, k -> new LinkedHashSet<>()).add(relation);
+        return this;
+    }
+
+    /**
+     * Posts one deep-insert request for each root, and resolves the ids of
+     * all nodes.
+     */
+    public void create() {
+        for (Node root : roots) {
+            JSONObject body = compile(root, root);
+            String urlString = ServiceURLBuilder.buildURLString(rootUri, root.entityType, null, null, null);
+            Map<String, Object> responseMap = HTTPMethods.doPost(urlString, body.toString());
+            posts++;
+            int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
+            Assert.assertEquals(responseCode, 201, "Deep insert of " + root + " failed: " + responseMap.get("response"));
+            root.id = Utils.idObjectFromPostResult(responseMap.get("response").toString());
+        }
+        resolve();
+        LOGGER.debug("Created fixture with {} roots in {} posts and {} reads.", roots.size(), posts, reads);
+    }
+
+    /**
+     * Reads all roots again, with one request for each type of root, and
+     * updates the ids and expanded entities of all nodes. Can be used to read
+     * entities the service generated after the fixture was changed. The
+     * requests for different types are sent as one batch, if the service
+     * supports it.
+     */
+    public void resolve() {
+        Map<EntityType, List<Node>> byType = new EnumMap<>(EntityType.class);
+        for (Node root : roots) {
+            byType.computeIfAbsent(root.entityType, k -> new ArrayList<>()).add(root);
+        }
+        resolve(new ArrayList<>(byType.values()));
+    }
+
+    private JSONObject compile(Node node, Node root) {
+        try {
+            if (node.owner != null || node.id != null) {
+                if (node.id == null && node.owner == root) {
+                    Assert.fail(node + " is used more than once in the deep insert of " + root + ".");
+                }
+                if (node.id == null) {
+                    resolve(Arrays.asList(Arrays.asList(node.owner)));
+                }
+                if (node.id == null) {
+                    Assert.fail("Could not find the id of " + node + ".");
+                }
+                return new JSONObject().put(ControlInformation.ID, node.id);
+            }
+            node.owner = root;
+            JSONObject json = new JSONObject(node.properties.toString());
+            for (Map.Entry<String, List<Node>> entry : node.links.entrySet()) {
+                String relation = entry.getKey();
+                if (EntityType.getForRelation(relation).plural.equals(relation)) {
+                    JSONArray array = new JSONArray();
+                    for (Node target : entry.getValue()) {
+                        array.put(compile(target, root));
+                    }
+                    json.put(relation, array);
+                } else {
+                    json.put(relation, compile(entry.getValue().get(0), root));
+                }
+            }
+            return json;
+        } catch (JSONException ex) {
+            Assert.fail("Failed to compile " + node + ".", ex);
+        }
+        return null;
+    }
+
+    private void resolve(List<List<Node>> rootsByType) {
+        List<BatchTransport.Call> calls = new ArrayList<>();
+        for (List<Node> typeRoots : rootsByType) {
+            calls.add(BatchTransport.Call.get(buildResolveUrl(typeRoots)));
+        }
+        HTTPMethods.getBatch().execute(calls);
+        reads += calls.size();
+        for (int i = 0; i < calls.size(); i++) {
+            List<Node> typeRoots = rootsByType.get(i);
+            if (!applyResolve(typeRoots, calls.get(i))) {
+                LOGGER.info("Resolving fixture ids with {} failed, falling back to navigation requests.", calls.get(i));
+                resolveByNavigation(typeRoots);
+            }
+        }
+    }
+
+    private String buildResolveUrl(List<Node> typeRoots) {
+        EntityType entityType = typeRoots.get(0).entityType;
+        StringBuilder filter = new StringBuilder();
+        for (Node root : typeRoots) {
+            if (filter.length() > 0) {
+                filter.append("%20or%20");
+            }
+            filter.append("id%20eq%20").append(Utils.quoteIdForUrl(root.id));
+        }
+        String expand = buildExpand(entityType, typeRoots);
+        return ServiceURLBuilder.buildURLString(rootUri, entityType, null, null, null)
+                + "?$filter=" + filter
+                + (expand.isEmpty() ? "" : "&$expand=" + expand);
+    }
+
+    /**
+     * Matches the response of a resolve request to the given roots.
+     *
+     * @return false if the response does not contain all roots and their
+     * relations.
+     */
+    private boolean applyResolve(List<Node> typeRoots, BatchTransport.Call call) {
+        if (call.getResponseCode() != 200) {
+            LOGGER.debug("Resolve request {} returned {}.", call, call.getResponseCode());
+            return false;
+        }
+        try {
+            JSONArray value = new JSONObject(call.getResponse().get("response").toString()).getJSONArray("value");
+            for (Node root : typeRoots) {
+                JSONObject found = null;
+                for (int i = 0; i < value.length() && found == null; i++) {
+                    JSONObject candidate = value.getJSONObject(i);
+                    if (Utils.quoteIdForUrl(root.id).equals(Utils.quoteIdForUrl(candidate.get(ControlInformation.ID)))) {
+                        found = candidate;
+                    }
+                }
+                if (found == null) {
+                    LOGGER.debug("Created {} not found with {}.", root, call);
+                    return false;
+                }
+                if (!match(root, found)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (JSONException ex) {
+            LOGGER.debug("Invalid JSON resolving fixture ids with {}: {}", call, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the given roots, and all relations that the resolve request
+     * would have expanded, with one navigation request for each entity and
+     * relation.
+     */
+    private void resolveByNavigation(List<Node> typeRoots) {
+        for (Node root : typeRoots) {
+            String urlString = ServiceURLBuilder.buildURLString(rootUri, root.entityType, root.id, null, null);
+            try {
+                JSONObject entity = readByNavigation(root.entityType, getEntity(urlString), root);
+                if (!match(root, entity)) {
+                    Assert.fail("Created entities of " + root + " not found.");
+                }
+            } catch (JSONException ex) {
+                Assert.fail("Invalid JSON resolving fixture ids of " + root, ex);
+            }
+        }
+    }
+
+    /**
+     * Adds the relations of the given node, and the generated relations of
+     * its type, to the entity, read with navigation requests.
+     *
+     * @param entityType The type of the entity.
+     * @param entity     The entity as read from the service.
+     * @param node       The node the entity belongs to, or null if it is not
+     *                   part of the graph.
+     * @return The entity, with its relations.
+     */
+    private JSONObject readByNavigation(EntityType entityType, JSONObject entity, Node node) throws JSONException {
+        Set<String> relations = new LinkedHashSet<>();
+        Set<String> extra = generated.get(entityType);
+        if (extra != null) {
+            relations.addAll(extra);
+        }
+        if (node != null) {
+            relations.addAll(node.links.keySet());
+        }
+        Object id = entity.get(ControlInformation.ID);
+        for (String relation : relations) {
+            EntityType relationType = EntityType.getForRelation(relation);
+            List<Node> targets = node == null ? Collections.emptyList() : node.links.getOrDefault(relation, Collections.emptyList());
+            String urlString = ServiceURLBuilder.buildURLString(rootUri, entityType, id, null, relation);
+            if (relationType.plural.equals(relation)) {
+                List<JSONObject> children = OrderByVerifier.fetchAll(urlString);
+                reads++;
+                JSONArray array = new JSONArray();
+                for (JSONObject child : children) {
+                    Node target = null;
+                    for (Node candidate : targets) {
+                        if (isMatch(candidate, child)) {
+                            target = candidate;
+                            break;
+                        }
+                    }
+                    array.put(readByNavigation(relationType, child, target));
+                }
+                entity.put(relation, array);
+            } else {
+                Node target = targets.isEmpty() ? null : targets.get(0);
+                entity.put(relation, readByNavigation(relationType, getEntity(urlString), target));
+            }
+        }
+        return entity;
+    }
+
+    private JSONObject getEntity(String urlString) throws JSONException {
+        Map<String, Object> responseMap = HTTPMethods.doGet(urlString);
+        reads++;
+        int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
+        Assert.assertEquals(responseCode, 200, "Error reading fixture entity " + urlString);
+        return new JSONObject(responseMap.get("response").toString());
+    }
+
+    /**
+     * Builds the $expand value that returns all nodes below the given nodes.
+     */
+    private String buildExpand(EntityType entityType, List<Node> nodes) {
+        Map<String, List<Node>> byRelation = new LinkedHashMap<>();
+        Set<String> extra = generated.get(entityType);
+        if (extra != null) {
+            for (String relation : extra) {
+                byRelation.put(relation, new ArrayList<>());
+            }
+        }
+        for (Node node : nodes) {
+            for (Map.Entry<String, List<Node>> entry : node.links.entrySet()) {
+                byRelation.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+            }
+        }
+        StringBuilder expand = new StringBuilder();
+        for (Map.Entry<String, List<Node>> entry : byRelation.entrySet()) {
+            if (expand.length() > 0) {
+                expand.append(',');
+            }
+            String relation = entry.getKey();
+            expand.append(relation);
+            String nested = buildExpand(EntityType.getForRelation(relation), entry.getValue());
+            if (!nested.isEmpty()) {
+                expand.append("($expand=").append(nested).append(')');
+            }
+        }
+        return expand.toString();
+    }
+
+    /**
+     * Sets the ids of the node and all nodes below it, from the given entity
+     * and its expanded relations.
+     *
+     * @return false if a relation or a node is missing.
+     */
+    private boolean match(Node node, JSONObject json) throws JSONException {
+        if (node.id == null) {
+            node.id = json.get(ControlInformation.ID);
+        }
+        node.expanded = json;
+        for (Map.Entry<String, List<Node>> entry : node.links.entrySet()) {
+            String relation = entry.getKey();
+            if (!json.has(relation)) {
+                LOGGER.debug("Relation {} of {} was not expanded.", relation, node);
+                return false;
+            }
+            if (json.has(relation + "@iot.nextLink")) {
+                LOGGER.debug("Relation {} of {} does not fit in one page.", relation, node);
+                return false;
+            }
+            Object value = json.get(relation);
+            if (value instanceof JSONObject) {
+                if (!match(entry.getValue().get(0), (JSONObject) value)) {
+                    return false;
+                }
+                continue;
+            }
+            JSONArray array = (JSONArray) value;
+            for (Node target : entry.getValue()) {
+                JSONObject found = null;
+                for (int i = 0; i < array.length() && found == null; i++) {
+                    JSONObject candidate = array.getJSONObject(i);
+                    if (isMatch(target, candidate)) {
+                        found = candidate;
+                    }
+                }
+                if (found == null) {
+                    LOGGER.debug("Created {} not found in {} of {}.", target, relation, node);
+                    return false;
+                }
+                if (!match(target, found)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isMatch(Node target, JSONObject candidate) throws JSONException {
+        if (target.id != null) {
+            return Utils.quoteIdForUrl(target.id).equals(Utils.quoteIdForUrl(candidate.get(ControlInformation.ID)));
+        }
+        if (!candidate.has(target.key) || !target.properties.has(target.key)) {
+            return false;
+        }
+        return JsonComparator.DEFAULT.valueEquals(target.key, target.properties.get(target.key), candidate.get(target.key));
+    }
+
+    /**
+     * @return The number of requests used to create and resolve the fixture.
+     */
+    public int getRequestCount() {
+        return posts + reads;
+    }
+}
@@ -11,12 +11,20 @@ import java.util.Map;
 import org.apache.http.Consts;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
+import org.opengis.cite.sta10.util.http.AdaptiveConcurrencyLimiter;
+import org.opengis.cite.sta10.util.http.BatchTransport;
+import org.opengis.cite.sta10.util.http.RequestThrottle;
+import org.opengis.cite.sta10.util.http.ResponseMemo;
+import org.opengis.cite.sta10.util.perf.HttpRequestEvent;
+import org.opengis.cite.sta10.util.perf.PhaseProfiler;
+import org.opengis.cite.sta10.util.perf.RunMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -31,6 +39,131 @@ public class HTTPMethods {
      * The logger for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(HTTPMethods.class);
+    /**
+     * The throttle that all requests pass through.
+     */
+    private static RequestThrottle throttle = new RequestThrottle();
+
+    /**
+     * @return The throttle that all requests pass through.
+     */
+    public static RequestThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Sets the throttle that all requests pass through.
+     *
+     * @param throttle The throttle to use for all following requests.
+     */
+    public static void setThrottle(RequestThrottle throttle) {
+        HTTPMethods.throttle = throttle;
+    }
+
+    /**
+     * The limiter for the number of requests in flight.
+     */
+    private static AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 8);
+
+    /**
+     * @return The limiter for the number of requests in flight.
+     */
+    public static AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Sets the limiter for the number of requests in flight.
+     *
+     * @param limiter The limiter to use for all following requests.
+     */
+    public static void setLimiter(AdaptiveConcurrencyLimiter limiter) {
+        HTTPMethods.limiter = limiter;
+    }
+
+    /**
+     * The memo for GET responses while the fixture does not change.
+     */
+    private static ResponseMemo memo = new ResponseMemo(256);
+
+    /**
+     * @return The memo for GET responses.
+     */
+    public static ResponseMemo getMemo() {
+        return memo;
+    }
+
+    /**
+     * Sets the memo for GET responses.
+     *
+     * @param memo The memo to use for all following requests.
+     */
+    public static void setMemo(ResponseMemo memo) {
+        HTTPMethods.memo = memo;
+    }
+
+    /**
+     * The transport for groups of independent requests.
+     */
+    private static BatchTransport batch = new BatchTransport();
+
+    /**
+     * @return The transport for groups of independent requests.
+     */
+    public static BatchTransport getBatch() {
+        return batch;
+    }
+
+    /**
+     * Sets the transport for groups of independent requests.
+     *
+     * @param batch The transport to use for all following requests.
+     */
+    public static void setBatch(BatchTransport batch) {
+        HTTPMethods.batch = batch;
+    }
+
+    /**
+     * The metrics of the test run, that all requests are recorded in.
+     */
+    private static RunMetrics metrics = new RunMetrics();
+
+    /**
+     * @return The metrics of the test run.
+     */
+    public static RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics of the test run.
+     *
+     * @param metrics The metrics to record all following requests in.
+     */
+    public static void setMetrics(RunMetrics metrics) {
+        HTTPMethods.metrics = metrics;
+    }
+
+    /**
+     * The profiler for the wall time of the phases of the test run.
+     */
+    private static PhaseProfiler profiler = new PhaseProfiler();
+
+    /**
+     * @return The profiler for the wall time of the phases of the test run.
+     */
+    public static PhaseProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Sets the profiler for the wall time of the phases of the test run.
+     *
+     * @param profiler The profiler to record all following phases in.
+     */
+    public static void setProfiler(PhaseProfiler profiler) {
+        HTTPMethods.profiler = profiler;
+    }
 
     /**
      * Send HTTP GET request to the urlString and return response code and response body
@@ -40,8 +173,40 @@ public class HTTPMethods {
      * If the response is not 200, the response(response body) will be empty.
      */
     public static Map<String, Object> doGet(String urlString) {
+        return doGet(urlString, true);
+    }
+
+    /**
+     * Send HTTP GET request to the urlString and return response code and
+     * response body. While a memo epoch is active, a repeated GET of the same
+     * URL is answered from the memo, unless useMemo is false.
+     *
+     * @param urlString The URL that the GET request should be sent to
+     * @param useMemo   false to always send the request to the server
+     * @return response-code and response(response body) of the HTTP GET in the MAP format.
+     * If the response is not 200, the response(response body) will be empty.
+     */
+    public static Map<String, Object> doGet(String urlString, boolean useMemo) {
+        if (useMemo) {
+            Map<String, Object> memoized = memo.get(urlString);
+            if (memoized != null) {
+                LOGGER.debug("Memoized: {}", urlString);
+                return memoized;
+            }
+        }
+        Map<String, Object> result = fetch(urlString);
+        memo.put(urlString, result);
+        return result;
+    }
+
+    private static Map<String, Object> fetch(String urlString) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
         HttpURLConnection connection = null;
-        try {
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("GET", urlString))) {
+            sent = markSent(permit, event);
             LOGGER.info("Getting: {}", urlString);
             //Create connection
             URL url = new URL(urlString);
@@ -55,15 +220,16 @@ public class HTTPMethods {
 
             Map<String, Object> result = new HashMap<String, Object>();
             result.put("response-code", connection.getResponseCode());
+            slot.setResponseCode(connection.getResponseCode());
             if (connection.getResponseCode() == 200) {
                 result.put("response", responseToString(connection));
             } else {
                 result.put("response", "");
             }
-            return result;
+            return record("GET", urlString, start, sent, event, result);
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+            return record("GET", urlString, start, sent, event, null);
         } finally {
             if (connection != null) {
                 connection.disconnect();
@@ -93,10 +259,17 @@ public class HTTPMethods {
      * @param postBody  The body of the POST request
      * @return response-code and response of the HTTP POST in the MAP format.
      * If the response is 201, the response will contain the self-link to the created entity. Otherwise, it will be empty String.
+     * The sent-nanos entry holds the System.nanoTime() at which the request was sent, after waiting for the throttle and limiter.
      */
     public static Map<String, Object> doPost(String urlString, String postBody) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
+        memo.invalidate();
         HttpURLConnection connection = null;
-        try {
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("POST", urlString))) {
+            sent = markSent(permit, event);
             LOGGER.info("Posting: {}", urlString);
             //Create connection
             URL url = new URL(urlString);
@@ -116,6 +289,8 @@ public class HTTPMethods {
 
             Map<String, Object> result = new HashMap<>();
             result.put("response-code", connection.getResponseCode());
+            result.put("sent-nanos", sent);
+            slot.setResponseCode(connection.getResponseCode());
             if (connection.getResponseCode() == 201) {
                 String locationHeader = connection.getHeaderField("location");
                 if (locationHeader == null || locationHeader.isEmpty()) {
@@ -126,10 +301,10 @@ public class HTTPMethods {
             } else {
                 result.put("response", "");
             }
-            return result;
+            return record("POST", urlString, start, sent, event, result);
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+            return record("POST", urlString, start, sent, event, null);
         } finally {
             if (connection != null) {
                 connection.disconnect();
@@ -146,8 +321,14 @@ public class HTTPMethods {
      * If the response is not 200, the response(response body) will be empty.
      */
     public static Map<String, Object> doPut(String urlString, String putBody) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
+        memo.invalidate();
         HttpURLConnection connection = null;
-        try {
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("PUT", urlString))) {
+            sent = markSent(permit, event);
             LOGGER.info("Putting: {}", urlString);
             //Create connection
             URI uri = new URI(urlString);
@@ -159,14 +340,15 @@ public class HTTPMethods {
             CloseableHttpResponse response = httpClient.execute(request);
             Map<String, Object> result = new HashMap<>();
             result.put("response-code", response.getStatusLine().getStatusCode());
+            slot.setResponseCode(response.getStatusLine().getStatusCode());
             result.put("response", EntityUtils.toString(response.getEntity()));
             response.close();
             httpClient.close();
-            return result;
+            return record("PUT", urlString, start, sent, event, result);
 
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+            return record("PUT", urlString, start, sent, event, null);
         } finally {
             if (connection != null) {
                 connection.disconnect();
@@ -182,8 +364,14 @@ public class HTTPMethods {
      * The MAP contains an empty response, in order to be consistent with what other HTTP requests return.
      */
     public static Map<String, Object> doDelete(String urlString) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
+        memo.invalidate();
         HttpURLConnection connection = null;
-        try {
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("DELETE", urlString))) {
+            sent = markSent(permit, event);
             LOGGER.info("Deleting: {}", urlString);
             //Create connection
             URL url = new URL(urlString);
@@ -196,12 +384,13 @@ public class HTTPMethods {
 
             Map<String, Object> result = new HashMap<String, Object>();
             result.put("response-code", connection.getResponseCode());
+            slot.setResponseCode(connection.getResponseCode());
             result.put("response", "");
 
-            return result;
+            return record("DELETE", urlString, start, sent, event, result);
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+            return record("DELETE", urlString, start, sent, event, null);
         } finally {
             if (connection != null) {
                 connection.disconnect();
@@ -218,8 +407,14 @@ public class HTTPMethods {
      * If the response is not 200, the response(response body) will be empty.
      */
     public static Map<String, Object> doPatch(String urlString, String patchBody) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
+        memo.invalidate();
         URI uri = null;
-        try {
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("PATCH", urlString))) {
+            sent = markSent(permit, event);
             LOGGER.info("Patching: {}", urlString);
             uri = new URI(urlString);
 
@@ -230,14 +425,15 @@ public class HTTPMethods {
             CloseableHttpResponse response = httpClient.execute(request);
             Map<String, Object> result = new HashMap<>();
             result.put("response-code", response.getStatusLine().getStatusCode());
+            slot.setResponseCode(response.getStatusLine().getStatusCode());
             result.put("response", EntityUtils.toString(response.getEntity()));
             response.close();
             httpClient.close();
-            return result;
+            return record("PATCH", urlString, start, sent, event, result);
         } catch (URISyntaxException | IOException e) {
             e.printStackTrace();
         }
-        return null;
+        return record("PATCH", urlString, start, sent, event, null);
     }
 
     /**
@@ -249,10 +445,17 @@ public class HTTPMethods {
      * If the response is not 200, the response(response body) will be empty.
      */
     public static Map<String, Object> doJsonPatch(String urlString, String patchBody) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
+        memo.invalidate();
         URI uri;
         LOGGER.info("Patching: {}", urlString);
         Map<String, Object> result;
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("PATCH", urlString));
+                CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            sent = markSent(permit, event);
             uri = new URI(urlString);
             HttpPatch request = new HttpPatch(uri);
             StringEntity params = new StringEntity(patchBody, APPLICATION_JSON_PATCH);
@@ -260,13 +463,81 @@ public class HTTPMethods {
             try (CloseableHttpResponse response = httpClient.execute(request)) {
                 result = new HashMap<>();
                 result.put("response-code", response.getStatusLine().getStatusCode());
+                slot.setResponseCode(response.getStatusLine().getStatusCode());
                 result.put("response", EntityUtils.toString(response.getEntity()));
-                return result;
+                return record("PATCH", urlString, start, sent, event, result);
             }
         } catch (URISyntaxException | IOException e) {
             LOGGER.error("Failed to send JSON Patch.", e);
         }
-        return null;
+        return record("PATCH", urlString, start, sent, event, null);
+    }
+
+    /**
+     * Send an OData JSON $batch request to the urlString and return response
+     * code and response body. Does not invalidate the GET memo, that is left
+     * to the caller, which knows if the batch contains writes.
+     *
+     * @param urlString The URL of the $batch resource
+     * @param batchBody The JSON batch request
+     * @return response-code and response(response body) of the HTTP POST in the MAP format.
+     */
+    public static Map<String, Object> doBatch(String urlString, String batchBody) {
+        long start = System.nanoTime();
+        long sent = start;
+        HttpRequestEvent event = new HttpRequestEvent();
+        LOGGER.info("Batching: {}", urlString);
+        try (RequestThrottle.Permit permit = throttle.acquire();
+                AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire(requestClass("POST", urlString));
+                CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            sent = markSent(permit, event);
+            HttpPost request = new HttpPost(new URI(urlString));
+            request.setEntity(new StringEntity(batchBody, ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("response-code", response.getStatusLine().getStatusCode());
+                slot.setResponseCode(response.getStatusLine().getStatusCode());
+                result.put("response", EntityUtils.toString(response.getEntity()));
+                return record("POST", urlString, start, sent, event, result);
+            }
+        } catch (URISyntaxException | IOException e) {
+            LOGGER.error("Failed to send batch.", e);
+        }
+        return record("POST", urlString, start, sent, event, null);
+    }
+
+    /**
+     * @param method    The HTTP method.
+     * @param urlString The URL of the request.
+     * @return The class of the request for the concurrency limiter: the
+     * method and the URL with the ids replaced.
+     */
+    private static String requestClass(String method, String urlString) {
+        return method + " " + RunMetrics.template(urlString);
+    }
+
+    /**
+     * Marks a request as sent, once it holds both its throttle permit and its
+     * limiter slot. Everything before is queue wait, everything after is
+     * server latency.
+     *
+     * @return The value of System.nanoTime() at which the request was sent.
+     */
+    private static long markSent(RequestThrottle.Permit permit, HttpRequestEvent event) {
+        event.begin();
+        return permit.markSent();
+    }
+
+    /**
+     * @param start The value of System.nanoTime() when the request was made.
+     * @param sent  The value of System.nanoTime() when the request was sent,
+     *              or start if it never was.
+     */
+    private static Map<String, Object> record(String method, String urlString, long start, long sent, HttpRequestEvent event, Map<String, Object> result) {
+        int code = result == null ? 0 : (Integer) result.get("response-code");
+        metrics.recordHttp(method, urlString, code, sent - start, System.nanoTime() - sent);
+        event.commit(method, urlString, code, sent - start);
+        return result;
     }
 
     /**
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.Assert;
+
+/**
+ * Compares JSON trees the way the SensorThings API defines equality, rather
+ * than textually: the order of keys does not matter, numbers are compared by
+ * value (1, 1.0 and 1.00 are equal), and the values of keys ending in "time"
+ * are compared as instants or intervals, regardless of time zone and
+ * precision. When a topic is given, navigation links are resolved against the
+ * topic before they are compared, as needed for MQTT messages.
+ *
+ * Both sides are brought into a canonical text form, and matching trees are
+ * detected by comparing those forms. Only when they differ the trees are
+ * walked to find the differences, which are reported with JSON-pointer paths.
+ * When the same expected value is compared to many actual values, its digest
+ * can be calculated once and checked with {@link #matches(String, Object)}.
+ *
+ * @author scf
+ */
+public class JsonComparator {
+
+    /**
+     * The comparator without navigation link resolving.
+     */
+    public static final JsonComparator DEFAULT = new JsonComparator(null);
+
+    private static final String NAVIGATION_LINK = "@iot.navigationLink";
+    private static final String SELF_LINK = "@iot.selfLink";
+
+    private final String topic;
+
+    /**
+     * Creates a new comparator.
+     *
+     * @param topic The MQTT topic the compared entities were received on, used
+     *              to resolve relative navigation links. May be null.
+     */
+    public JsonComparator(String topic) {
+        this.topic = topic == null || topic.isEmpty() ? null : topic;
+    }
+
+    /**
+     * Returns the canonical text form of the given JSON value: keys sorted,
+     * numbers and time values normalised.
+     *
+     * @param json The JSON value, a JSONObject, JSONArray or simple value.
+     * @return The canonical form.
+     */
+    public String canonicalize(Object json) {
+        StringBuilder sb = new StringBuilder();
+        appendCanonical(sb, null, json, null);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the digest of the canonical form of the given JSON value. Two
+     * values with the same digest are equal.
+     *
+     * @param json The JSON value.
+     * @return The hex-encoded SHA-256 digest of the canonical form.
+     */
+    public String digest(Object json) {
+        return sha256(canonicalize(json));
+    }
+
+    /**
+     * Checks if two JSON values are equal.
+     *
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     * @return true if both values are equal.
+     */
+    public boolean jsonEquals(Object expected, Object actual) {
+        return canonicalize(expected).equals(canonicalize(actual));
+    }
+
+    /**
+     * Checks if a JSON value matches a digest calculated earlier. Useful when
+     * the same expected value is compared to many actual values.
+     *
+     * @param expectedDigest The digest of the expected value.
+     * @param actual         The actual value.
+     * @return true if the actual value has the given digest.
+     */
+    public boolean matches(String expectedDigest, Object actual) {
+        return expectedDigest.equals(digest(actual));
+    }
+
+    /**
+     * Checks if two values of the given property are equal. The name of the
+     * property determines if the values are treated as time values.
+     *
+     * @param key      The name of the property.
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     * @return true if both values are equal.
+     */
+    public boolean valueEquals(String key, Object expected, Object actual) {
+        return canonicalValue(key, expected, null).equals(canonicalValue(key, actual, null));
+    }
+
+    /**
+     * Finds the differences between two JSON values.
+     *
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     * @return The differences, empty if the values are equal.
+     */
+    public List<Difference> diff(Object expected, Object actual) {
+        List<Difference> result = new ArrayList<>();
+        if (!jsonEquals(expected, actual)) {
+            diff("", null, expected, null, actual, null, result);
+        }
+        return result;
+    }
+
+    /**
+     * Fails the test if the two JSON values are not equal, listing the
+     * differences in the failure message.
+     *
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     * @param message  The message to prefix the differences with.
+     */
+    public void assertJsonEquals(Object expected, Object actual, String message) {
+        List<Difference> differences = diff(expected, actual);
+        if (!differences.isEmpty()) {
+            Assert.fail(message + " Differences: " + differences);
+        }
+    }
+
+    /**
+     * Fails the test if the two values of the given property are not equal.
+     *
+     * @param key      The name of the property.
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     * @param message  The failure message.
+     */
+    public void assertValueEquals(String key, Object expected, Object actual, String message) {
+        if (!valueEquals(key, expected, actual)) {
+            List<Difference> differences = new ArrayList<>();
+            diff("/" + escapePointer(key), key, expected, null, actual, null, differences);
+            Assert.fail(message + " Differences: " + differences);
+        }
+    }
+
+    private void diff(String path, String key, Object expected, JSONObject expectedParent, Object actual, JSONObject actualParent, List<Difference> result) {
+        if (expected instanceof JSONObject && actual instanceof JSONObject) {
+            JSONObject expObj = (JSONObject) expected;
+            JSONObject actObj = (JSONObject) actual;
+            TreeSet<String> keys = new TreeSet<>(expObj.keySet());
+            keys.addAll(actObj.keySet());
+            for (String subKey : keys) {
+                String subPath = path + "/" + escapePointer(subKey);
+                if (!actObj.has(subKey)) {
+                    result.add(new Difference(subPath, expObj.get(subKey), null));
+                } else if (!expObj.has(subKey)) {
+                    result.add(new Difference(subPath, null, actObj.get(subKey)));
+                } else {
+                    diff(subPath, subKey, expObj.get(subKey), expObj, actObj.get(subKey), actObj, result);
+                }
+            }
+            return;
+        }
+        if (expected instanceof JSONArray && actual instanceof JSONArray) {
+            JSONArray expArr = (JSONArray) expected;
+            JSONArray actArr = (JSONArray) actual;
+            int max = Math.max(expArr.length(), actArr.length());
+            for (int i = 0; i < max; i++) {
+                String subPath = path + "/" + i;
+                if (i >= actArr.length()) {
+                    result.add(new Difference(subPath, expArr.get(i), null));
+                } else if (i >= expArr.length()) {
+                    result.add(new Difference(subPath, null, actArr.get(i)));
+                } else {
+                    diff(subPath, null, expArr.get(i), null, actArr.get(i), null, result);
+                }
+            }
+            return;
+        }
+        if (!canonicalValue(key, expected, expectedParent).equals(canonicalValue(key, actual, actualParent))) {
+            result.add(new Difference(path.isEmpty() ? "/" : path, expected, actual));
+        }
+    }
+
+    private String canonicalValue(String key, Object value, JSONObject parent) {
+        StringBuilder sb = new StringBuilder();
+        appendCanonical(sb, key, value, parent);
+        return sb.toString();
+    }
+
+    private void appendCanonical(StringBuilder sb, String key, Object value, JSONObject parent) {
+        if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            sb.append('{');
+            boolean first = true;
+            for (String subKey : new TreeSet<>(obj.keySet())) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append(JSONObject.quote(subKey)).append(':');
+                appendCanonical(sb, subKey, obj.get(subKey), obj);
+            }
+            sb.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            sb.append('[');
+            for (int i = 0; i < arr.length(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendCanonical(sb, null, arr.get(i), null);
+            }
+            sb.append(']');
+        } else if (value == null || JSONObject.NULL.equals(value)) {
+            sb.append("null");
+        } else if (value instanceof Number) {
+            sb.append(canonicalNumber((Number) value));
+        } else if (value instanceof String && key != null && key.toLowerCase().endsWith("time")) {
+            sb.append(canonicalTime((String) value));
+        } else if (value instanceof String && parent != null && topic != null && key.endsWith(NAVIGATION_LINK)) {
+            sb.append(JSONObject.quote(resolveNavigationLink(parent, (String) value)));
+        } else if (value instanceof String) {
+            sb.append(JSONObject.quote((String) value));
+        } else {
+            sb.append(value.toString());
+        }
+    }
+
+    private static String canonicalNumber(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte || number instanceof BigInteger) {
+            return number.toString();
+        }
+        if (number instanceof Double && (((Double) number).isNaN() || ((Double) number).isInfinite())) {
+            return number.toString();
+        }
+        if (number instanceof Float && (((Float) number).isNaN() || ((Float) number).isInfinite())) {
+            return number.toString();
+        }
+        BigDecimal decimal = number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+        if (decimal.signum() == 0) {
+            return "0";
+        }
+        return decimal.stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Turns a time value into "t:start" or "t:start/end", in epoch
+     * milliseconds. Values that can not be parsed are kept as they are.
+     */
+    private static String canonicalTime(String value) {
+        int slash = value.indexOf('/');
+        if (slash < 0) {
+            long instant = TimeUtils.parseInstant(value);
+            if (instant != TimeUtils.INVALID) {
+                return "t:" + instant;
+            }
+        } else {
+            long start = TimeUtils.parseInstant(value, 0, slash);
+            long end = TimeUtils.parseInstant(value, slash + 1, value.length());
+            if (start != TimeUtils.INVALID && end != TimeUtils.INVALID) {
+                return "t:" + start + "/" + end;
+            }
+        }
+        try {
+            if (slash < 0) {
+                return "t:" + DateTime.parse(value).getMillis();
+            }
+            Interval interval = Interval.parse(value);
+            return "t:" + interval.getStartMillis() + "/" + interval.getEndMillis();
+        } catch (IllegalArgumentException ex) {
+            return JSONObject.quote(value);
+        }
+    }
+
+    /**
+     * Resolves a navigation link against the topic, using the base URL from
+     * the selfLink of the entity the link is in.
+     */
+    private String resolveNavigationLink(JSONObject entity, String navLink) {
+        String selfLink = entity.optString(SELF_LINK, null);
+        int slash = topic.indexOf('/');
+        if (selfLink == null || slash < 0) {
+            return navLink;
+        }
+        String version = topic.substring(0, slash);
+        int versionStart = selfLink.indexOf(version);
+        if (versionStart < 0) {
+            return navLink;
+        }
+        try {
+            URI baseUri = URI.create(selfLink.substring(0, versionStart)).resolve(topic);
+            return baseUri.resolve(navLink).toString();
+        } catch (IllegalArgumentException ex) {
+            return navLink;
+        }
+    }
+
+    /**
+     * Escapes a key for use in a JSON pointer, as defined in RFC 6901.
+     */
+    private static String escapePointer(String key) {
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * One difference between two JSON trees.
+     */
+    public static class Difference {
+
+        private final String path;
+        private final Object expected;
+        private final Object actual;
+
+        public Difference(String path, Object expected, Object actual) {
+            this.path = path;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        /**
+         * @return The JSON pointer to the differing value.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return The expected value, or null if the value was not expected.
+         */
+        public Object getExpected() {
+            return expected;
+        }
+
+        /**
+         * @return The actual value, or null if the value is missing.
+         */
+        public Object getActual() {
+            return actual;
+        }
+
+        @Override
+        public String toString() {
+            if (actual == null) {
+                return path + ": missing, expected " + expected;
+            }
+            if (expected == null) {
+                return path + ": unexpected " + actual;
+            }
+            return path + ": expected " + expected + " but got " + actual;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Caches the entities that navigation paths like
+ * "v1.0/Observations(1)/Datastream/Thing" resolve to. The cache has two
+ * levels: which entity a path points to, and the content of that entity. The
+ * content is replaced when the entity is changed, path resolutions are dropped
+ * when an entity on the path may have been changed or deleted. Since an entity
+ * reached by navigation, like the Datastream in the path above, is not named
+ * by its id, all paths that navigate through an entity of the changed type are
+ * dropped.
+ *
+ * The cache is thread-safe, since the EntityHelper that owns it deletes
+ * entities from several threads at once.
+ *
+ * @author scf
+ */
+public class NavigationLinkCache {
+
+    /**
+     * Path to the canonical key ("Things(1)") of the entity it resolves to.
+     */
+    private final Map<String, String> resolutions = new HashMap<>();
+    /**
+     * Canonical key to entity.
+     */
+    private final Map<String, JSONObject> entities = new HashMap<>();
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Returns the canonical key for the given entity, in the form of the
+     * entity set followed by the id, as used in URLs.
+     *
+     * @param entityType The type of the entity.
+     * @param id         The id of the entity.
+     * @return The canonical key.
+     */
+    public static String canonicalKey(EntityType entityType, Object id) {
+        return entityType.plural + "(" + Utils.quoteIdForUrl(id) + ")";
+    }
+
+    /**
+     * Finds the entity the given path resolves to.
+     *
+     * @param path The path, relative to the service root.
+     * @return A copy of the cached entity, or null if the path is not cached.
+     */
+    public synchronized JSONObject get(String path) {
+        String key = resolutions.get(path);
+        JSONObject entity = key == null ? null : entities.get(key);
+        if (entity == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(entity);
+    }
+
+    /**
+     * Stores the entity a path resolves to.
+     *
+     * @param path       The path, relative to the service root.
+     * @param entityType The type of the entity the path resolves to.
+     * @param entity     The entity the path resolves to.
+     */
+    public synchronized void put(String path, EntityType entityType, JSONObject entity) {
+        Object id = entity.opt(ControlInformation.ID);
+        if (id == null) {
+            // Entity without id, can not be cached.
+            return;
+        }
+        String key = canonicalKey(entityType, id);
+        resolutions.put(path, key);
+        entities.put(key, copy(entity));
+    }
+
+    /**
+     * Replaces the content of an entity after a PATCH or PUT. Paths running
+     * through the entity, or through any entity of its type, are dropped,
+     * since the relations of the entity may have changed.
+     *
+     * @param entityType The type of the changed entity.
+     * @param id         The id of the changed entity.
+     * @param entity     The new content of the entity, or null if not known.
+     */
+    public synchronized void update(EntityType entityType, Object id, JSONObject entity) {
+        String key = canonicalKey(entityType, id);
+        dropPathsThrough(entityType);
+        if (entity == null) {
+            entities.remove(key);
+        } else {
+            entities.put(key, copy(entity));
+        }
+    }
+
+    /**
+     * Removes an entity after a DELETE, together with all paths that resolve
+     * to it or run through it, or through any entity of its type.
+     *
+     * @param entityType The type of the deleted entity.
+     * @param id         The id of the deleted entity.
+     */
+    public synchronized void remove(EntityType entityType, Object id) {
+        String key = canonicalKey(entityType, id);
+        dropPathsThrough(entityType);
+        entities.remove(key);
+        resolutions.values().removeIf(key::equals);
+    }
+
+    /**
+     * Drops the paths that have an entity of the given type before their last
+     * segment, either by id, like "Datastreams(1)", or by navigation, like
+     * "Datastream".
+     */
+    private void dropPathsThrough(EntityType entityType) {
+        Iterator<String> it = resolutions.keySet().iterator();
+        while (it.hasNext()) {
+            String[] segments = it.next().split("/");
+            for (int i = 0; i < segments.length - 1; i++) {
+                String segment = segments[i];
+                int paren = segment.indexOf('(');
+                if (paren >= 0) {
+                    segment = segment.substring(0, paren);
+                }
+                if (segment.equals(entityType.singular) || segment.equals(entityType.plural)) {
+                    it.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public synchronized void clear() {
+        resolutions.clear();
+        entities.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return A one-line summary of the cache usage.
+     */
+    public synchronized String getStatistics() {
+        return "Navigation link cache: " + hits + " hits, " + misses + " misses, "
+                + resolutions.size() + " paths, " + entities.size() + " entities.";
+    }
+
+    private static JSONObject copy(JSONObject entity) {
+        return new JSONObject(entity.toString());
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+
+/**
+ * Verifies the $orderby behaviour of a collection. The values are compared
+ * with a comparator chosen by the type of the property: time properties by
+ * their (start) instant, numbers by value, strings as strings. Values of
+ * different types, and JSON objects, have no order defined by the
+ * specification. When two entities are compared on such values, or one of
+ * them lacks the property, the order of the remaining properties is undefined
+ * as well, and the pair is not checked further. These pairs are logged.
+ *
+ * Each orderby variant is fetched once, following nextLinks so that the order
+ * is verified over the entire collection and across page boundaries. The
+ * variants are fetched in parallel.
+ *
+ * @author scf
+ */
+public class OrderByVerifier {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderByVerifier.class);
+
+    /**
+     * The maximum number of pages to follow for one request.
+     */
+    private static final int MAX_PAGES = 100;
+
+    private OrderByVerifier() {
+        // Utility class.
+    }
+
+    /**
+     * Creates the comparator for the values of the given property, based on
+     * its name and json type. The comparator throws an
+     * IllegalArgumentException for values that have no defined order.
+     *
+     * @param property The property to create the comparator for.
+     * @return The comparator.
+     */
+    public static Comparator<Object> comparatorFor(EntityType.EntityProperty property) {
+        if ("object".equals(property.jsonType)) {
+            return (o1, o2) -> {
+                throw new IllegalArgumentException("JSON objects have no defined order");
+            };
+        }
+        if ("string".equals(property.jsonType) && property.name.toLowerCase().endsWith("time")) {
+            return OrderByVerifier::compareTimes;
+        }
+        if ("string".equals(property.jsonType)) {
+            return OrderByVerifier::compareStrings;
+        }
+        return OrderByVerifier::compareAny;
+    }
+
+    private static int compareStrings(Object o1, Object o2) {
+        if (o1 instanceof String && o2 instanceof String) {
+            return ((String) o1).compareTo((String) o2);
+        }
+        throw new IllegalArgumentException("values of different types have no defined order");
+    }
+
+    private static int compareTimes(Object o1, Object o2) {
+        long t1 = startMillis(o1);
+        long t2 = startMillis(o2);
+        if (t1 == TimeUtils.INVALID || t2 == TimeUtils.INVALID) {
+            return compareStrings(o1, o2);
+        }
+        return Long.compare(t1, t2);
+    }
+
+    private static long startMillis(Object value) {
+        if (!(value instanceof String)) {
+            return TimeUtils.INVALID;
+        }
+        String text = (String) value;
+        int slash = text.indexOf('/');
+        return TimeUtils.parseInstant(text, 0, slash < 0 ? text.length() : slash);
+    }
+
+    private static int compareAny(Object o1, Object o2) {
+        if (o1 instanceof Number && o2 instanceof Number) {
+            return new BigDecimal(o1.toString()).compareTo(new BigDecimal(o2.toString()));
+        }
+        if (o1 instanceof Boolean && o2 instanceof Boolean) {
+            return ((Boolean) o1).compareTo((Boolean) o2);
+        }
+        return compareStrings(o1, o2);
+    }
+
+    /**
+     * Fetches all entities of a collection, following nextLinks.
+     *
+     * @param urlString The URL of the collection.
+     * @return All entities in the collection, in the order the service
+     * returned them.
+     */
+    public static List<JSONObject> fetchAll(String urlString) {
+        List<JSONObject> result = new ArrayList<>();
+        String nextUrl = urlString;
+        int pages = 0;
+        try {
+            while (nextUrl != null) {
+                if (++pages > MAX_PAGES) {
+                    Assert.fail("More than " + MAX_PAGES + " pages for request " + urlString);
+                }
+                Map<String, Object> responseMap = HTTPMethods.doGet(nextUrl);
+                int responseCode = Integer.parseInt(responseMap.get("response-code").toString());
+                Assert.assertEquals(responseCode, 200, "Error getting " + nextUrl);
+                JSONObject response = new JSONObject(responseMap.get("response").toString());
+                JSONArray value = response.getJSONArray("value");
+                for (int i = 0; i < value.length(); i++) {
+                    result.add(value.getJSONObject(i));
+                }
+                nextUrl = response.optString("@iot.nextLink", null);
+            }
+        } catch (JSONException ex) {
+            Assert.fail("Invalid JSON for request " + nextUrl, ex);
+        }
+        return result;
+    }
+
+    /**
+     * Verifies $orderby on the given collection for all sortable properties
+     * of the entity type: each property on its own, and all properties
+     * combined, in default, ascending and descending order.
+     *
+     * @param collectionUrl The URL of the collection, without query.
+     * @param entityType    The entity type of the collection.
+     */
+    public static void verifyOrderBy(String collectionUrl, EntityType entityType) {
+        List<EntityType.EntityProperty> sortable = new ArrayList<>();
+        for (EntityType.EntityProperty property : entityType.getProperties()) {
+            if (property.canSort) {
+                sortable.add(property);
+            }
+        }
+        List<Runnable> tasks = new ArrayList<>();
+        for (EntityType.EntityProperty property : sortable) {
+            addVariants(tasks, collectionUrl, entityType, Collections.singletonList(property));
+        }
+        if (sortable.size() > 1) {
+            addVariants(tasks, collectionUrl, entityType, sortable);
+        }
+        HTTPMethods.getLimiter().runAll(tasks);
+    }
+
+    private static void addVariants(List<Runnable> tasks, String collectionUrl, EntityType entityType, List<EntityType.EntityProperty> properties) {
+        tasks.add(() -> verify(collectionUrl, entityType, properties, ""));
+        tasks.add(() -> verify(collectionUrl, entityType, properties, "asc"));
+        tasks.add(() -> verify(collectionUrl, entityType, properties, "desc"));
+    }
+
+    /**
+     * Verifies one orderby request.
+     *
+     * @param collectionUrl The URL of the collection, without query.
+     * @param entityType    The entity type of the collection.
+     * @param properties    The properties to order by.
+     * @param direction     "asc", "desc" or "" for the default direction.
+     */
+    private static void verify(String collectionUrl, EntityType entityType, List<EntityType.EntityProperty> properties, String direction) {
+        boolean descending = "desc".equals(direction);
+        StringBuilder orderby = new StringBuilder();
+        List<Comparator<Object>> comparators = new ArrayList<>();
+        for (EntityType.EntityProperty property : properties) {
+            if (orderby.length() > 0) {
+                orderby.append(',');
+            }
+            orderby.append(property.name);
+            if (!direction.isEmpty()) {
+                orderby.append("%20").append(direction);
+            }
+            comparators.add(comparatorFor(property));
+        }
+        String urlString = collectionUrl + "?$orderby=" + orderby;
+        List<JSONObject> entities = fetchAll(urlString);
+        verifyOrder(entities, properties, comparators, descending,
+                "The " + (direction.isEmpty() ? "default" : direction) + " ordering is not correct for EntityType " + entityType,
+                urlString);
+    }
+
+    /**
+     * Verifies that the entities are in the order given by the properties.
+     *
+     * @param entities    The entities, in the order the service returned them.
+     * @param properties  The properties to order by.
+     * @param comparators The comparators for the properties.
+     * @param descending  true if the order is descending.
+     * @param message     The start of the failure message.
+     * @param urlString   The URL the entities were fetched from.
+     */
+    static void verifyOrder(List<JSONObject> entities, List<EntityType.EntityProperty> properties, List<Comparator<Object>> comparators, boolean descending, String message, String urlString) {
+        for (int i = 1; i < entities.size(); i++) {
+            JSONObject previous = entities.get(i - 1);
+            JSONObject current = entities.get(i);
+            for (int p = 0; p < properties.size(); p++) {
+                String name = properties.get(p).name;
+                if (!previous.has(name) || !current.has(name)) {
+                    LOGGER.debug("Not checking the order at index {} of {}: property {} is missing.", i, urlString, name);
+                    break;
+                }
+                int compare;
+                try {
+                    compare = comparators.get(p).compare(previous.get(name), current.get(name));
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.info("Not checking the order at index {} of {}: {} for property {}.", i, urlString, ex.getMessage(), name);
+                    break;
+                }
+                if (descending) {
+                    compare = -compare;
+                }
+                Assert.assertTrue(compare <= 0, message + " orderby property " + name + " at index " + i + " of " + urlString);
+                if (compare != 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import de.fraunhofer.iosb.ilt.sta.ServiceFailureException;
+import de.fraunhofer.iosb.ilt.sta.model.Entity;
+import de.fraunhofer.iosb.ilt.sta.model.ObservedProperty;
+import de.fraunhofer.iosb.ilt.sta.model.Sensor;
+import de.fraunhofer.iosb.ilt.sta.service.SensorThingsService;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.opengis.cite.sta10.SuiteAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.ISuite;
+import org.testng.ITestContext;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlPackage;
+import org.testng.xml.XmlTest;
+
+/**
+ * Read-only entities that several test classes link their own fixtures to,
+ * like the Sensor and ObservedProperty of their Datastreams. Each part is
+ * created when the first consumer acquires it, and deleted when the last
+ * consumer declared with {@link UsesSharedDataset} released it, or at the end
+ * of the suite.
+ *
+ * Consumers must not change the shared entities. Test classes that do not
+ * consume the dataset may still delete everything on the service; a part that
+ * no longer exists is created again on the next acquire.
+ *
+ * @author scf
+ */
+public class SharedDataset {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedDataset.class);
+
+    /**
+     * The parts of the dataset.
+     */
+    public enum Part {
+        SENSOR,
+        OBSERVED_PROPERTY
+    }
+
+    private final SensorThingsService service;
+    private final Map<Part, Integer> references = new EnumMap<>(Part.class);
+    private final Map<Part, Entity<?>> entities = new EnumMap<>(Part.class);
+    private final Set<Class<?>> released = new HashSet<>();
+    private int creates = 0;
+    private int reuses = 0;
+
+    /**
+     * Creates a new, empty dataset.
+     *
+     * @param service The service to create the entities in.
+     */
+    public SharedDataset(SensorThingsService service) {
+        this.service = service;
+    }
+
+    /**
+     * Finds the shared dataset of the suite the given test context belongs
+     * to.
+     *
+     * @param testContext The test context.
+     * @return The shared dataset.
+     */
+    public static SharedDataset fromContext(ITestContext testContext) {
+        Object obj = testContext.getSuite().getAttribute(SuiteAttribute.SHARED_DATASET.getName());
+        if (obj == null) {
+            Assert.fail("Shared dataset not found in suite " + testContext.getSuite().getName() + ".");
+        }
+        return (SharedDataset) obj;
+    }
+
+    /**
+     * Counts the consumers of all test classes of the suite that are
+     * annotated with {@link UsesSharedDataset}.
+     *
+     * @param suite The suite to scan.
+     */
+    public synchronized void declareConsumers(ISuite suite) {
+        for (Class<?> testClass : testClassesOf(suite)) {
+            UsesSharedDataset uses = testClass.getAnnotation(UsesSharedDataset.class);
+            if (uses == null) {
+                continue;
+            }
+            for (Part part : uses.value()) {
+                references.merge(part, 1, Integer::sum);
+            }
+            LOGGER.debug("{} uses shared {}.", testClass.getSimpleName(), Arrays.toString(uses.value()));
+        }
+    }
+
+    /**
+     * Makes sure the parts the given consumer declared exist on the service.
+     *
+     * @param consumer The test class that uses the dataset.
+     */
+    public synchronized void acquire(Class<?> consumer) {
+        for (Part part : partsOf(consumer)) {
+            Entity<?> entity = entities.get(part);
+            if (entity != null && exists(part, entity)) {
+                reuses++;
+                continue;
+            }
+            entities.put(part, create(part));
+            creates++;
+        }
+    }
+
+    /**
+     * Releases the parts the given consumer declared. Parts without
+     * consumers are deleted. Releasing twice has no effect.
+     *
+     * @param consumer The test class that used the dataset.
+     */
+    public synchronized void release(Class<?> consumer) {
+        if (!released.add(consumer)) {
+            return;
+        }
+        for (Part part : partsOf(consumer)) {
+            int left = references.merge(part, -1, Integer::sum);
+            if (left <= 0) {
+                delete(part);
+            }
+        }
+    }
+
+    /**
+     * Deletes all parts, regardless of consumers.
+     */
+    public synchronized void close() {
+        for (Part part : Part.values()) {
+            delete(part);
+        }
+        LOGGER.info("Shared dataset: {} creates, {} reuses.", creates, reuses);
+    }
+
+    /**
+     * @return The shared Sensor. Only valid after {@link #acquire(Class)}.
+     */
+    public synchronized Sensor getSensor() {
+        return (Sensor) entities.get(Part.SENSOR);
+    }
+
+    /**
+     * @return The shared ObservedProperty. Only valid after
+     * {@link #acquire(Class)}.
+     */
+    public synchronized ObservedProperty getObservedProperty() {
+        return (ObservedProperty) entities.get(Part.OBSERVED_PROPERTY);
+    }
+
+    /**
+     * @return The urls of the ids of all shared entities that currently
+     * exist, for cleaning up everything else.
+     */
+    public synchronized Set<String> getIdUrls() {
+        Set<String> ids = new HashSet<>();
+        for (Entity<?> entity : entities.values()) {
+            ids.add(entity.getId().getUrl());
+        }
+        return ids;
+    }
+
+    private static Set<Class<?>> testClassesOf(ISuite suite) {
+        Set<Class<?>> result = new LinkedHashSet<>();
+        for (XmlTest test : suite.getXmlSuite().getTests()) {
+            List<XmlClass> xmlClasses = new ArrayList<>(test.getXmlClasses());
+            for (XmlPackage xmlPackage : test.getXmlPackages()) {
+                xmlClasses.addAll(xmlPackage.getXmlClasses());
+            }
+            for (XmlClass xmlClass : xmlClasses) {
+                Class<?> testClass = xmlClass.getSupportClass();
+                if (testClass != null) {
+                    result.add(testClass);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Part[] partsOf(Class<?> consumer) {
+        UsesSharedDataset uses = consumer.getAnnotation(UsesSharedDataset.class);
+        if (uses == null) {
+            Assert.fail(consumer.getName() + " does not declare the shared dataset it uses.");
+        }
+        return uses.value();
+    }
+
+    private Entity<?> create(Part part) {
+        // Writes through the FROST-Client bypass HTTPMethods.
+        HTTPMethods.getMemo().invalidate();
+        try {
+            switch (part) {
+                case SENSOR:
+                    Sensor sensor = new Sensor("Sensor 1", "The first sensor.", "text", "Some metadata.");
+                    service.create(sensor);
+                    return sensor;
+
+                case OBSERVED_PROPERTY:
+                    ObservedProperty obsProp = new ObservedProperty("Temperature", new URI("http://ucom.org/temperature"), "The temperature of the thing.");
+                    service.create(obsProp);
+                    return obsProp;
+
+                default:
+                    throw new IllegalArgumentException("Unknown part " + part);
+            }
+        } catch (ServiceFailureException | URISyntaxException ex) {
+            LOGGER.error("Failed to create shared " + part + ".", ex);
+            Assert.fail("Failed to create shared " + part + ".", ex);
+        }
+        return null;
+    }
+
+    private boolean exists(Part part, Entity<?> entity) {
+        try {
+            switch (part) {
+                case SENSOR:
+                    service.sensors().find(entity.getId());
+                    return true;
+
+                case OBSERVED_PROPERTY:
+                    service.observedProperties().find(entity.getId());
+                    return true;
+
+                default:
+                    return false;
+            }
+        } catch (ServiceFailureException ex) {
+            LOGGER.debug("Shared {} is gone, creating it again.", part);
+            return false;
+        }
+    }
+
+    private void delete(Part part) {
+        Entity<?> entity = entities.remove(part);
+        if (entity == null) {
+            return;
+        }
+        // Writes through the FROST-Client bypass HTTPMethods.
+        HTTPMethods.getMemo().invalidate();
+        try {
+            switch (part) {
+                case SENSOR:
+                    service.sensors().delete((Sensor) entity);
+                    break;
+
+                case OBSERVED_PROPERTY:
+                    service.observedProperties().delete((ObservedProperty) entity);
+                    break;
+
+                default:
+                    break;
+            }
+        } catch (ServiceFailureException ex) {
+            // Already deleted by a test class that cleans everything.
+            LOGGER.debug("Failed to delete shared {}: {}", part, ex.getMessage());
+        }
+    }
+}
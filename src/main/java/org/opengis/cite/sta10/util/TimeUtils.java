@@ -0,0 +1,330 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.joda.time.format.ISODateTimeFormat;
+import org.testng.Assert;
+
+/**
+ * Parsing and comparing of ISO-8601 instants and intervals, as used in
+ * SensorThings time properties. The common forms
+ * (yyyy-MM-ddTHH:mm[:ss[.fff]](Z|+HH:mm) and start/end intervals of those)
+ * are parsed directly into epoch milliseconds, without creating objects or
+ * throwing exceptions. The calendar fields and offsets are checked the way
+ * Joda-Time checks them. Other forms, like intervals with a duration or
+ * instants without an offset, which depend on the rules of the default time
+ * zone, are handed to Joda-Time.
+ *
+ * @author scf
+ */
+public class TimeUtils {
+
+    /**
+     * Returned by the parse methods when the text is not a supported instant.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private TimeUtils() {
+        // Utility class.
+    }
+
+    /**
+     * Parses an ISO-8601 instant into epoch milliseconds.
+     *
+     * @param text The text to parse.
+     * @return The epoch milliseconds, or {@link #INVALID}.
+     */
+    public static long parseInstant(CharSequence text) {
+        return parseInstant(text, 0, text.length(), false);
+    }
+
+    /**
+     * Parses the ISO-8601 instant in the given range of the text into epoch
+     * milliseconds. Fractions smaller than a millisecond are ignored. Instants
+     * without an offset are not supported.
+     *
+     * @param text  The text to parse.
+     * @param start The start of the instant in the text.
+     * @param end   The end (exclusive) of the instant in the text.
+     * @return The epoch milliseconds, or {@link #INVALID}.
+     */
+    public static long parseInstant(CharSequence text, int start, int end) {
+        return parseInstant(text, start, end, false);
+    }
+
+    /**
+     * Parses the ISO-8601 instant in the given range of the text into epoch
+     * milliseconds.
+     *
+     * @param text   The text to parse.
+     * @param start  The start of the instant in the text.
+     * @param end    The end (exclusive) of the instant in the text.
+     * @param strict true to only accept the complete form
+     *               yyyy-MM-ddTHH:mm:ss.SSS(Z|+HH:mm), as
+     *               ISODateTimeFormat.dateTime() does.
+     * @return The epoch milliseconds, or {@link #INVALID}.
+     */
+    private static long parseInstant(CharSequence text, int start, int end, boolean strict) {
+        // yyyy-MM-ddTHH:mm is the shortest form we handle.
+        if (end - start < 16) {
+            return INVALID;
+        }
+        int p = start;
+        int year = digits(text, p, 4);
+        if (year < 0 || text.charAt(p + 4) != '-') {
+            return INVALID;
+        }
+        p += 5;
+        int month = digits(text, p, 2);
+        if (month < 1 || month > 12 || text.charAt(p + 2) != '-') {
+            return INVALID;
+        }
+        p += 3;
+        int day = digits(text, p, 2);
+        char sep = text.charAt(p + 2);
+        if (day < 1 || day > daysInMonth(year, month)
+                || (sep != 'T' && sep != 't' && (strict || sep != ' '))) {
+            return INVALID;
+        }
+        p += 3;
+        int hour = digits(text, p, 2);
+        if (hour < 0 || hour > 23 || text.charAt(p + 2) != ':') {
+            return INVALID;
+        }
+        p += 3;
+        int minute = digits(text, p, 2);
+        if (minute < 0 || minute > 59) {
+            return INVALID;
+        }
+        p += 2;
+        int second = 0;
+        int millis = 0;
+        if (p < end && text.charAt(p) == ':') {
+            second = digits(text, p + 1, 2);
+            if (second < 0 || second > 59 || p + 3 > end) {
+                return INVALID;
+            }
+            p += 3;
+            if (strict && (p >= end || text.charAt(p) != '.')) {
+                return INVALID;
+            }
+            if (p < end && (text.charAt(p) == '.' || text.charAt(p) == ',')) {
+                p++;
+                int count = 0;
+                while (p < end && isDigit(text.charAt(p))) {
+                    if (count < 3) {
+                        millis = millis * 10 + (text.charAt(p) - '0');
+                    }
+                    count++;
+                    p++;
+                }
+                if (count == 0 || (strict && count > 9)) {
+                    return INVALID;
+                }
+                for (; count < 3; count++) {
+                    millis *= 10;
+                }
+            }
+        } else if (strict) {
+            return INVALID;
+        }
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L
+                + millis;
+        if (p == end) {
+            // No offset: the default time zone applies, with its daylight
+            // saving rules. Leave that to Joda-Time.
+            return INVALID;
+        }
+        char zone = text.charAt(p);
+        if ((zone == 'Z' || zone == 'z') && p + 1 == end) {
+            return local;
+        }
+        if (zone != '+' && zone != '-') {
+            return INVALID;
+        }
+        p++;
+        int offsetHours = digits(text, p, 2);
+        if (offsetHours < 0 || offsetHours > 23 || p + 2 > end) {
+            return INVALID;
+        }
+        p += 2;
+        if (p < end && text.charAt(p) == ':') {
+            p++;
+        }
+        int offsetMinutes = 0;
+        if (p < end) {
+            offsetMinutes = digits(text, p, 2);
+            if (offsetMinutes < 0 || offsetMinutes > 59 || p + 2 != end) {
+                return INVALID;
+            }
+        }
+        long offset = (offsetHours * 60L + offsetMinutes) * MILLIS_PER_MINUTE;
+        return zone == '+' ? local - offset : local + offset;
+    }
+
+    /**
+     * Checks if two time values, instants or intervals, denote the same time.
+     * Fails the test if one of the values can not be parsed as either.
+     *
+     * @param val1 The first time value.
+     * @param val2 The second time value.
+     * @return true if both values denote the same instant or interval.
+     */
+    public static boolean timeEquals(String val1, String val2) {
+        if (val1.equals(val2)) {
+            return true;
+        }
+        int slash1 = val1.indexOf('/');
+        int slash2 = val2.indexOf('/');
+        if (slash1 < 0 && slash2 < 0) {
+            long t1 = parseInstant(val1);
+            long t2 = parseInstant(val2);
+            if (t1 != INVALID && t2 != INVALID) {
+                return t1 == t2;
+            }
+        } else if (slash1 >= 0 && slash2 >= 0) {
+            long s1 = parseInstant(val1, 0, slash1);
+            long e1 = parseInstant(val1, slash1 + 1, val1.length());
+            long s2 = parseInstant(val2, 0, slash2);
+            long e2 = parseInstant(val2, slash2 + 1, val2.length());
+            if (s1 != INVALID && e1 != INVALID && s2 != INVALID && e2 != INVALID) {
+                return s1 == s2 && e1 == e2;
+            }
+        }
+        return timeEqualsJoda(val1, val2);
+    }
+
+    /**
+     * Compares two time values the way Joda-Time does. This is the slow path
+     * for forms the fast parser does not handle.
+     *
+     * @param val1 The first time value.
+     * @param val2 The second time value.
+     * @return true if both values denote the same instant or interval.
+     */
+    public static boolean timeEqualsJoda(String val1, String val2) {
+        try {
+            DateTime dateTime1 = DateTime.parse(val1);
+            DateTime dateTime2 = DateTime.parse(val2);
+            return dateTime1.isEqual(dateTime2);
+        } catch (Exception ex) {
+            // do nothing
+        }
+        try {
+            Interval interval1 = Interval.parse(val1);
+            Interval interval2 = Interval.parse(val2);
+            return interval1.isEqual(interval2);
+        } catch (Exception ex) {
+            Assert.fail("time properies could neither be parsed as time nor as interval");
+        }
+        return false;
+    }
+
+    /**
+     * Parses an instant, failing the test if it can not be parsed.
+     *
+     * @param text The text to parse.
+     * @return The epoch milliseconds.
+     */
+    public static long parseInstantOrFail(String text) {
+        long result = parseInstant(text);
+        if (result == INVALID) {
+            try {
+                result = DateTime.parse(text).getMillis();
+            } catch (IllegalArgumentException ex) {
+                Assert.fail("Could not parse '" + text + "' as time.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses an instant in the complete form of ISODateTimeFormat.dateTime(),
+     * yyyy-MM-ddTHH:mm:ss.SSS(Z|+HH:mm), failing the test if it is not in that
+     * form. In particular, an instant without an offset fails.
+     *
+     * @param text The text to parse.
+     * @return The epoch milliseconds.
+     */
+    public static long parseDateTimeOrFail(String text) {
+        long result = parseInstant(text, 0, text.length(), true);
+        if (result == INVALID) {
+            try {
+                result = ISODateTimeFormat.dateTime().parseMillis(text);
+            } catch (IllegalArgumentException ex) {
+                Assert.fail("Could not parse '" + text + "' as a date and time with offset: " + ex.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parses a fixed number of digits, returning -1 if there are not enough
+     * digits.
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * The number of days since 1970-01-01 of the given proleptic Gregorian
+     * date.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
@@ -99,6 +99,8 @@ public class Utils {
     }
 
     public static <T extends Entity<T>> void deleteAll(BaseDao<T> doa) throws ServiceFailureException {
+        // Writes through the FROST-Client bypass HTTPMethods.
+        HTTPMethods.getMemo().invalidate();
         boolean more = true;
         int count = 0;
         while (more) {
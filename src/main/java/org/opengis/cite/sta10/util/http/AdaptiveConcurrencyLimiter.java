@@ -0,0 +1,370 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+
+/**
+ * Limits the number of requests in flight using additive increase,
+ * multiplicative decrease (AIMD). The limit grows by about one for each round
+ * trip in which all slots were in use and the latency stayed close to the
+ * baseline, and is cut when the latency inflates or the server answers with
+ * 429 (Too Many Requests) or 503 (Service Unavailable).
+ *
+ * Requests of different kinds take very different times, so the baseline is
+ * kept per request class, for instance the HTTP method with the URL template:
+ * it is the lowest latency among the recent requests of that class. The limit
+ * is cut at most once per smoothed round trip time over all requests.
+ *
+ * Sequential code never has more than one request in flight and is not
+ * affected by the limit. Code that wants to send requests in parallel can hand
+ * its tasks to {@link #runAll(Collection)}.
+ *
+ * @author scf
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    /**
+     * Latency above this factor times the baseline counts as inflated.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /**
+     * The factor the limit is multiplied with on back-off.
+     */
+    private static final double BACKOFF_RATIO = 0.7;
+    /**
+     * The number of recent requests of a class the baseline is the minimum
+     * of.
+     */
+    private static final int BASELINE_WINDOW = 16;
+    /**
+     * The number of requests of a class needed before its latency is judged.
+     */
+    private static final int MIN_SAMPLES = 3;
+    /**
+     * The weight of a new sample in the smoothed round trip time.
+     */
+    private static final double RTT_SMOOTHING = 0.125;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long startTime = System.nanoTime();
+
+    private double limit;
+    private int inFlight = 0;
+    /**
+     * The number of times all slots were in use.
+     */
+    private long saturations = 0;
+    private double smoothedRttNanos = 0;
+    private long lastBackoff = 0;
+    private final Map<String, RecentLatencies> baselines = new HashMap<>();
+    private final List<LimitChange> history = new ArrayList<>();
+
+    /**
+     * Creates a new limiter.
+     *
+     * @param initialLimit The limit to start with.
+     * @param maxLimit     The limit will never grow beyond this value.
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit) {
+        this(initialLimit, 1, maxLimit);
+    }
+
+    /**
+     * Creates a new limiter. With minLimit equal to maxLimit the limit is
+     * fixed.
+     *
+     * @param initialLimit The limit to start with.
+     * @param minLimit     The limit will never shrink below this value.
+     * @param maxLimit     The limit will never grow beyond this value.
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit));
+        history.add(new LimitChange(0, (int) limit));
+    }
+
+    /**
+     * Blocks until there is room for another request. The returned slot must
+     * be closed when the response has been received.
+     *
+     * @return The slot for the request.
+     */
+    public Slot acquire() {
+        return acquire("");
+    }
+
+    /**
+     * Blocks until there is room for another request. The returned slot must
+     * be closed when the response has been received.
+     *
+     * @param requestClass The class of the request, for instance the HTTP
+     *                     method and URL template. The latency of a request
+     *                     is only compared to that of requests of the same
+     *                     class.
+     * @return The slot for the request.
+     */
+    public synchronized Slot acquire(String requestClass) {
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        inFlight++;
+        long saturationsAtStart = saturations;
+        if (inFlight >= (int) limit) {
+            saturations++;
+        }
+        return new Slot(requestClass, System.nanoTime(), saturationsAtStart);
+    }
+
+    private synchronized void release(String requestClass, long now, long latency, int responseCode, long saturationsAtStart) {
+        // Only a limit that was fully used while the request was in flight
+        // says anything about the capacity.
+        boolean saturated = saturations > saturationsAtStart;
+        inFlight--;
+        int oldLimit = (int) limit;
+        boolean overloaded = responseCode == 429 || responseCode == 503;
+        boolean inflated = false;
+        if (!overloaded && latency > 0) {
+            RecentLatencies recent = baselines.computeIfAbsent(requestClass, k -> new RecentLatencies());
+            inflated = recent.isInflated(latency);
+            recent.add(latency);
+            smoothedRttNanos = smoothedRttNanos == 0
+                    ? latency
+                    : smoothedRttNanos + RTT_SMOOTHING * (latency - smoothedRttNanos);
+        }
+        if (overloaded || inflated) {
+            // Back off at most once per round trip, all requests that were
+            // already in flight saw the same congestion.
+            if (lastBackoff == 0 || now - lastBackoff > smoothedRttNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                lastBackoff = now;
+            }
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        int newLimit = (int) limit;
+        if (newLimit != oldLimit) {
+            history.add(new LimitChange(now - startTime, newLimit));
+            LOGGER.debug("Concurrency limit changed from {} to {}.", oldLimit, newLimit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return The current concurrency limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return The maximum concurrency limit.
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return A copy of the changes of the limit over time.
+     */
+    public synchronized List<LimitChange> getHistory() {
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * @return A one-line summary of the limit over time, in the form
+     * "time(s)=limit".
+     */
+    public synchronized String getHistorySummary() {
+        StringBuilder sb = new StringBuilder("Concurrency limit over time:");
+        for (LimitChange change : history) {
+            sb.append(' ')
+                    .append(String.format("%.1f", change.getOffsetNanos() / 1e9))
+                    .append("s=")
+                    .append(change.getLimit());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the given tasks in parallel, with at most {@link #getMaxLimit()}
+     * threads. The requests the tasks send are further limited by the current
+     * limit. Waits until all tasks are done. Failures of the tasks are
+     * re-thrown, after all tasks finished.
+     *
+     * @param tasks The tasks to run.
+     */
+    public void runAll(Collection<? extends Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (tasks.size() == 1 || maxLimit == 1) {
+            tasks.forEach(Runnable::run);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxLimit, tasks.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            Throwable failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    Assert.fail("Interrupted while waiting for parallel requests.", ex);
+                }
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                Assert.fail("Parallel request failed.", failure);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The latencies of the most recent requests of one request class.
+     */
+    private static class RecentLatencies {
+
+        private final long[] latencies = new long[BASELINE_WINDOW];
+        private int count = 0;
+
+        public void add(long latency) {
+            latencies[count % BASELINE_WINDOW] = latency;
+            count++;
+        }
+
+        public boolean isInflated(long latency) {
+            if (count < MIN_SAMPLES) {
+                return false;
+            }
+            long baseline = Long.MAX_VALUE;
+            for (int i = 0; i < Math.min(count, BASELINE_WINDOW); i++) {
+                baseline = Math.min(baseline, latencies[i]);
+            }
+            return latency > baseline * LATENCY_TOLERANCE;
+        }
+    }
+
+    /**
+     * One change of the concurrency limit.
+     */
+    public static class LimitChange {
+
+        private final long offsetNanos;
+        private final int limit;
+
+        public LimitChange(long offsetNanos, int limit) {
+            this.offsetNanos = offsetNanos;
+            this.limit = limit;
+        }
+
+        /**
+         * @return The time since the limiter was created, in nanoseconds.
+         */
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        /**
+         * @return The limit from this time on.
+         */
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    /**
+     * A slot for one request in flight. The response code should be set
+     * before the slot is closed, so that overload responses can be taken into
+     * account.
+     */
+    public class Slot implements AutoCloseable {
+
+        private final String requestClass;
+        private final long start;
+        private final long saturationsAtStart;
+        private int responseCode = -1;
+        private boolean closed = false;
+
+        private Slot(String requestClass, long start, long saturationsAtStart) {
+            this.requestClass = requestClass;
+            this.start = start;
+            this.saturationsAtStart = saturationsAtStart;
+        }
+
+        /**
+         * @param responseCode The HTTP response code of the request.
+         */
+        public void setResponseCode(int responseCode) {
+            this.responseCode = responseCode;
+        }
+
+        @Override
+        public void close() {
+            close(System.nanoTime() - start);
+        }
+
+        /**
+         * Closes the slot as if the request took the given time.
+         *
+         * @param latency The latency of the request, in nanoseconds.
+         */
+        void close(long latency) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(requestClass, System.nanoTime(), latency, responseCode, saturationsAtStart);
+        }
+    }
+}
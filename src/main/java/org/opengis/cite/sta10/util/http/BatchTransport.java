@@ -0,0 +1,347 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends groups of independent requests as OData JSON $batch requests, as
+ * defined in SensorThings API 1.1. Writes in one call to
+ * {@link #execute(List)} are sent as a single change set (atomicity group),
+ * reads are sent outside of change sets. The responses are handed back to
+ * each {@link Call} in the same map format that {@link HTTPMethods} returns.
+ *
+ * If the service root does not advertise batch support, or the service
+ * rejects a batch request, each call is sent individually through
+ * {@link HTTPMethods} instead, so callers never have to check.
+ *
+ * @author scf
+ */
+public class BatchTransport {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchTransport.class);
+
+    /**
+     * The part of the conformance class URI that indicates batch support.
+     */
+    private static final String BATCH_CONFORMANCE = "batch-request";
+
+    /**
+     * One request in a batch.
+     */
+    public static class Call {
+
+        private final String method;
+        private final String urlString;
+        private final String body;
+        private Map<String, Object> response;
+
+        private Call(String method, String urlString, String body) {
+            this.method = method;
+            this.urlString = urlString;
+            this.body = body;
+        }
+
+        public static Call get(String urlString) {
+            return new Call("get", urlString, null);
+        }
+
+        public static Call post(String urlString, String body) {
+            return new Call("post", urlString, body);
+        }
+
+        public static Call put(String urlString, String body) {
+            return new Call("put", urlString, body);
+        }
+
+        public static Call patch(String urlString, String body) {
+            return new Call("patch", urlString, body);
+        }
+
+        public static Call delete(String urlString) {
+            return new Call("delete", urlString, null);
+        }
+
+        /**
+         * @return true if this call changes data on the service.
+         */
+        public boolean isWrite() {
+            return !"get".equals(method);
+        }
+
+        /**
+         * @return The response-code and response of the call, in the format
+         * of HTTPMethods, or null if the call has not been executed.
+         */
+        public Map<String, Object> getResponse() {
+            return response;
+        }
+
+        /**
+         * @return The response code, or -1 if there is no response.
+         */
+        public int getResponseCode() {
+            if (response == null || response.get("response-code") == null) {
+                return -1;
+            }
+            return Integer.parseInt(response.get("response-code").toString());
+        }
+
+        @Override
+        public String toString() {
+            return method.toUpperCase() + " " + urlString;
+        }
+    }
+
+    private final String rootUri;
+    private final int maxSize;
+    private volatile boolean supported;
+    private long batches = 0;
+    private long batchedCalls = 0;
+    private long individualCalls = 0;
+
+    /**
+     * Creates a transport that sends every call individually.
+     */
+    public BatchTransport() {
+        this(null, false, 0);
+    }
+
+    /**
+     * Creates a new transport.
+     *
+     * @param rootUri   The root URI of the service, without trailing slash.
+     * @param supported true if the service supports $batch.
+     * @param maxSize   The maximum number of calls in one batch, 0 or less to
+     *                  never use $batch.
+     */
+    public BatchTransport(String rootUri, boolean supported, int maxSize) {
+        this.rootUri = rootUri;
+        this.maxSize = maxSize;
+        this.supported = supported && maxSize > 0 && rootUri != null;
+    }
+
+    /**
+     * Checks if the given service root document lists the batch-request
+     * conformance class in its serverSettings.
+     *
+     * @param rootResponse The service root document.
+     * @return true if batch requests are advertised.
+     */
+    public static boolean isAdvertised(String rootResponse) {
+        if (rootResponse == null) {
+            return false;
+        }
+        try {
+            JSONObject settings = new JSONObject(rootResponse).optJSONObject("serverSettings");
+            if (settings == null) {
+                return false;
+            }
+            JSONArray conformance = settings.optJSONArray("conformance");
+            if (conformance == null) {
+                return false;
+            }
+            for (int i = 0; i < conformance.length(); i++) {
+                if (conformance.optString(i, "").contains(BATCH_CONFORMANCE)) {
+                    return true;
+                }
+            }
+        } catch (JSONException ex) {
+            LOGGER.debug("Service root is not valid JSON: {}", ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * @return true if calls are sent as $batch requests.
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Executes the given independent calls. The writes among them are sent
+     * in one change set per batch. After this method returns, each call has
+     * its response.
+     *
+     * @param calls The calls to execute.
+     */
+    public void execute(List<Call> calls) {
+        for (int start = 0; start < calls.size(); start += Math.max(maxSize, 1)) {
+            List<Call> chunk = calls.subList(start, Math.min(calls.size(), start + Math.max(maxSize, 1)));
+            if (!supported || chunk.size() == 1 || !sendBatch(chunk)) {
+                sendIndividually(chunk);
+            }
+        }
+    }
+
+    private void sendIndividually(List<Call> calls) {
+        for (Call call : calls) {
+            switch (call.method) {
+                case "get":
+                    call.response = HTTPMethods.doGet(call.urlString);
+                    break;
+                case "post":
+                    call.response = HTTPMethods.doPost(call.urlString, call.body);
+                    break;
+                case "put":
+                    call.response = HTTPMethods.doPut(call.urlString, call.body);
+                    break;
+                case "patch":
+                    call.response = HTTPMethods.doPatch(call.urlString, call.body);
+                    break;
+                case "delete":
+                    call.response = HTTPMethods.doDelete(call.urlString);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown method " + call.method);
+            }
+        }
+        synchronized (this) {
+            individualCalls += calls.size();
+        }
+    }
+
+    /**
+     * Sends the calls as one batch request.
+     *
+     * @return false if the service did not accept the batch, in which case
+     * no call has a response yet.
+     */
+    private boolean sendBatch(List<Call> calls) {
+        boolean writes = false;
+        String batchBody;
+        try {
+            JSONArray requests = new JSONArray();
+            for (int i = 0; i < calls.size(); i++) {
+                Call call = calls.get(i);
+                JSONObject request = new JSONObject()
+                        .put("id", "r" + i)
+                        .put("method", call.method)
+                        .put("url", relativeUrl(call.urlString));
+                if (call.body != null) {
+                    request.put("body", new JSONObject(call.body));
+                }
+                if (call.isWrite()) {
+                    request.put("atomicityGroup", "changeset");
+                    writes = true;
+                }
+                requests.put(request);
+            }
+            batchBody = new JSONObject().put("requests", requests).toString();
+        } catch (JSONException ex) {
+            LOGGER.warn("Can not batch calls with non-JSON bodies: {}", ex.getMessage());
+            return false;
+        }
+        if (writes) {
+            HTTPMethods.getMemo().invalidate();
+        }
+        Map<String, Object> batchResponse = HTTPMethods.doBatch(rootUri + "/$batch", batchBody);
+        int responseCode = batchResponse == null ? -1 : Integer.parseInt(batchResponse.get("response-code").toString());
+        if (responseCode != 200) {
+            LOGGER.warn("Service rejected $batch with response code {}, sending requests individually from now on.", responseCode);
+            supported = false;
+            return false;
+        }
+        try {
+            JSONArray responses = new JSONObject(batchResponse.get("response").toString()).getJSONArray("responses");
+            Map<String, JSONObject> byId = new HashMap<>();
+            for (int i = 0; i < responses.length(); i++) {
+                JSONObject response = responses.getJSONObject(i);
+                byId.put(response.getString("id"), response);
+            }
+            List<Call> missing = new ArrayList<>();
+            for (int i = 0; i < calls.size(); i++) {
+                JSONObject response = byId.get("r" + i);
+                if (response == null) {
+                    missing.add(calls.get(i));
+                    continue;
+                }
+                calls.get(i).response = toResponseMap(response);
+            }
+            if (!missing.isEmpty()) {
+                LOGGER.warn("Batch response lacks {} of {} responses, sending those individually.", missing.size(), calls.size());
+                sendIndividually(missing);
+            }
+        } catch (JSONException ex) {
+            LOGGER.warn("Invalid $batch response, sending requests individually from now on: {}", ex.getMessage());
+            supported = false;
+            return false;
+        }
+        synchronized (this) {
+            batches++;
+            batchedCalls += calls.size();
+        }
+        return true;
+    }
+
+    private String relativeUrl(String urlString) {
+        if (urlString.startsWith(rootUri + "/")) {
+            return urlString.substring(rootUri.length() + 1);
+        }
+        return urlString;
+    }
+
+    /**
+     * Converts one response of a batch into the format of HTTPMethods: for a
+     * created entity the response is its location, for other successful
+     * requests the response body, and empty otherwise.
+     */
+    private static Map<String, Object> toResponseMap(JSONObject response) throws JSONException {
+        Map<String, Object> result = new HashMap<>();
+        int status = response.getInt("status");
+        result.put("response-code", status);
+        JSONObject headers = response.optJSONObject("headers");
+        String location = null;
+        if (headers != null) {
+            for (String name : headers.keySet()) {
+                if ("location".equalsIgnoreCase(name)) {
+                    location = headers.getString(name);
+                }
+            }
+        }
+        Object body = response.opt("body");
+        if (status == 201 && location != null) {
+            result.put("response", location);
+        } else if (status >= 200 && status < 300 && body != null) {
+            result.put("response", body.toString());
+        } else {
+            result.put("response", "");
+        }
+        return result;
+    }
+
+    /**
+     * @return A one-line summary of the use of $batch.
+     */
+    public synchronized String getStatistics() {
+        return "Batch: " + batchedCalls + " requests in " + batches + " batches, "
+                + individualCalls + " sent individually"
+                + (supported ? "." : " ($batch not used).");
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.http;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.Assert;
+
+/**
+ * Client-side limits for the requests the suite sends to the service under
+ * test. Combines a token bucket (requests per second with a burst size), a cap
+ * on the number of concurrent requests and a global request budget for the
+ * whole run. All limits are optional, a value of 0 or less disables a limit.
+ *
+ * The time a request spends waiting for a permit is tracked separately from
+ * the time the server takes to answer, so throttling does not show up as
+ * server latency.
+ *
+ * @author scf
+ */
+public class RequestThrottle {
+
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxConcurrency;
+    private final Semaphore concurrency;
+    private final long requestBudget;
+
+    private double tokens;
+    private long lastRefill;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong serviceNanos = new AtomicLong();
+    private final AtomicLong maxServiceNanos = new AtomicLong();
+
+    /**
+     * Creates a throttle that does not limit anything, but still collects
+     * timing statistics.
+     */
+    public RequestThrottle() {
+        this(0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a new throttle.
+     *
+     * @param requestsPerSecond The sustained number of requests per second,
+     *                          0 for no rate limit.
+     * @param burst             The number of requests that may be sent
+     *                          without delay after an idle period. Values
+     *                          below 1 are treated as 1.
+     * @param maxConcurrency    The maximum number of requests in flight at the
+     *                          same time, 0 for no limit.
+     * @param requestBudget     The maximum number of requests for the entire
+     *                          run, 0 for no limit.
+     */
+    public RequestThrottle(double requestsPerSecond, int burst, int maxConcurrency, long requestBudget) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxConcurrency = Math.max(0, maxConcurrency);
+        this.concurrency = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
+        this.requestBudget = requestBudget;
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the request may be sent. The returned permit must be closed
+     * when the response has been received.
+     *
+     * @return The permit for the request.
+     */
+    public Permit acquire() {
+        long count = requestCount.incrementAndGet();
+        if (requestBudget > 0 && count > requestBudget) {
+            Assert.fail("The request budget of " + requestBudget + " requests for this run is exhausted.");
+        }
+        long start = System.nanoTime();
+        long delay = reserveToken(start);
+        if (delay > 0) {
+            sleepNanos(delay);
+        }
+        if (concurrency != null) {
+            concurrency.acquireUninterruptibly();
+        }
+        long granted = System.nanoTime();
+        long waited = granted - start;
+        waitNanos.addAndGet(waited);
+        updateMax(maxWaitNanos, waited);
+        return new Permit(granted, waited);
+    }
+
+    /**
+     * Takes a permit if the request may be sent right away, without waiting
+     * for the rate limit or the concurrency limit. The returned permit must
+     * be closed when the response has been received.
+     *
+     * @return The permit for the request, or null if the request may not be
+     * sent yet.
+     */
+    public Permit tryAcquire() {
+        long count = requestCount.incrementAndGet();
+        if (requestBudget > 0 && count > requestBudget) {
+            Assert.fail("The request budget of " + requestBudget + " requests for this run is exhausted.");
+        }
+        if (!tryTakeToken(System.nanoTime())) {
+            requestCount.decrementAndGet();
+            return null;
+        }
+        if (concurrency != null && !concurrency.tryAcquire()) {
+            returnToken();
+            requestCount.decrementAndGet();
+            return null;
+        }
+        return new Permit(System.nanoTime(), 0);
+    }
+
+    /**
+     * Takes a token from the bucket, returning the number of nanoseconds the
+     * caller has to wait before the token is valid. Tokens are reserved, so
+     * the bucket can go negative, which queues callers in arrival order.
+     */
+    private synchronized long reserveToken(long now) {
+        if (requestsPerSecond <= 0) {
+            return 0;
+        }
+        double refill = (now - lastRefill) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(burst, tokens + refill);
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    }
+
+    /**
+     * Takes a token from the bucket only if one is available now, so callers
+     * that reserved a token earlier are not overtaken.
+     */
+    private synchronized boolean tryTakeToken(long now) {
+        if (requestsPerSecond <= 0) {
+            return true;
+        }
+        double refill = (now - lastRefill) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(burst, tokens + refill);
+        lastRefill = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    private synchronized void returnToken() {
+        if (requestsPerSecond > 0) {
+            tokens = Math.min(burst, tokens + 1);
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private void release(long serviceTime) {
+        serviceNanos.addAndGet(serviceTime);
+        updateMax(maxServiceNanos, serviceTime);
+        if (concurrency != null) {
+            concurrency.release();
+        }
+    }
+
+    /**
+     * @return The maximum number of requests in flight, 0 for no limit.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public long getServiceMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(serviceNanos.get());
+    }
+
+    /**
+     * @return A one-line summary of the requests sent through this throttle.
+     */
+    public String getStatistics() {
+        long count = requestCount.get();
+        long avgService = count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(serviceNanos.get() / count);
+        return "Requests: " + count
+                + (requestBudget > 0 ? " of " + requestBudget : "")
+                + ", queue wait: " + getWaitMillis() + " ms total, "
+                + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()) + " ms max"
+                + ", server time: " + getServiceMillis() + " ms total, "
+                + avgService + " ms avg, "
+                + TimeUnit.NANOSECONDS.toMillis(maxServiceNanos.get()) + " ms max.";
+    }
+
+    /**
+     * The permission to send one request. Closing the permit records the time
+     * the server took and frees the concurrency slot. The server time starts
+     * when the permit is granted, or, if the request still had to wait for
+     * something else, when {@link #markSent()} is called.
+     */
+    public class Permit implements AutoCloseable {
+
+        private long granted;
+        private final long waited;
+        private boolean closed = false;
+
+        private Permit(long granted, long waited) {
+            this.granted = granted;
+            this.waited = waited;
+        }
+
+        /**
+         * @return The time in nanoseconds the request waited for this permit.
+         */
+        public long getWaitNanos() {
+            return waited;
+        }
+
+        /**
+         * Marks the request as sent, so that the time it waited after the
+         * permit was granted does not count as server time.
+         *
+         * @return The value of System.nanoTime() at which it was sent.
+         */
+        public long markSent() {
+            granted = System.nanoTime();
+            return granted;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(System.nanoTime() - granted);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.http;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the responses of GET requests while the data on the server is
+ * known not to change. A test class that set up its fixture starts an epoch
+ * with {@link #beginEpoch(String)}. Until the epoch ends, successful GET
+ * responses are kept in a bounded LRU map and repeated GETs of the same URL
+ * are answered from it. Any write ends the epoch and empties the memo, so a
+ * memoized response is never older than the last write.
+ *
+ * Writes are only seen when they go through HTTPMethods, the MQTT helpers, or
+ * the FROST-Client clean-up and shared dataset helpers in EntityUtils, Utils
+ * and SharedDataset, which invalidate the memo themselves. A test class that
+ * writes through a SensorThingsService directly must not begin an epoch.
+ *
+ * Outside of an epoch nothing is memoized.
+ *
+ * @author scf
+ */
+public class ResponseMemo {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseMemo.class);
+
+    private final int maxSize;
+    private final Map<String, Map<String, Object>> responses;
+
+    private String epochName;
+    private long epochs = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a new memo.
+     *
+     * @param maxSize The maximum number of responses to keep, 0 or less to
+     *                disable the memo.
+     */
+    public ResponseMemo(int maxSize) {
+        this.maxSize = maxSize;
+        this.responses = new LinkedHashMap<String, Map<String, Object>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+                if (size() > ResponseMemo.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return true if the memo can be used at all.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Starts an epoch in which the data on the server does not change. Only
+     * call this from test classes that do not write through a
+     * SensorThingsService directly, since those writes do not end the epoch.
+     *
+     * @param name The name of the epoch, for logging, usually the name of the
+     *             test class that owns the fixture.
+     */
+    public synchronized void beginEpoch(String name) {
+        if (!isEnabled()) {
+            return;
+        }
+        responses.clear();
+        epochName = name;
+        epochs++;
+        LOGGER.debug("Response memo epoch started: {}", name);
+    }
+
+    /**
+     * Ends the current epoch, if any, and forgets all responses.
+     */
+    public synchronized void endEpoch() {
+        if (epochName != null) {
+            LOGGER.debug("Response memo epoch ended: {}", epochName);
+        }
+        epochName = null;
+        responses.clear();
+    }
+
+    /**
+     * Signals that data on the server changed. Ends the current epoch.
+     */
+    public void invalidate() {
+        endEpoch();
+    }
+
+    /**
+     * @return true if an epoch is active.
+     */
+    public synchronized boolean isActive() {
+        return epochName != null;
+    }
+
+    /**
+     * Finds the memoized response for the given URL.
+     *
+     * @param urlString The URL of the GET request.
+     * @return A copy of the response, or null if not memoized.
+     */
+    public synchronized Map<String, Object> get(String urlString) {
+        if (epochName == null) {
+            return null;
+        }
+        Map<String, Object> response = responses.get(urlString);
+        if (response == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new HashMap<>(response);
+    }
+
+    /**
+     * Memoizes a response, if an epoch is active and the response was
+     * successful.
+     *
+     * @param urlString The URL of the GET request.
+     * @param response  The response map, as returned by HTTPMethods.
+     */
+    public synchronized void put(String urlString, Map<String, Object> response) {
+        if (epochName == null || response == null) {
+            return;
+        }
+        Object code = response.get("response-code");
+        if (code == null || !"200".equals(code.toString())) {
+            return;
+        }
+        responses.put(urlString, new HashMap<>(response));
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return A one-line summary of the memo usage.
+     */
+    public synchronized String getStatistics() {
+        if (!isEnabled()) {
+            return "GET memo: disabled.";
+        }
+        long total = hits + misses;
+        long hitRate = total == 0 ? 0 : hits * 100 / total;
+        return "GET memo: " + hits + " hits, " + misses + " misses (" + hitRate + "% hit rate), "
+                + evictions + " evictions, " + epochs + " epochs.";
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.mqtt;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.http.RequestThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+
+/**
+ * Publishes messages on one persistent connection without waiting for each
+ * to be delivered. At most a window of messages is in flight: when the
+ * window is full, publishing blocks until the broker confirms an earlier
+ * message, or, with {@link #tryPublish(String, byte[], int)}, returns without
+ * publishing. The same holds for the limits of the request throttle.
+ * {@link #flush()} waits until all messages are confirmed.
+ *
+ * @author scf
+ */
+public class AsyncPublisher implements AutoCloseable {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPublisher.class);
+
+    private final MqttConnection connection;
+    private final int windowSize;
+    private final Semaphore window;
+    private final long timeout;
+    private final Set<IMqttDeliveryToken> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * Connects a new publisher.
+     *
+     * @param serverUri  The MQTT endpoint.
+     * @param clientId   The unique client id.
+     * @param timeout    The time to wait for room in the window, or for a
+     *                   flush, in milliseconds.
+     * @param windowSize The maximum number of unconfirmed messages.
+     */
+    public AsyncPublisher(String serverUri, String clientId, long timeout, int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+        this.window = new Semaphore(this.windowSize);
+        this.timeout = timeout;
+        // Paho refuses publishes beyond its in-flight limit, so it must fit the window.
+        this.connection = new MqttConnection(serverUri, clientId, timeout, this.windowSize).connect(true);
+    }
+
+    /**
+     * Publishes a message, blocking only if the window is full.
+     *
+     * @param topic   The topic to publish on.
+     * @param payload The message.
+     * @param qos     The QoS to publish with.
+     * @return The token of the delivery.
+     */
+    public IMqttDeliveryToken publish(String topic, byte[] payload, int qos) {
+        checkFailure();
+        try {
+            if (!window.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                Assert.fail("No MQTT delivery confirmed within " + timeout + " ms, " + windowSize + " messages in flight.");
+            }
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting to publish on MQTT.", ex);
+        }
+        RequestThrottle.Permit permit;
+        try {
+            permit = HTTPMethods.getThrottle().acquire();
+        } catch (RuntimeException | Error ex) {
+            // For instance an exhausted request budget: nothing is in flight.
+            window.release();
+            throw ex;
+        }
+        return send(topic, payload, qos, permit);
+    }
+
+    /**
+     * Publishes a message if the window has room and the request throttle
+     * allows it right away, without waiting for either.
+     *
+     * @param topic   The topic to publish on.
+     * @param payload The message.
+     * @param qos     The QoS to publish with.
+     * @return The token of the delivery, or null if the window is full or
+     * the throttle refused, and the message was not published.
+     */
+    public IMqttDeliveryToken tryPublish(String topic, byte[] payload, int qos) {
+        checkFailure();
+        if (!window.tryAcquire()) {
+            return null;
+        }
+        RequestThrottle.Permit permit;
+        try {
+            permit = HTTPMethods.getThrottle().tryAcquire();
+        } catch (RuntimeException | Error ex) {
+            window.release();
+            throw ex;
+        }
+        if (permit == null) {
+            window.release();
+            return null;
+        }
+        return send(topic, payload, qos, permit);
+    }
+
+    /**
+     * Sends a message, for which a window permit and a throttle permit are
+     * held. Publishes count against the same limits as HTTP requests, until
+     * confirmed.
+     */
+    private IMqttDeliveryToken send(String topic, byte[] payload, int qos, RequestThrottle.Permit permit) {
+        maxInFlight.accumulateAndGet(windowSize - window.availablePermits(), Math::max);
+        // Publishes may create entities, memoized GETs are no longer valid.
+        HTTPMethods.getMemo().invalidate();
+        IMqttActionListener listener = new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken token) {
+                completed(token, permit);
+            }
+
+            @Override
+            public void onFailure(IMqttToken token, Throwable exception) {
+                LOGGER.error("MQTT publish on {} failed: {}", topic, exception.getMessage());
+                failure.compareAndSet(null, exception);
+                completed(token, permit);
+            }
+        };
+        try {
+            IMqttDeliveryToken token = connection.getClient().publish(topic, payload, qos, false, null, listener);
+            published.incrementAndGet();
+            HTTPMethods.getMetrics().recordMqttPublish(topic);
+            pending.add(token);
+            if (token.isComplete()) {
+                pending.remove(token);
+            }
+            return token;
+        } catch (MqttException ex) {
+            permit.close();
+            window.release();
+            Assert.fail("error publishing message on MQTT", ex);
+            return null;
+        }
+    }
+
+    private void completed(IMqttToken token, RequestThrottle.Permit permit) {
+        pending.remove((IMqttDeliveryToken) token);
+        permit.close();
+        window.release();
+    }
+
+    private void checkFailure() {
+        Throwable exception = failure.get();
+        if (exception != null) {
+            Assert.fail("error publishing message on MQTT", exception);
+        }
+    }
+
+    /**
+     * Waits until the broker confirmed all published messages.
+     */
+    public void flush() {
+        try {
+            if (!window.tryAcquire(windowSize, timeout, TimeUnit.MILLISECONDS)) {
+                Assert.fail(pending.size() + " MQTT messages not confirmed within " + timeout + " ms.");
+            }
+            window.release(windowSize);
+        } catch (InterruptedException ex) {
+            Assert.fail("Interrupted while waiting for MQTT deliveries.", ex);
+        }
+        checkFailure();
+    }
+
+    /**
+     * @return The number of messages published.
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return The largest number of messages that were in flight at once.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Waits for outstanding deliveries and disconnects.
+     */
+    @Override
+    public void close() {
+        try {
+            if (window.tryAcquire(windowSize, timeout, TimeUnit.MILLISECONDS)) {
+                window.release(windowSize);
+            } else {
+                LOGGER.warn("Closing MQTT publisher with {} messages unconfirmed.", pending.size());
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.warn("Interrupted while closing MQTT publisher.");
+        }
+        LOGGER.debug("Published {} messages, at most {} in flight.", published.get(), maxInFlight.get());
+        connection.close();
+    }
+}
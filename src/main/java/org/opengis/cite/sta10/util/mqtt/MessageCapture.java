@@ -0,0 +1,241 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.mqtt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.json.JSONObject;
+import org.opengis.cite.sta10.util.TimeUtils;
+import org.testng.Assert;
+
+/**
+ * Captures the messages received on one topic, with their arrival times, in
+ * a bounded ring buffer. Adding a message does not lock, so the MQTT client
+ * thread is never held up by a reader. When more messages arrive than fit,
+ * the oldest are overwritten, and counted as overflow.
+ *
+ * The verify methods check the captured stream, and fail the test if it does
+ * not meet the expectation.
+ *
+ * @author scf
+ */
+public class MessageCapture {
+
+    /**
+     * One captured message.
+     */
+    public static class Captured {
+
+        private final long sequence;
+        private final String topic;
+        private final long arrivalNanos;
+        private final CompletableFuture<JSONObject> message;
+
+        Captured(long sequence, String topic, long arrivalNanos, CompletableFuture<JSONObject> message) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.arrivalNanos = arrivalNanos;
+            this.message = message;
+        }
+
+        /**
+         * @return The topic the message arrived on.
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * @return The value of System.nanoTime() when the message arrived.
+         */
+        public long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        /**
+         * Returns the message, waiting for it to be decoded if needed.
+         *
+         * @return The message.
+         */
+        public JSONObject getMessage() {
+            try {
+                return message.join();
+            } catch (CompletionException ex) {
+                Assert.fail("Invalid MQTT message on " + topic + ": " + ex.getCause().getMessage(), ex.getCause());
+                return null;
+            }
+        }
+    }
+
+    private final AtomicReferenceArray<Captured> ring;
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * @param capacity The maximum number of messages to keep.
+     */
+    public MessageCapture(int capacity) {
+        ring = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Adds a message, overwriting the oldest one if the buffer is full.
+     *
+     * @param topic        The topic the message arrived on.
+     * @param arrivalNanos The value of System.nanoTime() when the message
+     *                     arrived.
+     * @param message      The message.
+     */
+    public void add(String topic, long arrivalNanos, JSONObject message) {
+        add(topic, arrivalNanos, CompletableFuture.completedFuture(message));
+    }
+
+    /**
+     * Adds a message that may still be being decoded. Its place in the
+     * buffer is that of its arrival, not of the end of its decoding.
+     *
+     * @param topic        The topic the message arrived on.
+     * @param arrivalNanos The value of System.nanoTime() when the message
+     *                     arrived.
+     * @param message      The future message.
+     */
+    public void add(String topic, long arrivalNanos, CompletableFuture<JSONObject> message) {
+        long index = written.getAndIncrement();
+        ring.set((int) (index % ring.length()), new Captured(index, topic, arrivalNanos, message));
+    }
+
+    /**
+     * @return The number of messages received, including those overwritten.
+     */
+    public long getReceivedCount() {
+        return written.get();
+    }
+
+    /**
+     * @return The number of messages that were overwritten because the
+     * buffer was full.
+     */
+    public long getOverflowCount() {
+        return Math.max(0, written.get() - ring.length());
+    }
+
+    /**
+     * @return The messages still in the buffer, oldest first.
+     */
+    public List<Captured> getMessages() {
+        long end = written.get();
+        long start = Math.max(0, end - ring.length());
+        List<Captured> result = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            Captured captured = ring.get((int) (index % ring.length()));
+            // A slot can still be empty, or hold a message of an earlier lap,
+            // if its writer has not finished, or a later lap if it was
+            // overwritten while reading.
+            if (captured != null && captured.sequence == index) {
+                result.add(captured);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fails if the number of received messages is not the expected number.
+     *
+     * @param expected The expected number of messages.
+     */
+    public void verifyCount(int expected) {
+        Assert.assertEquals(getReceivedCount(), expected, "Unexpected number of MQTT messages.");
+    }
+
+    /**
+     * Fails if two captured messages have the same value for the given
+     * property, for instance @iot.id.
+     *
+     * @param property The property that identifies a message.
+     */
+    public void verifyNoDuplicates(String property) {
+        verifyNoOverflow();
+        Map<String, Integer> seen = new HashMap<>();
+        List<Captured> messages = getMessages();
+        for (int i = 0; i < messages.size(); i++) {
+            Object value = messages.get(i).getMessage().opt(property);
+            if (value == null) {
+                continue;
+            }
+            Integer earlier = seen.put(value.toString(), i);
+            if (earlier != null) {
+                Assert.fail("MQTT messages " + earlier + " and " + i + " on " + messages.get(i).getTopic()
+                        + " both have " + property + " " + value + ".");
+            }
+        }
+    }
+
+    /**
+     * Fails if the captured messages did not arrive in ascending order of
+     * the given property. Numbers are compared as numbers, times (and the
+     * start of time intervals) as times, other values as strings.
+     *
+     * @param property The property to order by, for instance phenomenonTime
+     *                 or @iot.id.
+     */
+    public void verifyOrdered(String property) {
+        verifyNoOverflow();
+        List<Captured> messages = getMessages();
+        for (int i = 1; i < messages.size(); i++) {
+            Object previous = messages.get(i - 1).getMessage().opt(property);
+            Object current = messages.get(i).getMessage().opt(property);
+            if (previous == null || current == null) {
+                Assert.fail("MQTT message " + (previous == null ? i - 1 : i) + " has no " + property + ".");
+            }
+            if (compareValues(previous, current) > 0) {
+                Assert.fail("MQTT message " + i + " on " + messages.get(i).getTopic() + " arrived out of order: "
+                        + property + " " + current + " after " + previous + ".");
+            }
+        }
+    }
+
+    private void verifyNoOverflow() {
+        Assert.assertEquals(getOverflowCount(), 0L, "Too many MQTT messages to verify, the capture buffer overflowed.");
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        String sa = a.toString();
+        String sb = b.toString();
+        long ta = startOf(sa);
+        long tb = startOf(sb);
+        if (ta == TimeUtils.INVALID || tb == TimeUtils.INVALID) {
+            return sa.compareTo(sb);
+        }
+        return Long.compare(ta, tb);
+    }
+
+    /**
+     * @return The epoch milliseconds of the time, or of the start of the
+     * interval, or {@link TimeUtils#INVALID} if it is not a time.
+     */
+    private static long startOf(String time) {
+        int slash = time.indexOf('/');
+        return TimeUtils.parseInstant(time, 0, slash < 0 ? time.length() : slash);
+    }
+}
@@ -27,6 +27,7 @@ public class MqttBatchResult<T> {
 
     private T actionResult;
     private Map<String, JSONObject> messages;
+    private final Map<String, MessageCapture> captures = new HashMap<>();
 
     public MqttBatchResult() {
         messages = new HashMap<>();
@@ -66,4 +67,17 @@ public class MqttBatchResult<T> {
         messages.put(topic, message);
     }
 
+    /**
+     * @param topic The topic to get the capture for.
+     * @return All messages received on the topic, or null if the topic was
+     * not listened to.
+     */
+    public MessageCapture getCapture(String topic) {
+        return captures.get(topic);
+    }
+
+    public void addCapture(String topic, MessageCapture capture) {
+        captures.put(topic, capture);
+    }
+
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.mqtt;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.http.RequestThrottle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+
+/**
+ * One MQTT connection that stays open for many publishes and subscriptions,
+ * for tests that send or receive more than a single message. Each
+ * subscription has its own sink, that gets the raw payload and the arrival
+ * time of each message.
+ *
+ * @author scf
+ */
+public class MqttConnection implements AutoCloseable {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttConnection.class);
+
+    /**
+     * Receives the messages of a subscription. Called on a worker thread of
+     * the {@link PayloadDecoder}, so the MQTT client thread is free to
+     * deliver the next message. Messages of one subscription may be handled
+     * concurrently, and not in order of arrival.
+     */
+    public interface MessageSink {
+
+        /**
+         * @param topic        The topic the message arrived on.
+         * @param payload      The payload of the message.
+         * @param arrivalNanos The value of System.nanoTime() when the message
+         *                     arrived.
+         */
+        void messageArrived(String topic, byte[] payload, long arrivalNanos);
+    }
+
+    /**
+     * The number of unconfirmed publishes allowed when not given.
+     */
+    public static final int DEFAULT_MAX_INFLIGHT = 1000;
+
+    private final MqttAsyncClient client;
+    private final long timeout;
+    private final int maxInflight;
+
+    /**
+     * Creates a new, unconnected connection.
+     *
+     * @param serverUri The MQTT endpoint.
+     * @param clientId  The client id, must be unique unless a session is to
+     *                  be resumed.
+     * @param timeout   The time to wait for the broker to confirm an action,
+     *                  in milliseconds.
+     */
+    public MqttConnection(String serverUri, String clientId, long timeout) {
+        this(serverUri, clientId, timeout, DEFAULT_MAX_INFLIGHT);
+    }
+
+    /**
+     * Creates a new, unconnected connection.
+     *
+     * @param serverUri   The MQTT endpoint.
+     * @param clientId    The client id, must be unique unless a session is
+     *                    to be resumed.
+     * @param timeout     The time to wait for the broker to confirm an
+     *                    action, in milliseconds.
+     * @param maxInflight The number of publishes that may be unconfirmed at
+     *                    the same time.
+     */
+    public MqttConnection(String serverUri, String clientId, long timeout, int maxInflight) {
+        this.timeout = timeout;
+        this.maxInflight = Math.max(1, maxInflight);
+        try {
+            client = new MqttAsyncClient(serverUri, clientId, new MemoryPersistence());
+        } catch (MqttException ex) {
+            throw new IllegalArgumentException("Could not create MQTT client for " + serverUri, ex);
+        }
+    }
+
+    /**
+     * Sets the sink for messages that do not belong to a subscription made
+     * on this connection, like the messages the broker queued for a resumed
+     * session. Must be set before connecting, since queued messages are sent
+     * right after the connection is established.
+     *
+     * @param sink The sink for the messages.
+     * @return this.
+     */
+    public MqttConnection setSessionSink(MessageSink sink) {
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                LOGGER.warn("MQTT connection lost: {}", cause.getMessage());
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                HTTPMethods.getMetrics().recordMqttReceive(topic);
+                dispatch(sink, topic, message);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                // Nothing to do.
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Connects to the broker and waits for the connection to be established.
+     *
+     * @param cleanSession false to resume the session stored for the client
+     *                     id by the broker.
+     * @return this.
+     */
+    public MqttConnection connect(boolean cleanSession) {
+        MqttConnectOptions connOpts = new MqttConnectOptions();
+        connOpts.setCleanSession(cleanSession);
+        connOpts.setMaxInflight(maxInflight);
+        try {
+            client.connect(connOpts).waitForCompletion(timeout);
+        } catch (MqttException ex) {
+            LOGGER.error("Exception:", ex);
+            Assert.fail("Could not connect to MQTT server.", ex);
+        }
+        return this;
+    }
+
+    /**
+     * Subscribes to a topic and waits for the broker to confirm.
+     *
+     * @param topic The topic to subscribe to.
+     * @param qos   The maximum QoS to receive messages with.
+     * @param sink  The sink for the messages.
+     */
+    public void subscribe(String topic, int qos, MessageSink sink) {
+        try {
+            client.subscribe(topic, qos, (t, message) -> {
+                HTTPMethods.getMetrics().recordMqttReceive(t);
+                dispatch(sink, t, message);
+            }).waitForCompletion(timeout);
+            LOGGER.debug("Subscribed to {} with QoS {}", topic, qos);
+        } catch (MqttException ex) {
+            LOGGER.error("Exception:", ex);
+            Assert.fail("MQTT subscribe to " + topic + " failed.", ex);
+        }
+    }
+
+    private static void dispatch(MessageSink sink, String topic, MqttMessage message) {
+        long arrivalNanos = System.nanoTime();
+        byte[] payload = message.getPayload();
+        PayloadDecoder.execute(() -> sink.messageArrived(topic, payload, arrivalNanos));
+    }
+
+    /**
+     * Unsubscribes from a topic and waits for the broker to confirm.
+     *
+     * @param topic The topic to unsubscribe from.
+     */
+    public void unsubscribe(String topic) {
+        try {
+            client.unsubscribe(topic).waitForCompletion(timeout);
+        } catch (MqttException ex) {
+            LOGGER.warn("MQTT unsubscribe from {} failed: {}", topic, ex.getMessage());
+        }
+    }
+
+    /**
+     * Publishes a message and waits until the flow for the given QoS is
+     * complete: until it is sent for QoS 0, acknowledged for QoS 1 and
+     * completed for QoS 2.
+     *
+     * @param topic   The topic to publish on.
+     * @param payload The message.
+     * @param qos     The QoS to publish with.
+     */
+    public void publish(String topic, byte[] payload, int qos) {
+        // Publishes may create entities, memoized GETs are no longer valid.
+        HTTPMethods.getMemo().invalidate();
+        // Publishes count against the same limits as HTTP requests.
+        try (RequestThrottle.Permit permit = HTTPMethods.getThrottle().acquire()) {
+            client.publish(topic, payload, qos, false).waitForCompletion(timeout);
+            HTTPMethods.getMetrics().recordMqttPublish(topic);
+        } catch (MqttException ex) {
+            Assert.fail("error publishing message on MQTT", ex);
+        }
+    }
+
+    /**
+     * @return The underlying client.
+     */
+    public MqttAsyncClient getClient() {
+        return client;
+    }
+
+    /**
+     * Disconnects and releases the client.
+     */
+    @Override
+    public void close() {
+        try {
+            if (client.isConnected()) {
+                client.disconnect().waitForCompletion(timeout);
+            }
+        } catch (MqttException ex) {
+            LOGGER.debug("MQTT disconnect failed: {}", ex.getMessage());
+        }
+        try {
+            client.close();
+        } catch (MqttException ex) {
+            LOGGER.debug("MQTT close failed: {}", ex.getMessage());
+        }
+    }
+}
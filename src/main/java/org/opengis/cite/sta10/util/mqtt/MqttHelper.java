@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -32,7 +33,10 @@ import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.json.JSONObject;
 import org.opengis.cite.sta10.util.EntityType;
+import org.opengis.cite.sta10.util.HTTPMethods;
 import org.opengis.cite.sta10.util.Utils;
+import org.opengis.cite.sta10.util.http.RequestThrottle;
+import org.opengis.cite.sta10.util.perf.MqttEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -47,11 +51,18 @@ public class MqttHelper {
      * The number of milliseconds to wait after an insert, to give the server time to process it.
      */
     public static final int WAIT_AFTER_INSERT = 500;
+    /**
+     * The default QoS for publishing and subscribing.
+     */
     public static final int QOS = 2;
     public final static String CLIENT_ID = "STA-test_suite";
     private static final String MQTT_TOPIC_PREFIX = "v1.0/";
     private final String mqttServerUri;
     private final long mqttTimeout;
+    /**
+     * The number of messages an {@link AsyncPublisher} may have in flight.
+     */
+    private static int publishWindow = 100;
 
     /**
      * The logger for this class.
@@ -59,11 +70,16 @@ public class MqttHelper {
     private static final Logger LOGGER = LoggerFactory.getLogger(MqttHelper.class);
 
     public static void waitMillis(long millis) {
+        MqttEvent event = new MqttEvent();
+        event.begin();
+        long start = System.nanoTime();
         try {
             Thread.sleep(millis);
         } catch (InterruptedException ex) {
             // rude wakeup
         }
+        HTTPMethods.getProfiler().recordWait("mqtt sleep", System.nanoTime() - start);
+        event.commit("wait", null);
     }
 
     public MqttHelper(String mqttServerUri, long mqttTimeout) {
@@ -71,18 +87,64 @@ public class MqttHelper {
         this.mqttTimeout = mqttTimeout;
     }
 
+    /**
+     * @return The number of messages an {@link AsyncPublisher} may have in
+     * flight.
+     */
+    public static int getPublishWindow() {
+        return publishWindow;
+    }
+
+    /**
+     * @param publishWindow The number of messages an {@link AsyncPublisher}
+     *                      may have in flight.
+     */
+    public static void setPublishWindow(int publishWindow) {
+        MqttHelper.publishWindow = publishWindow;
+    }
+
+    /**
+     * Opens a publisher on a new connection, that keeps the configured
+     * window of messages in flight. The caller must close it.
+     *
+     * @return The connected publisher.
+     */
+    public AsyncPublisher openPublisher() {
+        return new AsyncPublisher(mqttServerUri, CLIENT_ID + "-pub-" + UUID.randomUUID(), mqttTimeout, publishWindow);
+    }
+
+    /**
+     * @return The MQTT endpoint.
+     */
+    public String getMqttServerUri() {
+        return mqttServerUri;
+    }
+
+    /**
+     * @return The time to wait for MQTT messages, in milliseconds.
+     */
+    public long getMqttTimeout() {
+        return mqttTimeout;
+    }
+
     public void publish(String topic, String message) {
         publish(topic, message, QOS, false);
     }
 
     public void publish(String topic, String message, int qos, boolean retained) {
         MqttClient client = null;
-        try {
+        MqttEvent event = new MqttEvent();
+        event.begin();
+        // Publishes may create entities, memoized GETs are no longer valid.
+        HTTPMethods.getMemo().invalidate();
+        // Publishes count against the same limits as HTTP requests.
+        try (RequestThrottle.Permit permit = HTTPMethods.getThrottle().acquire()) {
             client = new MqttClient(mqttServerUri, CLIENT_ID);
             MqttConnectOptions connOpts = new MqttConnectOptions();
             connOpts.setCleanSession(true);
             client.connect(connOpts);
             client.publish(topic, message.getBytes(), qos, retained);
+            HTTPMethods.getMetrics().recordMqttPublish(topic);
         } catch (MqttException ex) {
             Assert.fail("error publishing message on MQTT", ex);
         } finally {
@@ -93,18 +155,36 @@ public class MqttHelper {
                 } catch (MqttException ex) {
                 }
             }
+            event.commit("publish", topic);
         }
     }
 
     public <T> MqttBatchResult<T> executeRequests(Callable<T> action, String... topics) {
+        return executeRequests(action, 1, topics);
+    }
+
+    /**
+     * Subscribes to the given topics, executes the action, and waits until
+     * the expected number of messages arrived on each topic. The first
+     * message of each topic is in the messages of the result, all messages
+     * are in its captures.
+     *
+     * @param <T>           The type of the result of the action.
+     * @param action        The action that causes the messages.
+     * @param expectedCount The number of messages to wait for, per topic.
+     * @param topics        The topics to listen on.
+     * @return The result of the action and the received messages.
+     */
+    public <T> MqttBatchResult<T> executeRequests(Callable<T> action, int expectedCount, String... topics) {
         MqttBatchResult<T> result = new MqttBatchResult<>(topics.length);
         Map<String, Future<JSONObject>> tempResult = new HashMap<>(topics.length);
         ExecutorService executor = Executors.newFixedThreadPool(topics.length);
         try {
             for (String topic : topics) {
-                MqttListener listener = new MqttListener(mqttServerUri, topic);
+                MqttListener listener = new MqttListener(mqttServerUri, topic, QOS, expectedCount);
                 listener.connect();
                 tempResult.put(topic, executor.submit(listener));
+                result.addCapture(topic, listener.getCapture());
             }
 
             // Give the MQTT server time to process the subscriptions.
@@ -15,11 +15,13 @@
  */
 package org.opengis.cite.sta10.util.mqtt;
 
-import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.IMqttToken;
@@ -30,6 +32,8 @@ import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.json.JSONObject;
+import org.opengis.cite.sta10.util.HTTPMethods;
+import org.opengis.cite.sta10.util.perf.MqttEvent;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 
@@ -46,14 +50,38 @@ public class MqttListener implements Callable<JSONObject> {
     private final CountDownLatch barrier;
     private final String topic;
     private final String mqttServerUri;
+    private final int qos;
+    private final int expectedCount;
+    private final MessageCapture capture;
 
     private MqttAsyncClient mqttClient;
-    private JSONObject result;
+    private final AtomicReference<CompletableFuture<JSONObject>> firstMessage = new AtomicReference<>();
 
     public MqttListener(String mqttServer, String topic) {
+        this(mqttServer, topic, MqttHelper.QOS);
+    }
+
+    public MqttListener(String mqttServer, String topic, int qos) {
+        this(mqttServer, topic, qos, 1);
+    }
+
+    /**
+     * Creates a listener that waits for the given number of messages. All
+     * messages, also those beyond the expected number, are kept in the
+     * capture of the listener, so they can be verified afterwards.
+     *
+     * @param mqttServer    The MQTT endpoint.
+     * @param topic         The topic to listen on.
+     * @param qos           The QoS to subscribe with.
+     * @param expectedCount The number of messages to wait for.
+     */
+    public MqttListener(String mqttServer, String topic, int qos, int expectedCount) {
         this.mqttServerUri = mqttServer;
         this.topic = topic;
-        barrier = new CountDownLatch(1);
+        this.qos = qos;
+        this.expectedCount = expectedCount;
+        barrier = new CountDownLatch(expectedCount);
+        capture = new MessageCapture(Math.max(16, 2 * expectedCount));
     }
 
     public void connect() {
@@ -74,13 +102,25 @@ public class MqttListener implements Callable<JSONObject> {
 
                         @Override
                         public void messageArrived(String topic, MqttMessage mm) throws Exception {
-                            if (barrier.getCount() > 0) {
-                                result = new JSONObject(new String(mm.getPayload(), StandardCharsets.UTF_8));
-                                barrier.countDown();
-                                LOGGER.debug("Received on {}. To go: {}", topic, barrier.getCount());
-                            } else {
-                                LOGGER.error("Received on {}. Barrier already empty!", topic);
-                            }
+                            // Decoding happens on a worker, so this thread can deliver the next message.
+                            HTTPMethods.getMetrics().recordMqttReceive(topic);
+                            MqttEvent event = new MqttEvent();
+                            event.begin();
+                            CompletableFuture<JSONObject> message = PayloadDecoder.decode(mm.getPayload());
+                            capture.add(topic, System.nanoTime(), message);
+                            firstMessage.compareAndSet(null, message);
+                            event.commit("receive", topic);
+                            message.whenComplete((json, failure) -> {
+                                if (failure != null) {
+                                    LOGGER.error("Invalid message on {}: {}", topic, failure.getMessage());
+                                }
+                                if (barrier.getCount() > 0) {
+                                    barrier.countDown();
+                                    LOGGER.debug("Received on {}. To go: {}", topic, barrier.getCount());
+                                } else {
+                                    LOGGER.debug("Received on {} after the expected {} messages.", topic, expectedCount);
+                                }
+                            });
                         }
 
                         @Override
@@ -88,7 +128,7 @@ public class MqttListener implements Callable<JSONObject> {
                         }
                     });
                     try {
-                        mqttClient.subscribe(topic, MqttHelper.QOS, null, new IMqttActionListener() {
+                        mqttClient.subscribe(topic, qos, null, new IMqttActionListener() {
                             @Override
                             public void onSuccess(IMqttToken imt) {
                                 LOGGER.debug("Subscribed to {}", topic);
@@ -113,21 +153,45 @@ public class MqttListener implements Callable<JSONObject> {
                     Assert.fail("MQTT connect failed.", exception);
                 }
             });
+            MqttEvent event = new MqttEvent();
+            event.begin();
+            long start = System.nanoTime();
             try {
                 connectBarrier.await();
             } catch (InterruptedException ex) {
                 LOGGER.error("Exception:", ex);
             }
+            HTTPMethods.getProfiler().recordWait("mqtt subscription", System.nanoTime() - start);
+            event.commit("subscribe", topic);
         } catch (MqttException | IllegalArgumentException ex) {
             LOGGER.error("Exception:", ex);
             Assert.fail("Could not connect to MQTT server.", ex);
         }
     }
 
+    /**
+     * @return All messages received on the topic, including those beyond the
+     * expected number.
+     */
+    public MessageCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Waits for the expected number of messages and disconnects.
+     *
+     * @return The first message received, or null if none arrived.
+     * @throws Exception If waiting is interrupted.
+     */
     @Override
     public JSONObject call() throws Exception {
+        MqttEvent event = new MqttEvent();
+        event.begin();
+        long start = System.nanoTime();
         try {
             barrier.await();
+            HTTPMethods.getProfiler().recordWait("mqtt messages", System.nanoTime() - start);
+            event.commit("wait", topic);
         } catch (InterruptedException ex) {
             LOGGER.error("waiting for MQTT events on {} timed out.", topic);
             LOGGER.error("Exception:", ex);
@@ -168,6 +232,15 @@ public class MqttListener implements Callable<JSONObject> {
                 mqttClient.close();
             }
         }
-        return result;
+        CompletableFuture<JSONObject> message = firstMessage.get();
+        if (message == null) {
+            return null;
+        }
+        try {
+            return message.get();
+        } catch (ExecutionException ex) {
+            Assert.fail("Invalid MQTT message on " + topic + ": " + ex.getCause().getMessage(), ex.getCause());
+            throw ex;
+        }
     }
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.mqtt;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.opengis.cite.sta10.util.ControlInformation;
+
+/**
+ * Decodes MQTT payloads on a pool of worker threads, so the MQTT client thread
+ * can hand off a message and return to delivering the next one.
+ *
+ * {@link #parse(byte[])} builds the complete JSONObject, reading the bytes
+ * through a reader instead of first copying them into a String.
+ * {@link #fields(byte[], String...)} is for consumers that need only a few
+ * top-level fields: it scans the bytes and only decodes the values asked
+ * for.
+ *
+ * @author scf
+ */
+public class PayloadDecoder {
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            runnable -> {
+                Thread thread = new Thread(runnable, "mqtt-decoder-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private PayloadDecoder() {
+        // Utility class.
+    }
+
+    /**
+     * Parses the payload on the calling thread.
+     *
+     * @param payload The UTF-8 encoded JSON payload.
+     * @return The parsed payload.
+     */
+    public static JSONObject parse(byte[] payload) {
+        return new JSONObject(new JSONTokener(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads the result of an Observation from a notification payload, as the
+     * benchmarks send them: with a whole number as result.
+     *
+     * @param payload The UTF-8 encoded JSON payload.
+     * @return The result, or -1 if the payload is not an entity with an id
+     * and a numeric result.
+     */
+    public static long resultOf(byte[] payload) {
+        String[] values = fields(payload, ControlInformation.ID, "result");
+        if (values == null || values[0] == null || values[1] == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(values[1]);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the given top-level fields of a JSON object payload, without
+     * parsing the rest of the payload. Scanning stops once all fields are
+     * found. String values are unescaped, other values are returned as their
+     * JSON text.
+     *
+     * @param payload The UTF-8 encoded JSON payload.
+     * @param names   The names of the fields to read.
+     * @return The values, in the order of the names, with null for fields
+     * that are not in the payload; or null if the payload is not a JSON
+     * object.
+     */
+    public static String[] fields(byte[] payload, String... names) {
+        String[] values = new String[names.length];
+        Cursor cursor = new Cursor(payload);
+        if (!cursor.consume('{')) {
+            return null;
+        }
+        if (cursor.peek() == '}') {
+            return values;
+        }
+        int found = 0;
+        while (true) {
+            String name = cursor.readString();
+            if (name == null || !cursor.consume(':')) {
+                return null;
+            }
+            int index = Arrays.asList(names).indexOf(name);
+            if (index >= 0 && values[index] == null) {
+                values[index] = cursor.readValue();
+                if (values[index] == null) {
+                    return null;
+                }
+                if (++found == names.length) {
+                    return values;
+                }
+            } else if (!cursor.skipValue()) {
+                return null;
+            }
+            if (cursor.peek() == '}') {
+                return values;
+            }
+            if (!cursor.consume(',')) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Runs the given task on the decoder pool.
+     *
+     * @param task The task to run.
+     */
+    public static void execute(Runnable task) {
+        WORKERS.execute(task);
+    }
+
+    /**
+     * Parses the payload on a worker thread. The payload array is not copied,
+     * so the caller must not change it afterwards.
+     *
+     * @param payload The UTF-8 encoded JSON payload.
+     * @return The future parsed payload, completed exceptionally if the
+     * payload is not a JSON object.
+     */
+    public static CompletableFuture<JSONObject> decode(byte[] payload) {
+        return CompletableFuture.supplyAsync(() -> parse(payload), WORKERS);
+    }
+
+    /**
+     * A position in a UTF-8 encoded JSON text. The structural characters of
+     * JSON are ASCII, and bytes of multi-byte characters never equal an ASCII
+     * byte, so the bytes can be scanned without decoding them.
+     */
+    private static class Cursor {
+
+        private final byte[] bytes;
+        private int pos = 0;
+
+        private Cursor(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return The next non-whitespace byte, without consuming it, or -1
+         * at the end.
+         */
+        private int peek() {
+            while (pos < bytes.length && isWhitespace(bytes[pos])) {
+                pos++;
+            }
+            return pos < bytes.length ? bytes[pos] : -1;
+        }
+
+        private boolean consume(char expected) {
+            if (peek() != expected) {
+                return false;
+            }
+            pos++;
+            return true;
+        }
+
+        /**
+         * @return The unescaped string at the cursor, or null if there is no
+         * valid string.
+         */
+        private String readString() {
+            if (peek() != '"') {
+                return null;
+            }
+            int start = pos + 1;
+            boolean escaped = false;
+            for (int i = start; i < bytes.length; i++) {
+                if (bytes[i] == '\\') {
+                    escaped = true;
+                    i++;
+                } else if (bytes[i] == '"') {
+                    pos = i + 1;
+                    String raw = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                    return escaped ? unescape(raw) : raw;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return The value at the cursor: unescaped for a string, the JSON
+         * text otherwise, or null if there is no valid value.
+         */
+        private String readValue() {
+            if (peek() == '"') {
+                return readString();
+            }
+            int start = pos;
+            if (!skipValue()) {
+                return null;
+            }
+            return new String(bytes, start, pos - start, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return false if there is no value at the cursor.
+         */
+        private boolean skipValue() {
+            int first = peek();
+            if (first == '"') {
+                return skipString();
+            }
+            if (first == '{' || first == '[') {
+                int depth = 0;
+                while (pos < bytes.length) {
+                    byte b = bytes[pos];
+                    if (b == '"') {
+                        if (!skipString()) {
+                            return false;
+                        }
+                        continue;
+                    }
+                    pos++;
+                    if (b == '{' || b == '[') {
+                        depth++;
+                    } else if ((b == '}' || b == ']') && --depth == 0) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            int start = pos;
+            while (pos < bytes.length && !isWhitespace(bytes[pos])
+                    && bytes[pos] != ',' && bytes[pos] != '}' && bytes[pos] != ']') {
+                pos++;
+            }
+            return pos > start;
+        }
+
+        private boolean skipString() {
+            for (int i = pos + 1; i < bytes.length; i++) {
+                if (bytes[i] == '\\') {
+                    i++;
+                } else if (bytes[i] == '"') {
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+
+        /**
+         * @return The string with its JSON escapes replaced, or null if it
+         * has an invalid escape.
+         */
+        private static String unescape(String raw) {
+            StringBuilder sb = new StringBuilder(raw.length());
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (++i >= raw.length()) {
+                    return null;
+                }
+                char escape = raw.charAt(i);
+                switch (escape) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(escape);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= raw.length()) {
+                            return null;
+                        }
+                        int code = 0;
+                        for (int j = i + 1; j <= i + 4; j++) {
+                            int digit = Character.digit(raw.charAt(j), 16);
+                            if (digit < 0) {
+                                return null;
+                            }
+                            code = code * 16 + digit;
+                        }
+                        sb.append((char) code);
+                        i += 4;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a fixture phase of a test class, such as its
+ * set up or tear down.
+ * Does nothing when the runtime has no Flight Recorder.
+ *
+ * @author scf
+ */
+public class FixturePhaseEvent {
+
+    /**
+     * The Flight Recorder event, only loaded when Flight Recorder is
+     * available.
+     */
+    @Name("org.opengis.cite.sta10.FixturePhase")
+    @Label("Fixture Phase")
+    @Category({"SensorThings ETS", "Fixture"})
+    @Description("The set up or tear down of a test class.")
+    static class Jfr extends jdk.jfr.Event {
+
+        @Label("Level")
+        @Description("The conformance level, or other TestNG test.")
+        private String level;
+
+        @Label("Test Class")
+        private String testClass;
+
+        @Label("Phase")
+        private String phase;
+    }
+
+    private final Object event = FlightRecorder.isAvailable() ? new Jfr() : null;
+
+    /**
+     * Starts timing the event.
+     */
+    public void begin() {
+        if (event != null) {
+            ((Jfr) event).begin();
+        }
+    }
+
+    /**
+     * Ends the event and commits it, if the recording wants it.
+     *
+     * @param level     The conformance level, or other TestNG test.
+     * @param testClass The simple name of the test class.
+     * @param phase     The phase, for instance "setup" or "teardown".
+     */
+    public void commit(String level, String testClass, String phase) {
+        if (event == null) {
+            return;
+        }
+        Jfr jfr = (Jfr) event;
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.level = level;
+            jfr.testClass = testClass;
+            jfr.phase = phase;
+            jfr.commit();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks, once, whether the runtime has Java Flight Recorder. Java 8 runtimes
+ * before 8u262 do not, and loading a class that uses jdk.jfr would fail
+ * there. The events of this package only create their Flight Recorder event
+ * when it is available, and are no-ops otherwise.
+ *
+ * @author scf
+ */
+public final class FlightRecorder {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorder.class);
+
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private FlightRecorder() {
+        // Utility class.
+    }
+
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            LOGGER.info("Flight Recorder is not available in this runtime, no events are emitted.");
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the runtime has Java Flight Recorder.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Starts recording with the "profile" settings.
+     *
+     * @param destination The file to write the recording to when it is
+     *                    closed.
+     * @return The recording, to close when done, or null if the runtime has
+     * no Flight Recorder.
+     * @throws IOException    If the settings can not be read.
+     * @throws ParseException If the settings can not be parsed.
+     */
+    public static AutoCloseable startRecording(Path destination) throws IOException, ParseException {
+        if (!AVAILABLE) {
+            LOGGER.warn("Flight Recorder is not available in this runtime, not recording to {}.", destination);
+            return null;
+        }
+        return Run.start(destination);
+    }
+
+    /**
+     * A running recording. Only loaded when Flight Recorder is available.
+     */
+    private static class Run implements AutoCloseable {
+
+        private final Recording recording;
+
+        private Run(Recording recording) {
+            this.recording = recording;
+        }
+
+        private static Run start(Path destination) throws IOException, ParseException {
+            Recording recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.setName("ets-sta10");
+            recording.setDestination(destination);
+            recording.start();
+            return new Run(recording);
+        }
+
+        @Override
+        public void close() {
+            recording.stop();
+            recording.close();
+        }
+    }
+}
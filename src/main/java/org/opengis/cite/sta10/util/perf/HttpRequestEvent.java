@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for one HTTP request to the service under test. The
+ * event starts when the request is sent; the time spent waiting for the
+ * throttle and concurrency limiter before that is a separate field. Does
+ * nothing when the runtime has no Flight Recorder.
+ *
+ * @author scf
+ */
+public class HttpRequestEvent {
+
+    /**
+     * The Flight Recorder event, only loaded when Flight Recorder is
+     * available.
+     */
+    @Name("org.opengis.cite.sta10.HttpRequest")
+    @Label("HTTP Request")
+    @Category({"SensorThings ETS", "HTTP"})
+    @Description("An HTTP request to the service under test.")
+    static class Jfr extends jdk.jfr.Event {
+
+        @Label("Method")
+        private String method;
+
+        @Label("URL")
+        private String url;
+
+        @Label("Response Code")
+        @Description("The response code, or 0 if the request failed.")
+        private int responseCode;
+
+        @Label("Queue Wait")
+        @Description("The time the request waited for the throttle and concurrency limiter.")
+        @Timespan(Timespan.NANOSECONDS)
+        private long queueWait;
+    }
+
+    private final Object event = FlightRecorder.isAvailable() ? new Jfr() : null;
+    private boolean begun = false;
+
+    /**
+     * Starts timing the event, when the request is sent.
+     */
+    public void begin() {
+        begun = true;
+        if (event != null) {
+            ((Jfr) event).begin();
+        }
+    }
+
+    /**
+     * Ends the event and commits it, if the recording wants it.
+     *
+     * @param method       The HTTP method.
+     * @param url          The URL of the request.
+     * @param responseCode The response code, or 0 if the request failed.
+     * @param queueWait    The time the request waited before it was sent, in
+     *                     nanoseconds.
+     */
+    public void commit(String method, String url, int responseCode, long queueWait) {
+        if (event == null) {
+            return;
+        }
+        Jfr jfr = (Jfr) event;
+        if (!begun) {
+            // The request was never sent, it has no duration.
+            jfr.begin();
+        }
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.method = method;
+            jfr.url = url;
+            jfr.responseCode = responseCode;
+            jfr.queueWait = queueWait;
+            jfr.commit();
+        }
+    }
+}
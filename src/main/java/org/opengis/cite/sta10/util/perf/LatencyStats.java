@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects latency samples and reports their distribution. All samples are
+ * kept, so percentiles are exact. Meant for benchmarks of up to a few
+ * million samples.
+ *
+ * @author scf
+ */
+public class LatencyStats {
+
+    private long[] values = new long[64];
+    private int count = 0;
+    private long sum = 0;
+    private boolean sorted = true;
+
+    /**
+     * Records one sample.
+     *
+     * @param nanos The latency, in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        if (count > 0 && nanos < values[count - 1]) {
+            sorted = false;
+        }
+        values[count++] = nanos;
+        sum += nanos;
+    }
+
+    /**
+     * Records all samples of the given stats.
+     *
+     * @param other The stats to add the samples of.
+     */
+    public void add(LatencyStats other) {
+        long[] otherValues;
+        int otherCount;
+        synchronized (other) {
+            otherValues = other.values;
+            otherCount = other.count;
+        }
+        for (int i = 0; i < otherCount; i++) {
+            record(otherValues[i]);
+        }
+    }
+
+    /**
+     * @return The number of samples.
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Finds the value below which the given fraction of the samples fall.
+     *
+     * @param fraction The fraction, between 0 and 1.
+     * @return The percentile, in nanoseconds, or 0 if there are no samples.
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, count);
+            sorted = true;
+        }
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return values[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * @return The largest sample, in nanoseconds.
+     */
+    public long getMax() {
+        return getPercentile(1.0);
+    }
+
+    /**
+     * @return The mean of the samples, in nanoseconds.
+     */
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return The sum of all samples, in nanoseconds.
+     */
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * @return A one-line summary of the distribution, in milliseconds.
+     */
+    public String getSummary() {
+        return "n=" + getCount()
+                + " mean=" + millis(getMean())
+                + " p50=" + millis(getPercentile(0.5))
+                + " p90=" + millis(getPercentile(0.9))
+                + " p99=" + millis(getPercentile(0.99))
+                + " max=" + millis(getMax()) + " ms";
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+}
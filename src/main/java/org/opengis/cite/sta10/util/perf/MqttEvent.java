@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for MQTT activity: publishing a message, receiving
+ * one, or waiting for messages to arrive.
+ * Does nothing when the runtime has no Flight Recorder.
+ *
+ * @author scf
+ */
+public class MqttEvent {
+
+    /**
+     * The Flight Recorder event, only loaded when Flight Recorder is
+     * available.
+     */
+    @Name("org.opengis.cite.sta10.Mqtt")
+    @Label("MQTT")
+    @Category({"SensorThings ETS", "MQTT"})
+    @Description("Publishing, receiving or waiting for MQTT messages.")
+    static class Jfr extends jdk.jfr.Event {
+
+        @Label("Action")
+        @Description("publish, receive, subscribe or wait.")
+        private String action;
+
+        @Label("Topic")
+        private String topic;
+    }
+
+    private final Object event = FlightRecorder.isAvailable() ? new Jfr() : null;
+
+    /**
+     * Starts timing the event.
+     */
+    public void begin() {
+        if (event != null) {
+            ((Jfr) event).begin();
+        }
+    }
+
+    /**
+     * Ends the event and commits it, if the recording wants it.
+     *
+     * @param action The action: publish, receive, subscribe or wait.
+     * @param topic  The topic, or null for a plain wait.
+     */
+    public void commit(String action, String topic) {
+        if (event == null) {
+            return;
+        }
+        Jfr jfr = (Jfr) event;
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.action = action;
+            jfr.topic = topic;
+            jfr.commit();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+/**
+ * Records the latency of requests that follow a schedule, in two ways. The
+ * uncorrected latency runs from the moment a request was actually sent, and
+ * only shows how long the service took. The corrected latency runs from the
+ * moment the schedule intended to send it, so time a request spent waiting
+ * because the service or the clients were still busy with earlier requests
+ * is included, instead of being silently omitted.
+ *
+ * @author scf
+ */
+public class OpenLoopLatency {
+
+    private final LatencyStats corrected = new LatencyStats();
+    private final LatencyStats uncorrected = new LatencyStats();
+
+    /**
+     * Records one request.
+     *
+     * @param intendedStartNanos The System.nanoTime() the schedule intended
+     *                           to send the request at.
+     * @param actualStartNanos   The System.nanoTime() the request was sent.
+     * @param endNanos           The System.nanoTime() the response was
+     *                           complete.
+     */
+    public void record(long intendedStartNanos, long actualStartNanos, long endNanos) {
+        corrected.record(endNanos - Math.min(intendedStartNanos, actualStartNanos));
+        uncorrected.record(endNanos - actualStartNanos);
+    }
+
+    /**
+     * @return The latencies from the intended start.
+     */
+    public LatencyStats getCorrected() {
+        return corrected;
+    }
+
+    /**
+     * @return The latencies from the actual start.
+     */
+    public LatencyStats getUncorrected() {
+        return uncorrected;
+    }
+
+    /**
+     * @return The number of requests recorded.
+     */
+    public int getCount() {
+        return uncorrected.getCount();
+    }
+
+    /**
+     * @return Both distributions, in milliseconds.
+     */
+    public String getSummary() {
+        return "from intended start: " + corrected.getSummary() + "; from actual start: " + uncorrected.getSummary();
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Accumulates the wall time of the phases of a test run: the suite set up,
+ * the set up and tear down of each test class, each test method, and the
+ * waits that happen inside them, such as MQTT sleeps and subscription waits.
+ * Phases are grouped by the conformance level (the TestNG test) and the test
+ * class that were running, as set with {@link #setContext(String, String)}.
+ *
+ * Waits are part of the phase they happen in, so they are listed separately
+ * and not counted in the totals.
+ *
+ * @author scf
+ */
+public class PhaseProfiler {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PhaseProfiler.class);
+
+    private static final String WAIT_PREFIX = "wait: ";
+
+    /**
+     * The accumulated time of one phase.
+     */
+    private static class Phase {
+
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicInteger count = new AtomicInteger();
+    }
+
+    private final Map<String, Map<String, Map<String, Phase>>> levels = new ConcurrentHashMap<>();
+    private volatile String level = "";
+    private volatile String testClass = "";
+
+    /**
+     * Sets the level and class that following phases are attributed to.
+     *
+     * @param level     The conformance level, or other TestNG test, that is
+     *                  running.
+     * @param testClass The simple name of the test class that is running.
+     */
+    public void setContext(String level, String testClass) {
+        this.level = level == null ? "" : level;
+        this.testClass = testClass == null ? "" : testClass;
+    }
+
+    /**
+     * Adds the duration of a phase of the current class.
+     *
+     * @param phase The phase, for instance "setup", "teardown" or the name of
+     *              a test method.
+     * @param nanos The wall time of the phase.
+     */
+    public void record(String phase, long nanos) {
+        Phase entry = levels.computeIfAbsent(level, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(testClass, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, k -> new Phase());
+        entry.nanos.addAndGet(nanos);
+        entry.count.incrementAndGet();
+    }
+
+    /**
+     * Adds the duration of a wait inside a phase of the current class.
+     *
+     * @param kind  The kind of wait, for instance "mqtt sleep".
+     * @param nanos The time spent waiting.
+     */
+    public void recordWait(String kind, long nanos) {
+        record(WAIT_PREFIX + kind, nanos);
+    }
+
+    private static long classTotal(Map<String, Phase> phases) {
+        long total = 0;
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            if (!entry.getKey().startsWith(WAIT_PREFIX)) {
+                total += entry.getValue().nanos.get();
+            }
+        }
+        return total;
+    }
+
+    private static long levelTotal(Map<String, Map<String, Phase>> classes) {
+        long total = 0;
+        for (Map<String, Phase> phases : classes.values()) {
+            total += classTotal(phases);
+        }
+        return total;
+    }
+
+    private static <T> List<Map.Entry<String, T>> sortedBy(Map<String, T> map, Comparator<T> byCost) {
+        List<Map.Entry<String, T>> entries = new ArrayList<>(map.entrySet());
+        entries.sort(Map.Entry.<String, T>comparingByValue(byCost).reversed());
+        return entries;
+    }
+
+    private static String line(int indent, String name, long nanos, long total) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < indent; i++) {
+            sb.append("  ");
+        }
+        sb.append(name);
+        return String.format("%-70s %10.1f s %6.1f %%%n", sb, nanos / 1e9, total == 0 ? 0 : 100.0 * nanos / total);
+    }
+
+    /**
+     * @return The breakdown of the run by level, class and phase, each sorted
+     * by descending wall time.
+     */
+    public String getReport() {
+        long total = 0;
+        for (Map<String, Map<String, Phase>> classes : levels.values()) {
+            total += levelTotal(classes);
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Wall time by level, class and phase, %.1f s in total.%n", total / 1e9));
+        for (Map.Entry<String, Map<String, Map<String, Phase>>> levelEntry : sortedBy(levels, Comparator.comparingLong(PhaseProfiler::levelTotal))) {
+            report.append(line(0, levelEntry.getKey(), levelTotal(levelEntry.getValue()), total));
+            for (Map.Entry<String, Map<String, Phase>> classEntry : sortedBy(levelEntry.getValue(), Comparator.comparingLong(PhaseProfiler::classTotal))) {
+                report.append(line(1, classEntry.getKey(), classTotal(classEntry.getValue()), total));
+                for (Map.Entry<String, Phase> phaseEntry : sortedBy(classEntry.getValue(), Comparator.comparingLong(p -> p.nanos.get()))) {
+                    Phase phase = phaseEntry.getValue();
+                    String name = phaseEntry.getKey();
+                    if (phase.count.get() > 1) {
+                        name += " (" + phase.count.get() + "x)";
+                    }
+                    report.append(line(2, name, phase.nanos.get(), total));
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the report to a file.
+     *
+     * @param file The file to write.
+     */
+    public void writeTo(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.write(file, getReport().getBytes(StandardCharsets.UTF_8));
+            LOGGER.info("Wrote the phase profile to {}", file);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to write the phase profile to {}: {}", file, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the metrics of a test run: HTTP requests, MQTT messages, and the
+ * duration of fixture phases and tests. Each sample is labelled with the
+ * conformance level (the TestNG test) and the test class that were running
+ * when it was taken, as set with {@link #setContext(String, String)}.
+ *
+ * The metrics can be written in the OpenMetrics text format, and served
+ * over HTTP while the run is in progress.
+ *
+ * @author scf
+ */
+public class RunMetrics {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunMetrics.class);
+
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final Pattern ID_IN_PATH = Pattern.compile("\\([^)/]*\\)");
+
+    /**
+     * The samples of one metric, by their labels.
+     */
+    private static class Family {
+
+        private final String type;
+        private final String help;
+        private final Map<String, AtomicLong> counters = new ConcurrentSkipListMap<>();
+        private final Map<String, LatencyStats> summaries = new ConcurrentSkipListMap<>();
+
+        public Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+    private volatile String level = "";
+    private volatile String testClass = "";
+    private HttpServer server;
+
+    public RunMetrics() {
+        families.put("sta_http_requests", new Family("counter", "HTTP requests sent to the service."));
+        families.put("sta_http_request_duration_seconds", new Family("summary", "Duration of HTTP requests, from sending to the response."));
+        families.put("sta_http_queue_wait_seconds", new Family("summary", "Time HTTP requests waited for the throttle and concurrency limiter."));
+        families.put("sta_mqtt_messages_published", new Family("counter", "MQTT messages published."));
+        families.put("sta_mqtt_messages_received", new Family("counter", "MQTT messages received."));
+        families.put("sta_fixture_phase_duration_seconds", new Family("summary", "Duration of suite and class set up and tear down."));
+        families.put("sta_test_duration_seconds", new Family("summary", "Duration of test methods."));
+    }
+
+    /**
+     * Sets the labels for all following samples.
+     *
+     * @param level     The conformance level, or other TestNG test, that is
+     *                  running.
+     * @param testClass The simple name of the test class that is running.
+     */
+    public void setContext(String level, String testClass) {
+        this.level = level == null ? "" : level;
+        this.testClass = testClass == null ? "" : testClass;
+    }
+
+    /**
+     * Replaces the ids in a URL or topic with {id} and removes the host and
+     * query, so requests for different entities of the same kind share their
+     * metrics.
+     *
+     * @param urlOrTopic The URL or topic.
+     * @return The template.
+     */
+    public static String template(String urlOrTopic) {
+        String path = urlOrTopic;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        int scheme = path.indexOf("://");
+        if (scheme >= 0) {
+            int slash = path.indexOf('/', scheme + 3);
+            path = slash < 0 ? "/" : path.substring(slash);
+        }
+        return ID_IN_PATH.matcher(path).replaceAll("({id})");
+    }
+
+    /**
+     * Records one HTTP request.
+     *
+     * @param method     The HTTP method.
+     * @param url        The URL of the request.
+     * @param code       The response code, or 0 if the request failed.
+     * @param queueNanos The time the request waited before it was sent.
+     * @param nanos      The duration of the request, from sending to the
+     *                   response.
+     */
+    public void recordHttp(String method, String url, int code, long queueNanos, long nanos) {
+        String template = template(url);
+        count("sta_http_requests", labels("method", method, "url", template, "code", Integer.toString(code)));
+        observe("sta_http_queue_wait_seconds", labels("method", method, "url", template), queueNanos);
+        observe("sta_http_request_duration_seconds", labels("method", method, "url", template), nanos);
+    }
+
+    /**
+     * Records one published MQTT message.
+     *
+     * @param topic The topic it was published on.
+     */
+    public void recordMqttPublish(String topic) {
+        count("sta_mqtt_messages_published", labels("topic", template(topic)));
+    }
+
+    /**
+     * Records one received MQTT message.
+     *
+     * @param topic The topic it arrived on.
+     */
+    public void recordMqttReceive(String topic) {
+        count("sta_mqtt_messages_received", labels("topic", template(topic)));
+    }
+
+    /**
+     * Records the duration of a fixture phase of the current class.
+     *
+     * @param phase The phase, for instance "setup" or "teardown".
+     * @param nanos The duration.
+     */
+    public void recordPhase(String phase, long nanos) {
+        observe("sta_fixture_phase_duration_seconds", labels("phase", phase), nanos);
+    }
+
+    /**
+     * Records the duration of a test method of the current class.
+     *
+     * @param method The name of the test method.
+     * @param status The outcome, for instance "success".
+     * @param nanos  The duration.
+     */
+    public void recordTest(String method, String status, long nanos) {
+        observe("sta_test_duration_seconds", labels("method", method, "status", status), nanos);
+    }
+
+    private void count(String family, String labels) {
+        families.get(family).counters.computeIfAbsent(labels, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private void observe(String family, String labels, long nanos) {
+        families.get(family).summaries.computeIfAbsent(labels, k -> new LatencyStats()).record(nanos);
+    }
+
+    private String labels(String... namesAndValues) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("level=\"").append(escape(level)).append("\",class=\"").append(escape(testClass)).append('"');
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            sb.append(',').append(namesAndValues[i]).append("=\"").append(escape(namesAndValues[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Writes all metrics in the OpenMetrics text format.
+     *
+     * @param out The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void write(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# TYPE " + name + " " + family.type + "\n");
+            out.write("# HELP " + name + " " + family.help + "\n");
+            for (Map.Entry<String, AtomicLong> counter : family.counters.entrySet()) {
+                out.write(name + "_total{" + counter.getKey() + "} " + counter.getValue().get() + "\n");
+            }
+            for (Map.Entry<String, LatencyStats> summary : family.summaries.entrySet()) {
+                String labels = summary.getKey();
+                LatencyStats stats = summary.getValue();
+                for (double quantile : QUANTILES) {
+                    out.write(name + "{" + labels + ",quantile=\"" + quantile + "\"} " + seconds(stats.getPercentile(quantile)) + "\n");
+                }
+                out.write(name + "_sum{" + labels + "} " + seconds(stats.getSum()) + "\n");
+                out.write(name + "_count{" + labels + "} " + stats.getCount() + "\n");
+            }
+        }
+        out.write("# EOF\n");
+    }
+
+    /**
+     * Writes all metrics to a file, in the OpenMetrics text format.
+     *
+     * @param file The file to write.
+     */
+    public void writeTo(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        } catch (IOException ex) {
+            LOGGER.error("Failed to create the directory for {}: {}", file, ex.getMessage());
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(out);
+            LOGGER.info("Wrote metrics to {}", file);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to write metrics to {}: {}", file, ex.getMessage());
+        }
+    }
+
+    /**
+     * Serves the metrics on http://localhost:port/metrics until
+     * {@link #stopServing()} is called. Only the loopback interface is bound,
+     * the metrics are not reachable from other hosts.
+     *
+     * @param port The local port to listen on.
+     */
+    public synchronized void serve(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> {
+                StringWriter text = new StringWriter();
+                write(text);
+                byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            server.start();
+            LOGGER.info("Serving metrics on port {}", port);
+        } catch (IOException ex) {
+            LOGGER.error("Failed to serve metrics on port {}: {}", port, ex.getMessage());
+        }
+    }
+
+    /**
+     * Stops serving the metrics, if they are served.
+     */
+    public synchronized void stopServing() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
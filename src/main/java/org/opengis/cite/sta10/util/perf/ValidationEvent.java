@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Open Geospatial Consortium.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opengis.cite.sta10.util.perf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for checking a response against the request it
+ * answers.
+ * Does nothing when the runtime has no Flight Recorder.
+ *
+ * @author scf
+ */
+public class ValidationEvent {
+
+    /**
+     * The Flight Recorder event, only loaded when Flight Recorder is
+     * available.
+     */
+    @Name("org.opengis.cite.sta10.Validation")
+    @Label("Response Validation")
+    @Category({"SensorThings ETS", "Validation"})
+    @Description("Checking a response against the request it answers.")
+    static class Jfr extends jdk.jfr.Event {
+
+        @Label("Request")
+        private String request;
+    }
+
+    private final Object event = FlightRecorder.isAvailable() ? new Jfr() : null;
+
+    /**
+     * Starts timing the event.
+     */
+    public void begin() {
+        if (event != null) {
+            ((Jfr) event).begin();
+        }
+    }
+
+    /**
+     * Ends the event and commits it, if the recording wants it.
+     *
+     * @param request The request that was checked.
+     */
+    public void commit(Object request) {
+        if (event == null) {
+            return;
+        }
+        Jfr jfr = (Jfr) event;
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.request = String.valueOf(request);
+            jfr.commit();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.opengis.cite.sta10.util;
+
+/**
+ * Times {@link TimeUtils#timeEquals(String, String)} against
+ * {@link TimeUtils#timeEqualsJoda(String, String)}. Not a unit test, since the
+ * timings depend on the machine; run the main method from the test classpath.
+ */
+public class TimeUtilsBenchmark {
+
+    private static final String[][] PAIRS = {
+        {"2015-03-01T01:00:00.000Z", "2015-03-01T02:00:00+01:00"},
+        {"2015-03-01T01:00:00.000Z", "2015-03-01T01:00:01Z"},
+        {"2015-03-01T06:30:00.123456+05:30", "2015-03-01T01:00:00.123Z"},
+        {"2016-02-29T23:59:59.999Z", "2016-02-29T23:59:59.999Z"},
+        {"2015-03-01T01:00:00Z/2015-03-01T02:00:00Z", "2015-03-01T02:00:00.000+01:00/2015-03-01T03:00:00.000+01:00"},
+        {"2015-03-01T01:00:00Z/2015-03-01T02:00:00Z", "2015-03-01T01:00:00Z/2015-03-01T03:00:00Z"}
+    };
+
+    private static final int ROUNDS = 200_000;
+    private static final int REPEATS = 5;
+
+    public TimeUtilsBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : ROUNDS;
+        // Warm up, and check both give the same answers.
+        if (runJoda(rounds) != runFast(rounds)) {
+            throw new IllegalStateException("timeEquals and timeEqualsJoda disagree.");
+        }
+        long jodaBest = Long.MAX_VALUE;
+        long fastBest = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            long start = System.nanoTime();
+            runJoda(rounds);
+            jodaBest = Math.min(jodaBest, System.nanoTime() - start);
+            start = System.nanoTime();
+            runFast(rounds);
+            fastBest = Math.min(fastBest, System.nanoTime() - start);
+        }
+        long comparisons = (long) rounds * PAIRS.length;
+        System.out.println(String.format(
+                "Comparing %d time pairs, best of %d: timeEqualsJoda %d ms (%d ns each), timeEquals %d ms (%d ns each).",
+                comparisons, REPEATS,
+                jodaBest / 1_000_000, jodaBest / comparisons,
+                fastBest / 1_000_000, fastBest / comparisons));
+    }
+
+    private static int runJoda(int rounds) {
+        int equal = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String[] pair : PAIRS) {
+                if (TimeUtils.timeEqualsJoda(pair[0], pair[1])) {
+                    equal++;
+                }
+            }
+        }
+        return equal;
+    }
+
+    private static int runFast(int rounds) {
+        int equal = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (String[] pair : PAIRS) {
+                if (TimeUtils.timeEquals(pair[0], pair[1])) {
+                    equal++;
+                }
+            }
+        }
+        return equal;
+    }
+}
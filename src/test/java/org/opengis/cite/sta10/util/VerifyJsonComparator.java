@@ -0,0 +1,71 @@
+package org.opengis.cite.sta10.util;
+
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the canonical JSON comparison and the reported differences.
+ */
+public class VerifyJsonComparator {
+
+    private final JsonComparator comparator = JsonComparator.DEFAULT;
+
+    public VerifyJsonComparator() {
+    }
+
+    @Test
+    public void jsonEquals_numbersByValue() {
+        assertTrue(comparator.jsonEquals(new JSONObject("{\"a\": 1}"), new JSONObject("{\"a\": 1.0}")));
+        assertTrue(comparator.jsonEquals(new JSONObject("{\"a\": 1.50}"), new JSONObject("{\"a\": 1.5}")));
+        assertTrue(comparator.jsonEquals(new JSONObject("{\"a\": 0.0}"), new JSONObject("{\"a\": 0}")));
+        assertFalse(comparator.jsonEquals(new JSONObject("{\"a\": 1}"), new JSONObject("{\"a\": 1.01}")));
+        assertFalse(comparator.jsonEquals(new JSONObject("{\"a\": 1}"), new JSONObject("{\"a\": \"1\"}")));
+    }
+
+    @Test
+    public void jsonEquals_keyOrderIgnored() {
+        JSONObject expected = new JSONObject("{\"a\": 1, \"b\": {\"c\": true, \"d\": null}}");
+        JSONObject actual = new JSONObject("{\"b\": {\"d\": null, \"c\": true}, \"a\": 1}");
+        assertTrue(comparator.jsonEquals(expected, actual));
+        assertEquals(comparator.digest(expected), comparator.digest(actual));
+        assertTrue(comparator.matches(comparator.digest(expected), actual));
+    }
+
+    @Test
+    public void jsonEquals_arrayOrderMatters() {
+        assertTrue(comparator.jsonEquals(new JSONArray("[1, 2, 3]"), new JSONArray("[1.0, 2, 3]")));
+        assertFalse(comparator.jsonEquals(new JSONArray("[1, 2, 3]"), new JSONArray("[3, 2, 1]")));
+        assertFalse(comparator.jsonEquals(new JSONArray("[1, 2]"), new JSONArray("[1, 2, 3]")));
+    }
+
+    @Test
+    public void jsonEquals_timesAsInstants() {
+        assertTrue(comparator.jsonEquals(
+                new JSONObject("{\"phenomenonTime\": \"2015-03-01T01:00:00.000Z\"}"),
+                new JSONObject("{\"phenomenonTime\": \"2015-03-01T02:00:00+01:00\"}")));
+        assertFalse(comparator.jsonEquals(
+                new JSONObject("{\"name\": \"2015-03-01T01:00:00.000Z\"}"),
+                new JSONObject("{\"name\": \"2015-03-01T02:00:00+01:00\"}")));
+    }
+
+    @Test
+    public void diff_reportsPointers() {
+        JSONObject expected = new JSONObject("{\"a\": 1, \"b\": {\"c\": [1, 2]}, \"x/y\": \"v\", \"gone\": 5}");
+        JSONObject actual = new JSONObject("{\"a\": 1.0, \"b\": {\"c\": [1, 3, 4]}, \"x/y\": \"w\", \"extra\": true}");
+        List<JsonComparator.Difference> differences = comparator.diff(expected, actual);
+        assertEquals(5, differences.size());
+        assertEquals("/b/c/1", differences.get(0).getPath());
+        assertEquals("/b/c/2", differences.get(1).getPath());
+        assertEquals(null, differences.get(1).getExpected());
+        assertEquals("/extra", differences.get(2).getPath());
+        assertEquals("/gone", differences.get(3).getPath());
+        assertEquals(null, differences.get(3).getActual());
+        assertEquals("/x~1y", differences.get(4).getPath());
+        assertTrue(comparator.diff(expected, expected).isEmpty());
+    }
+}
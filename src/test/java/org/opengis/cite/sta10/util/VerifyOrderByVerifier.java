@@ -0,0 +1,98 @@
+package org.opengis.cite.sta10.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.json.JSONObject;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the order verification of $orderby results, without a service.
+ */
+public class VerifyOrderByVerifier {
+
+    private static final EntityType.EntityProperty NAME = new EntityType.EntityProperty("name", false, true, "string");
+    private static final EntityType.EntityProperty RESULT = new EntityType.EntityProperty("result", false, true, "any");
+    private static final EntityType.EntityProperty TIME = new EntityType.EntityProperty("phenomenonTime", false, true, "string");
+    private static final EntityType.EntityProperty PARAMETERS = new EntityType.EntityProperty("parameters", true, true, "object");
+
+    public VerifyOrderByVerifier() {
+    }
+
+    @Test
+    public void multipleKeys_ascending() {
+        List<JSONObject> entities = entities(
+                "{\"name\": \"a\", \"result\": 2}",
+                "{\"name\": \"a\", \"result\": 10}",
+                "{\"name\": \"b\", \"result\": 1}");
+        assertTrue(passes(entities, false, NAME, RESULT));
+        assertTrue(fails(entities, false, RESULT, NAME));
+    }
+
+    @Test
+    public void multipleKeys_descending() {
+        List<JSONObject> entities = entities(
+                "{\"name\": \"b\", \"result\": 1}",
+                "{\"name\": \"a\", \"result\": 10.5}",
+                "{\"name\": \"a\", \"result\": 2}");
+        assertTrue(passes(entities, true, NAME, RESULT));
+        assertTrue(fails(entities, false, NAME, RESULT));
+    }
+
+    @Test
+    public void times_byInstant() {
+        List<JSONObject> entities = entities(
+                "{\"phenomenonTime\": \"2015-03-01T02:30:00+02:00\"}",
+                "{\"phenomenonTime\": \"2015-03-01T01:00:00Z/2015-03-01T02:00:00Z\"}");
+        assertTrue(passes(entities, false, TIME));
+        assertTrue(fails(entities, true, TIME));
+    }
+
+    @Test
+    public void missingKey_stopsTheComparison() {
+        // Without the first key the order of the second is undefined.
+        List<JSONObject> entities = entities(
+                "{\"name\": \"a\", \"result\": 5}",
+                "{\"result\": 1}");
+        assertTrue(passes(entities, false, NAME, RESULT));
+    }
+
+    @Test
+    public void undefinedOrder_stopsTheComparison() {
+        List<JSONObject> entities = entities(
+                "{\"result\": \"x\", \"name\": \"b\"}",
+                "{\"result\": 3, \"name\": \"a\"}");
+        assertTrue(passes(entities, false, RESULT, NAME));
+        entities = entities(
+                "{\"parameters\": {\"a\": 2}, \"name\": \"b\"}",
+                "{\"parameters\": {\"a\": 1}, \"name\": \"a\"}");
+        assertTrue(passes(entities, false, PARAMETERS, NAME));
+    }
+
+    private static List<JSONObject> entities(String... json) {
+        List<JSONObject> result = new ArrayList<>();
+        for (String entity : json) {
+            result.add(new JSONObject(entity));
+        }
+        return result;
+    }
+
+    private static boolean passes(List<JSONObject> entities, boolean descending, EntityType.EntityProperty... properties) {
+        List<Comparator<Object>> comparators = new ArrayList<>();
+        for (EntityType.EntityProperty property : properties) {
+            comparators.add(OrderByVerifier.comparatorFor(property));
+        }
+        try {
+            OrderByVerifier.verifyOrder(entities, Arrays.asList(properties), comparators, descending, "Wrong order", "test");
+            return true;
+        } catch (AssertionError ex) {
+            return false;
+        }
+    }
+
+    private static boolean fails(List<JSONObject> entities, boolean descending, EntityType.EntityProperty... properties) {
+        return !passes(entities, descending, properties);
+    }
+}
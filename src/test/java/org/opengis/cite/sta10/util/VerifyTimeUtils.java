@@ -0,0 +1,99 @@
+package org.opengis.cite.sta10.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.ISODateTimeFormat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the fast time parser against Joda-Time.
+ */
+public class VerifyTimeUtils {
+
+    private static final String[] INSTANTS = {
+        "2015-03-01T01:00:00.000Z",
+        "2015-03-01T01:00:00Z",
+        "2015-03-01T01:00Z",
+        "2015-03-01T02:00:00.000+01:00",
+        "2015-03-01T00:00:00.000-01:00",
+        "2015-03-01T06:30:00.123456+05:30",
+        "2016-02-29T23:59:59.999Z",
+        "1969-12-31T23:59:59.999Z",
+        "2100-01-01T00:00:00+01:00"
+    };
+
+    public VerifyTimeUtils() {
+    }
+
+    @Test
+    public void parseInstant_matchesJoda() {
+        for (String instant : INSTANTS) {
+            assertEquals(instant, DateTime.parse(instant).getMillis(), TimeUtils.parseInstant(instant));
+        }
+    }
+
+    @Test
+    public void parseInstant_invalid() {
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-03-01"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-13-01T01:00:00Z"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("not a time at all"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-03-01T01:00:00X"));
+    }
+
+    @Test
+    public void parseInstant_calendarAndOffsetRanges() {
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-02-29T01:00:00Z"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-04-31T01:00:00Z"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("1900-02-29T01:00:00Z"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-03-01T01:00:60Z"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-03-01T01:00:00+24:00"));
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-03-01T01:00:00+01:60"));
+        assertEquals(DateTime.parse("2000-02-29T01:00:00Z").getMillis(), TimeUtils.parseInstant("2000-02-29T01:00:00Z"));
+        assertEquals(DateTime.parse("2015-03-01T01:00:00+23:59").getMillis(), TimeUtils.parseInstant("2015-03-01T01:00:00+23:59"));
+    }
+
+    @Test
+    public void parseInstant_withoutOffsetLeftToJoda() {
+        assertEquals(TimeUtils.INVALID, TimeUtils.parseInstant("2015-03-29T02:30:00"));
+        assertTrue(TimeUtils.timeEquals("2015-10-25T02:30:00", DateTime.parse("2015-10-25T02:30:00").toString()));
+    }
+
+    @Test
+    public void parseDateTimeOrFail_matchesIsoDateTime() {
+        String[] complete = {
+            "2015-03-01T01:00:00.000Z",
+            "2015-03-01T02:00:00.000+01:00",
+            "2015-03-01T06:30:00.123456+05:30"
+        };
+        for (String instant : complete) {
+            assertEquals(instant, ISODateTimeFormat.dateTime().parseMillis(instant), TimeUtils.parseDateTimeOrFail(instant));
+        }
+        String[] incomplete = {
+            "2015-03-01T01:00:00.000",
+            "2015-03-01T01:00:00Z",
+            "2015-03-01T01:00Z",
+            "2015-03-01 01:00:00.000Z"
+        };
+        for (String instant : incomplete) {
+            boolean failed = false;
+            try {
+                TimeUtils.parseDateTimeOrFail(instant);
+            } catch (AssertionError ex) {
+                failed = true;
+            }
+            assertTrue(instant, failed);
+        }
+    }
+
+    @Test
+    public void timeEquals_instantsAndIntervals() {
+        assertTrue(TimeUtils.timeEquals("2015-03-01T01:00:00.000Z", "2015-03-01T02:00:00+01:00"));
+        assertFalse(TimeUtils.timeEquals("2015-03-01T01:00:00.000Z", "2015-03-01T01:00:01Z"));
+        assertTrue(TimeUtils.timeEquals(
+                "2015-03-01T01:00:00Z/2015-03-01T02:00:00Z",
+                "2015-03-01T02:00:00.000+01:00/2015-03-01T03:00:00.000+01:00"));
+        assertTrue(TimeUtils.timeEquals("2015-03-01T01:00:00Z/PT1H", "2015-03-01T01:00:00Z/2015-03-01T02:00:00Z"));
+    }
+}
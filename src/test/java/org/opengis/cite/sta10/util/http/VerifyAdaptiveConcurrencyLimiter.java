@@ -0,0 +1,104 @@
+package org.opengis.cite.sta10.util.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks when the adaptive concurrency limiter grows and backs off.
+ */
+public class VerifyAdaptiveConcurrencyLimiter {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public VerifyAdaptiveConcurrencyLimiter() {
+    }
+
+    /**
+     * Fills all slots with requests of the given class and closes them with
+     * the given latency and response code.
+     */
+    private static void round(AdaptiveConcurrencyLimiter limiter, String requestClass, long latency, int code) {
+        List<AdaptiveConcurrencyLimiter.Slot> slots = new ArrayList<>();
+        int count = limiter.getLimit();
+        for (int i = 0; i < count; i++) {
+            slots.add(limiter.acquire(requestClass));
+        }
+        for (AdaptiveConcurrencyLimiter.Slot slot : slots) {
+            slot.setResponseCode(code);
+            slot.close(latency);
+        }
+    }
+
+    @Test
+    public void sequentialRequests_doNotGrowLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 8);
+        for (int i = 0; i < 100; i++) {
+            AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire("GET /Things");
+            slot.setResponseCode(200);
+            slot.close(FAST);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void saturatedRequests_growLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 8);
+        for (int i = 0; i < 20; i++) {
+            round(limiter, "GET /Things", FAST, 200);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void slowRequestClass_doesNotCutLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 8);
+        for (int i = 0; i < 10; i++) {
+            round(limiter, "GET /Things", FAST, 200);
+            round(limiter, "POST /Observations", SLOW, 201);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void inflatedLatency_cutsLimitOncePerRoundTrip() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 8);
+        for (int i = 0; i < 5; i++) {
+            AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire("GET /Things");
+            slot.setResponseCode(200);
+            slot.close(FAST);
+        }
+        // All eight requests see the same congestion, the limit is cut once.
+        round(limiter, "GET /Things", SLOW, 200);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void overloadResponses_cutLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 8);
+        AdaptiveConcurrencyLimiter.Slot slot = limiter.acquire("POST /Observations");
+        slot.setResponseCode(503);
+        slot.close(FAST);
+        assertEquals(5, limiter.getLimit());
+        assertTrue(limiter.getHistorySummary().endsWith("=5"));
+    }
+
+    @Test
+    public void fixedLimit_doesNotBackOff() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 16, 16);
+        round(limiter, "POST /Observations", FAST, 503);
+        round(limiter, "POST /Observations", SLOW, 201);
+        assertEquals(16, limiter.getLimit());
+    }
+
+    @Test
+    public void nonPositiveLimits_clampToOne() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(0, 0, 0);
+        assertEquals(1, limiter.getLimit());
+        limiter.acquire("GET /Things").close(FAST);
+    }
+}
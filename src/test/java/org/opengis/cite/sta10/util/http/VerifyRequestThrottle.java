@@ -0,0 +1,46 @@
+package org.opengis.cite.sta10.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Checks that the non-blocking acquire of the request throttle refuses
+ * instead of waiting.
+ */
+public class VerifyRequestThrottle {
+
+    public VerifyRequestThrottle() {
+    }
+
+    @Test
+    public void tryAcquire_refusesAtConcurrencyLimit() {
+        RequestThrottle throttle = new RequestThrottle(0, 0, 1, 0);
+        RequestThrottle.Permit first = throttle.tryAcquire();
+        assertNotNull(first);
+        assertNull(throttle.tryAcquire());
+        first.close();
+        assertNotNull(throttle.tryAcquire());
+        assertEquals(2, throttle.getRequestCount());
+    }
+
+    @Test
+    public void tryAcquire_refusesWithoutToken() {
+        // One request per hour: the burst of two is all there is.
+        RequestThrottle throttle = new RequestThrottle(1.0 / 3600, 2, 0, 0);
+        assertNotNull(throttle.tryAcquire());
+        assertNotNull(throttle.tryAcquire());
+        assertNull(throttle.tryAcquire());
+        assertEquals(2, throttle.getRequestCount());
+    }
+
+    @Test
+    public void tryAcquire_returnsTokenWhenConcurrencyRefuses() {
+        RequestThrottle throttle = new RequestThrottle(1.0 / 3600, 2, 1, 0);
+        RequestThrottle.Permit first = throttle.tryAcquire();
+        assertNull(throttle.tryAcquire());
+        first.close();
+        assertNotNull(throttle.tryAcquire());
+    }
+}
@@ -0,0 +1,75 @@
+package org.opengis.cite.sta10.util.mqtt;
+
+import java.util.List;
+import org.json.JSONObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the capture of MQTT messages and its verifiers, without a broker.
+ */
+public class VerifyMessageCapture {
+
+    public VerifyMessageCapture() {
+    }
+
+    @Test
+    public void overflow_keepsTheNewestInOrder() {
+        MessageCapture capture = capture(3, "{\"result\": 1}", "{\"result\": 2}", "{\"result\": 3}",
+                "{\"result\": 4}", "{\"result\": 5}");
+        assertEquals(5, capture.getReceivedCount());
+        assertEquals(2, capture.getOverflowCount());
+        List<MessageCapture.Captured> messages = capture.getMessages();
+        assertEquals(3, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(i + 3, messages.get(i).getMessage().getInt("result"));
+        }
+        assertFalse(passes(() -> capture.verifyOrdered("result")));
+        assertTrue(passes(() -> capture.verifyCount(5)));
+        assertFalse(passes(() -> capture.verifyCount(3)));
+    }
+
+    @Test
+    public void ordered_byNumberAndTime() {
+        assertTrue(passes(() -> capture(4, "{\"@iot.id\": 2}", "{\"@iot.id\": 10}").verifyOrdered("@iot.id")));
+        assertFalse(passes(() -> capture(4, "{\"@iot.id\": 10}", "{\"@iot.id\": 2}").verifyOrdered("@iot.id")));
+        assertTrue(passes(() -> capture(4,
+                "{\"phenomenonTime\": \"2015-03-01T02:30:00+02:00\"}",
+                "{\"phenomenonTime\": \"2015-03-01T01:00:00Z/2015-03-01T02:00:00Z\"}")
+                .verifyOrdered("phenomenonTime")));
+        assertFalse(passes(() -> capture(4,
+                "{\"phenomenonTime\": \"2015-03-01T01:00:00Z\"}",
+                "{\"phenomenonTime\": \"2015-03-01T01:30:00+01:00\"}")
+                .verifyOrdered("phenomenonTime")));
+        assertFalse(passes(() -> capture(4, "{\"@iot.id\": 1}", "{\"result\": 2}").verifyOrdered("@iot.id")));
+    }
+
+    @Test
+    public void duplicates_byProperty() {
+        assertTrue(passes(() -> capture(4, "{\"@iot.id\": 1}", "{\"@iot.id\": 2}", "{\"result\": 3}")
+                .verifyNoDuplicates("@iot.id")));
+        assertFalse(passes(() -> capture(4, "{\"@iot.id\": 1}", "{\"@iot.id\": 2}", "{\"@iot.id\": 1}")
+                .verifyNoDuplicates("@iot.id")));
+        assertFalse(passes(() -> capture(4, "{\"@iot.id\": \"a\"}", "{\"@iot.id\": \"a\"}")
+                .verifyNoDuplicates("@iot.id")));
+    }
+
+    private static MessageCapture capture(int capacity, String... json) {
+        MessageCapture capture = new MessageCapture(capacity);
+        for (String message : json) {
+            capture.add("v1.0/Observations", System.nanoTime(), new JSONObject(message));
+        }
+        return capture;
+    }
+
+    private static boolean passes(Runnable verification) {
+        try {
+            verification.run();
+            return true;
+        } catch (AssertionError ex) {
+            return false;
+        }
+    }
+}
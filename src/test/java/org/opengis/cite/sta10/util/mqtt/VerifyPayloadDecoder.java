@@ -0,0 +1,48 @@
+package org.opengis.cite.sta10.util.mqtt;
+
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * Checks reading single fields from MQTT payloads.
+ */
+public class VerifyPayloadDecoder {
+
+    public VerifyPayloadDecoder() {
+    }
+
+    @Test
+    public void fields_topLevelOnly() {
+        String json = "{\"Datastream\": {\"@iot.id\": 7, \"result\": \"nested\"}, \"parameters\": [1, {\"result\": 2}],"
+                + " \"@iot.id\": 42, \"result\": 17, \"description\": \"caf\u00e9 \\\"quoted\\\" \\u00e9\\n\"}";
+        assertArrayEquals(new String[]{"42", "17", "caf\u00e9 \"quoted\" \u00e9\n", null},
+                PayloadDecoder.fields(bytes(json), "@iot.id", "result", "description", "missing"));
+        assertArrayEquals(new String[]{"{\"@iot.id\": 7, \"result\": \"nested\"}"},
+                PayloadDecoder.fields(bytes(json), "Datastream"));
+        assertArrayEquals(new String[]{null}, PayloadDecoder.fields(bytes(" { } "), "result"));
+    }
+
+    @Test
+    public void fields_invalid() {
+        assertNull(PayloadDecoder.fields(bytes("[1, 2]"), "result"));
+        assertNull(PayloadDecoder.fields(bytes("{\"result\": \"open"), "result"));
+        assertNull(PayloadDecoder.fields(bytes("{\"a\": {\"b\": 1}"), "result"));
+        assertNull(PayloadDecoder.fields(bytes("{\"result\": \"\\x\"}"), "result"));
+        assertNull(PayloadDecoder.fields(bytes(""), "result"));
+    }
+
+    @Test
+    public void resultOf_needsIdAndWholeNumber() {
+        assertEquals(5, PayloadDecoder.resultOf(bytes("{\"@iot.id\": 1, \"result\": 5}")));
+        assertEquals(-1, PayloadDecoder.resultOf(bytes("{\"result\": 5}")));
+        assertEquals(-1, PayloadDecoder.resultOf(bytes("{\"@iot.id\": 1, \"result\": 5.5}")));
+        assertEquals(-1, PayloadDecoder.resultOf(bytes("not json")));
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
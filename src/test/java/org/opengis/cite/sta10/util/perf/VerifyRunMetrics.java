@@ -0,0 +1,83 @@
+package org.opengis.cite.sta10.util.perf;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the OpenMetrics text written by the run metrics.
+ */
+public class VerifyRunMetrics {
+
+    public VerifyRunMetrics() {
+    }
+
+    @Test
+    public void counters_haveTotalSuffix() throws IOException {
+        RunMetrics metrics = new RunMetrics();
+        metrics.setContext("Conformance Level 1", "Capability1Tests");
+        metrics.recordMqttPublish("v1.0/Datastreams(7)/Observations");
+        metrics.recordMqttPublish("v1.0/Datastreams(8)/Observations");
+        List<String> lines = write(metrics);
+        assertTrue(lines.contains("# TYPE sta_mqtt_messages_published counter"));
+        assertTrue(lines.contains("sta_mqtt_messages_published_total{level=\"Conformance Level 1\",class=\"Capability1Tests\","
+                + "topic=\"v1.0/Datastreams({id})/Observations\"} 2"));
+    }
+
+    @Test
+    public void summaries_haveQuantileLabels() throws IOException {
+        RunMetrics metrics = new RunMetrics();
+        metrics.setContext("Conformance Level 2", "Capability2Tests");
+        metrics.recordPhase("setup", 2_000_000_000L);
+        List<String> lines = write(metrics);
+        String labels = "level=\"Conformance Level 2\",class=\"Capability2Tests\",phase=\"setup\"";
+        assertTrue(lines.contains("# TYPE sta_fixture_phase_duration_seconds summary"));
+        for (String quantile : Arrays.asList("0.5", "0.9", "0.99")) {
+            assertTrue(lines.contains("sta_fixture_phase_duration_seconds{" + labels + ",quantile=\"" + quantile + "\"} 2.0"));
+        }
+        assertTrue(lines.contains("sta_fixture_phase_duration_seconds_sum{" + labels + "} 2.0"));
+        assertTrue(lines.contains("sta_fixture_phase_duration_seconds_count{" + labels + "} 1"));
+    }
+
+    @Test
+    public void labelValues_areEscaped() throws IOException {
+        RunMetrics metrics = new RunMetrics();
+        metrics.setContext("a \"quoted\"\nlevel", "C:\\Tests");
+        metrics.recordTest("check", "success", 1_000_000L);
+        List<String> lines = write(metrics);
+        assertTrue(lines.contains("sta_test_duration_seconds_count{level=\"a \\\"quoted\\\"\\nlevel\",class=\"C:\\\\Tests\","
+                + "method=\"check\",status=\"success\"} 1"));
+    }
+
+    @Test
+    public void output_endsWithEof() throws IOException {
+        List<String> lines = write(new RunMetrics());
+        assertEquals("# EOF", lines.get(lines.size() - 1));
+        lines = write(metricsWithHttp());
+        assertEquals("# EOF", lines.get(lines.size() - 1));
+        assertEquals(1, lines.stream().filter("# EOF"::equals).count());
+    }
+
+    @Test
+    public void template_replacesIdsAndDropsHostAndQuery() {
+        assertEquals("/v1.0/Things({id})/Datastreams", RunMetrics.template("http://localhost:8080/v1.0/Things(12)/Datastreams?$top=2"));
+        assertEquals("/v1.0/Things({id})", RunMetrics.template("https://example.org/v1.0/Things('a-b')"));
+    }
+
+    private static RunMetrics metricsWithHttp() {
+        RunMetrics metrics = new RunMetrics();
+        metrics.recordHttp("GET", "http://localhost:8080/v1.0/Things(1)", 200, 0L, 1_000_000L);
+        return metrics;
+    }
+
+    private static List<String> write(RunMetrics metrics) throws IOException {
+        StringWriter out = new StringWriter();
+        metrics.write(out);
+        assertTrue(out.toString().endsWith("\n"));
+        return Arrays.asList(out.toString().split("\n"));
+    }
+}